@@ -31,6 +31,12 @@ public class EqualsOneConstraint extends Threshold {
         throw new UnsupportedOperationException("Cannot decrease equals ONE constraint.");
     }
 
+    @Override
+    public BigDecimal lowerBound() {
+        
+        return BigDecimal.ONE;
+    }
+    
     @Override
     public boolean isSatisfied(BigDecimal value) {
 
@@ -28,11 +28,13 @@ import org.opendata.core.util.FormatedBigDecimal;
  */
 public class GreaterThanConstraint extends Threshold {
 
+    private final long[] _ratioBound;
     private final BigDecimal _threshold;
     
     public GreaterThanConstraint(BigDecimal threshold) {
         
         _threshold = threshold;
+        _ratioBound = Threshold.ratioBound(threshold);
     }
     
     public GreaterThanConstraint(double threshold) {
@@ -46,6 +48,21 @@ public class GreaterThanConstraint extends Threshold {
         return new GreaterThanConstraint(_threshold.subtract(value));
     }
     
+    @Override
+    public boolean isSatisfied(int numerator, int denominator) {
+        
+        if ((_ratioBound != null) && (numerator != denominator) && (denominator > 0)) {
+            return (numerator * _ratioBound[0]) > (_ratioBound[1] * denominator);
+        }
+        return super.isSatisfied(numerator, denominator);
+    }
+    
+    @Override
+    public BigDecimal lowerBound() {
+        
+        return _threshold;
+    }
+    
     @Override
     public boolean isSatisfied(BigDecimal value) {
 
@@ -18,6 +18,7 @@
 package org.opendata.core.constraint;
 
 import java.math.BigDecimal;
+import java.math.MathContext;
 
 /**
  * Threshold constraints check whether a given value satisfies a threshold.
@@ -78,6 +79,67 @@ public abstract class Threshold {
     
     public abstract boolean isSatisfied(BigDecimal value);
     
+    /**
+     * Smallest value that can satisfy the constraint. No value below the
+     * bound satisfies the constraint. Returns null if the constraint does not
+     * have a lower bound.
+     * 
+     * @return 
+     */
+    public BigDecimal lowerBound() {
+        
+        return null;
+    }
+    
+    /**
+     * Test if the ratio of the given values satisfies the threshold. The ratio
+     * is computed with DECIMAL64 precision (the same way as the Jaccard index
+     * in JaccardIndex.sim()). A ratio with equal numerator and denominator is
+     * always one.
+     * 
+     * @param numerator
+     * @param denominator
+     * @return 
+     */
+    public boolean isSatisfied(int numerator, int denominator) {
+        
+        if (numerator == denominator) {
+            return this.isSatisfied(BigDecimal.ONE);
+        }
+        return this.isSatisfied(
+                new BigDecimal(numerator)
+                        .divide(new BigDecimal(denominator), MathContext.DECIMAL64)
+        );
+    }
+    
+    /**
+     * Get the factor and unscaled value that allow to compare a ratio of two
+     * integers with the given threshold using long arithmetic, i.e., a / b
+     * compared to threshold is the same as a * factor compared to
+     * unscaled * b. Returns null if the threshold has too many decimal
+     * places. With at most four decimal places the distance between any ratio
+     * of two integers and the threshold is large enough to not be affected by
+     * rounding to DECIMAL64 precision.
+     * 
+     * @param threshold
+     * @return 
+     */
+    protected static long[] ratioBound(BigDecimal threshold) {
+        
+        BigDecimal value = threshold.stripTrailingZeros();
+        if (value.scale() < 0) {
+            value = value.setScale(0);
+        }
+        if ((value.scale() > 4) || (value.abs().compareTo(new BigDecimal(100000)) > 0)) {
+            return null;
+        }
+        long factor = 1;
+        for (int iScale = 0; iScale < value.scale(); iScale++) {
+            factor *= 10;
+        }
+        return new long[]{factor, value.unscaledValue().longValue()};
+    }
+    
     public abstract String toPlainString();
     
     /**
@@ -17,11 +17,8 @@
  */
 package org.opendata.core.graph;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import org.opendata.core.set.HashIDSet;
 import org.opendata.core.set.HashObjectSet;
 import org.opendata.core.set.IDSet;
 import org.opendata.core.set.IdentifiableIDSet;
@@ -33,25 +30,55 @@ import org.opendata.core.set.ImmutableIdentifiableIDSet;
  * Default connected component generator. Use  for nodes that are unstructured
  * integers.
  * 
+ * Components are maintained in a union-find structure over primitive arrays
+ * (union by rank with path compression). Nodes are mapped to consecutive
+ * positions in ascending order of their identifier.
+ * 
+ * The identifier of a component is the identifier of one of its nodes. When
+ * two components are merged the identifier of the larger component is kept.
+ * For components of equal size the identifier of the target component is
+ * kept, unless both components are single nodes (in which case the source
+ * node identifier is used).
+ * 
+ * The class is not thread-safe.
+ * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class UndirectedConnectedComponents implements ConnectedComponentGenerator, GraphGenerator {
 
-    private final HashMap<Integer, HashSet<Integer>> _components;
-    private final Integer[] _componentMap;
-    private final IDSet _nodes;
+    private int _componentCount;
+    private final int[] _label;
+    private int _multiNodeComponentCount = 0;
+    private final int[] _nodes;
+    private final int[] _parent;
+    private final int[] _position;
+    private final byte[] _rank;
+    private final int[] _size;
     
     public UndirectedConnectedComponents(IDSet nodes) {
 	
-        _nodes = nodes;
+        _nodes = nodes.toArray();
+        Arrays.sort(_nodes);
         
-        _components = new HashMap<>();
+        int maxId = -1;
+        if (_nodes.length > 0) {
+            maxId = _nodes[_nodes.length - 1];
+        }
+        _position = new int[maxId + 1];
+        Arrays.fill(_position, -1);
         
-        int maxId = nodes.maxId();
-        _componentMap = new Integer[maxId + 1];
-        for (int nodeId : nodes) {
-            _componentMap[nodeId] = nodeId;
+        _parent = new int[_nodes.length];
+        _rank = new byte[_nodes.length];
+        _size = new int[_nodes.length];
+        _label = new int[_nodes.length];
+        for (int iNode = 0; iNode < _nodes.length; iNode++) {
+            _position[_nodes[iNode]] = iNode;
+            _parent[iNode] = iNode;
+            _size[iNode] = 1;
+            _label[iNode] = _nodes[iNode];
         }
+        
+        _componentCount = _nodes.length;
     }
 
     @Override
@@ -62,85 +89,126 @@ public class UndirectedConnectedComponents implements ConnectedComponentGenerato
         }
     }
     
+    /**
+     * Number of components that contain more than one node.
+     * 
+     * @return 
+     */
     public int componentCount() {
         
-        return _components.size();
+        return _multiNodeComponentCount;
     }
 
-    public synchronized boolean contains(int nodeId) {
+    public boolean contains(int nodeId) {
     
-        //return _nodes.contains(nodeId);
-        if (nodeId < _componentMap.length) {
-            return (_componentMap[nodeId] != null);
+        if ((nodeId >= 0) && (nodeId < _position.length)) {
+            return (_position[nodeId] != -1);
         } else {
             return false;
         }
     }
     
     @Override
-    public synchronized void edge(int sourceId, int targetId) {	
+    public void edge(int sourceId, int targetId) {	
         
-        int sourceCompId = _componentMap[sourceId];
-        int targetCompId = _componentMap[targetId];
+        int sourceRoot = this.find(_position[sourceId]);
+        int targetRoot = this.find(_position[targetId]);
 
-        if (sourceCompId != targetCompId) {
-            // The respective components may not have been instantiated yet.
-            boolean sourceExists = _components.containsKey(sourceCompId);
-            boolean targetExists = _components.containsKey(targetCompId);
-            if ((sourceExists) && (targetExists)) {
-                // Merge the two components. We add the values from the smaller
-                // component to the larger one
-                HashSet<Integer> source = _components.get(sourceCompId);
-                HashSet<Integer> target = _components.get(targetCompId);
-                if (source.size() > target.size()) {
-                    this.merge(source, sourceCompId, target, targetCompId);
-                } else {
-                    this.merge(target, targetCompId, source, sourceCompId);
-                }
-            } else if ((sourceExists) && (!targetExists)) {
-                // Add targetId to source component
-                _components.get(sourceCompId).add(targetId);
-                _componentMap[targetId] = sourceCompId;
-            } else if ((!sourceExists) && (targetExists)) {
-                // Add sourceId to target component
-                _components.get(targetCompId).add(sourceId);
-                _componentMap[sourceId] = targetCompId;
-            } else {
-                // Create component for source and add target
-                HashSet<Integer> comp = new HashSet<>();
-                comp.add(sourceId);
-                comp.add(targetId);
-                _components.put(sourceCompId, comp);
-                _componentMap[targetId] = sourceCompId;
-            }
+        if (sourceRoot == targetRoot) {
+            return;
         }
+        
+        final int sourceSize = _size[sourceRoot];
+        final int targetSize = _size[targetRoot];
+        
+        int label;
+        if (sourceSize > targetSize) {
+            label = _label[sourceRoot];
+        } else if (sourceSize < targetSize) {
+            label = _label[targetRoot];
+        } else if (sourceSize == 1) {
+            label = _label[sourceRoot];
+        } else {
+            label = _label[targetRoot];
+        }
+        
+        if ((sourceSize == 1) && (targetSize == 1)) {
+            _multiNodeComponentCount++;
+        } else if ((sourceSize > 1) && (targetSize > 1)) {
+            _multiNodeComponentCount--;
+        }
+        
+        int root;
+        if (_rank[sourceRoot] < _rank[targetRoot]) {
+            _parent[sourceRoot] = targetRoot;
+            root = targetRoot;
+        } else if (_rank[sourceRoot] > _rank[targetRoot]) {
+            _parent[targetRoot] = sourceRoot;
+            root = sourceRoot;
+        } else {
+            _parent[targetRoot] = sourceRoot;
+            _rank[sourceRoot]++;
+            root = sourceRoot;
+        }
+        _size[root] = sourceSize + targetSize;
+        _label[root] = label;
+        
+        _componentCount--;
+    }
+    
+    private int find(int pos) {
+        
+        int root = pos;
+        while (_parent[root] != root) {
+            root = _parent[root];
+        }
+        while (_parent[pos] != root) {
+            int next = _parent[pos];
+            _parent[pos] = root;
+            pos = next;
+        }
+        return root;
     }
     
     @Override
-    public synchronized IdentifiableObjectSet<IdentifiableIDSet> getComponents() {
+    public IdentifiableObjectSet<IdentifiableIDSet> getComponents() {
 
         HashObjectSet<IdentifiableIDSet> result = new HashObjectSet<>();
 	
-        HashIDSet clusteredNodes = new HashIDSet();
-        
-        for (int compId : _components.keySet()) {
-            HashSet<Integer> comp = _components.get(compId);
-            ImmutableIDSet cluster = new ImmutableIDSet(comp);
-            result.add(new ImmutableIdentifiableIDSet(compId, cluster));
-            clusteredNodes.add(cluster);
-	}
+        // Assign nodes to buckets for their component root. Nodes are added
+        // in ascending order, i.e., each bucket is sorted.
+        final int size = _nodes.length;
+        int[] roots = new int[size];
+        int[] offsets = new int[size + 1];
+        for (int iNode = 0; iNode < size; iNode++) {
+            int root = this.find(iNode);
+            roots[iNode] = root;
+            offsets[root + 1]++;
+        }
+        for (int iNode = 0; iNode < size; iNode++) {
+            offsets[iNode + 1] += offsets[iNode];
+        }
+        int[] next = Arrays.copyOf(offsets, size);
+        Integer[] buckets = new Integer[size];
+        for (int iNode = 0; iNode < size; iNode++) {
+            buckets[next[roots[iNode]]++] = _nodes[iNode];
+        }
         
-        // Add single node components for all unclustered nodes
-        for (int nodeId : _nodes) {
-            if (!clusteredNodes.contains(nodeId)) {
+        for (int iNode = 0; iNode < size; iNode++) {
+            if (_parent[iNode] == iNode) {
+                Integer[] members = Arrays.copyOfRange(
+                        buckets,
+                        offsets[iNode],
+                        offsets[iNode + 1]
+                );
                 result.add(
                         new ImmutableIdentifiableIDSet(
-                                nodeId,
-                                new ImmutableIDSet(nodeId)
+                                _label[iNode],
+                                new ImmutableIDSet(members, true)
                         )
                 );
             }
-        }
+	}
 	
         return result;
     }
@@ -152,25 +220,6 @@ public class UndirectedConnectedComponents implements ConnectedComponentGenerato
      */
     public boolean isComplete() {
        
-        if (_components.size() == 1) {
-            int compSize = _components.values().iterator().next().size();
-            return (compSize == _nodes.length());
-        }
-        return false;
-    }
-
-    private void merge(
-            HashSet<Integer> target,
-            int targetCompId,
-            HashSet<Integer> source,
-            int sourceCompId
-    ) {
-        
-        for (int nodeId : source) {
-            target.add(nodeId);
-            _componentMap[nodeId] = targetCompId;
-        }
-        
-        _components.remove(sourceCompId);
+        return ((_componentCount == 1) && (_nodes.length > 1));
     }
 }
@@ -132,6 +132,63 @@ public class MaxDropFinder <T extends IdentifiableDouble> {
         return new Drop(maxIndex, maxDiff, false);
     }
     
+    /**
+     * Get index position and difference for steepest drop in an array of
+     * double values. Same as getSteepestDrop(List, int) for an array that
+     * contains the element values (sorted in decreasing order). Only the
+     * first size values in the array are considered.
+     * 
+     * @param values
+     * @param size
+     * @param start
+     * @return 
+     */
+    public Drop getSteepestDrop(double[] values, int size, int start) {
+             
+        // Result is zero if element list is empty.
+        if (start >= size) {
+            return new Drop();
+        }
+        
+        // Result is zero if first element is smaller than the empty signature
+        // constraint threshold.
+        if (!_nonEmptySignatureThreshold.isSatisfied(values[0])) {
+            return new Drop();
+        }
+        
+        // Return 1 if the size of the list is one
+        if ((size - start) == 1) {
+            return new Drop(start + 1, 0., true);
+        }
+        
+        // If the full signature constraint is satisfied the result equals the
+        // size of the array
+        final double last = values[size - 1];
+        if (_fullSignatureConstraint) {
+            double diff = values[start] - last;
+            if (diff < last) {
+                return new Drop(size, diff, true);
+             }
+        }
+        
+        double maxDiff = 0f;
+        int maxIndex = size;        
+        for (int iIndex = start; iIndex < size - 1; iIndex++) {
+            double diff = values[iIndex] - values[iIndex + 1];
+            if (diff > maxDiff) {
+                maxIndex = iIndex + 1;
+                maxDiff = diff;
+            }
+        }
+        
+        // If we do not ignore the last drop we need to check if that drop is
+        // greater than the largest drop that was found.
+        if ((!_ignoreLastDrop) && (last > maxDiff)) {
+            maxIndex = size;
+        }
+        return new Drop(maxIndex, maxDiff, false);
+    }
+    
     /**
      * Return the pruning index.
      * 
@@ -154,4 +211,17 @@ public class MaxDropFinder <T extends IdentifiableDouble> {
         
         return this.getSteepestDrop(elements, start).index();
     }
+    
+    /**
+     * Return the pruning index for the first size values in an array that is
+     * sorted in decreasing order.
+     * 
+     * @param values
+     * @param size
+     * @return 
+     */
+    public int getPruneIndex(double[] values, int size) {
+        
+        return this.getSteepestDrop(values, size, 0).index();
+    }
 }
@@ -0,0 +1,206 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.core.set;
+
+import java.util.Arrays;
+
+/**
+ * Content key for a set of identifiers. The key maintains a 128-bit hash of
+ * the sorted list of identifiers (MurmurHash3 x64 variant). Two keys are
+ * compared element by element only if their hash values match.
+ *
+ * Use this key instead of IDSet.toIntString() when identifying duplicate
+ * columns or domains in hash maps.
+ *
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class IDSetKey {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final long _hashHigh;
+    private final long _hashLow;
+    private final int[] _values;
+
+    /**
+     * Initialize the key from an array of identifiers. The array is expected
+     * to be sorted in ascending order and to contain unique values.
+     *
+     * @param values
+     */
+    public IDSetKey(int[] values) {
+
+        _values = values;
+
+        long h1 = 0;
+        long h2 = 0;
+
+        final int len = values.length;
+        final int blockEnd = len - (len % 4);
+        for (int iPos = 0; iPos < blockEnd; iPos += 4) {
+            long k1 = pack(values[iPos], values[iPos + 1]);
+            long k2 = pack(values[iPos + 2], values[iPos + 3]);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // Tail with less than four values.
+        long k1 = 0;
+        long k2 = 0;
+        switch (len - blockEnd) {
+            case 3:
+                k2 = pack(values[blockEnd + 2], 0);
+                k1 = pack(values[blockEnd], values[blockEnd + 1]);
+                break;
+            case 2:
+                k1 = pack(values[blockEnd], values[blockEnd + 1]);
+                break;
+            case 1:
+                k1 = pack(values[blockEnd], 0);
+                break;
+            default:
+                break;
+        }
+        h1 ^= mixK1(k1);
+        h2 ^= mixK2(k2);
+
+        h1 ^= len;
+        h2 ^= len;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        _hashHigh = h1;
+        _hashLow = h2;
+    }
+
+    /**
+     * Initialize the key from the sorted list of identifiers in the given set.
+     *
+     * @param values
+     */
+    public IDSetKey(IDSet values) {
+
+        this(sorted(values.toArray()));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof IDSetKey)) {
+            return false;
+        }
+        IDSetKey key = (IDSetKey)obj;
+        if ((_hashHigh != key._hashHigh) || (_hashLow != key._hashLow)) {
+            return false;
+        }
+        return Arrays.equals(_values, key._values);
+    }
+
+    private static long fmix(long k) {
+
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    @Override
+    public int hashCode() {
+
+        return (int)(_hashLow ^ (_hashLow >>> 32));
+    }
+
+    /**
+     * Upper 64 bits of the 128-bit content hash.
+     *
+     * @return
+     */
+    public long hashHigh() {
+
+        return _hashHigh;
+    }
+
+    /**
+     * Lower 64 bits of the 128-bit content hash.
+     *
+     * @return
+     */
+    public long hashLow() {
+
+        return _hashLow;
+    }
+
+    public int length() {
+
+        return _values.length;
+    }
+
+    private static long mixK1(long k1) {
+
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long pack(int high, int low) {
+
+        return (((long)high) << 32) | (low & 0xffffffffL);
+    }
+
+    private static int[] sorted(int[] values) {
+
+        Arrays.sort(values);
+        return values;
+    }
+
+    /**
+     * Sorted array of identifiers in the set. The array is not copied and
+     * should not be modified.
+     *
+     * @return
+     */
+    public int[] values() {
+
+        return _values;
+    }
+}
@@ -17,17 +17,95 @@
  */
 package org.opendata.core.value;
 
+import java.util.Locale;
+import java.util.regex.Pattern;
+
 /**
  * Default transformer for column values. Replace successive white spaces with
  * a single space character.
  * 
+ * The in-place transformation of character arrays gives the same result as
+ * the string transformation for all values that only contain ASCII
+ * characters. Values with other characters are left to the string
+ * transformation since upper-casing them may change their length.
+ * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class DefaultValueTransformer implements ValueTransformer {
 
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    
+    private final boolean _asciiUpperCase;
+    
+    public DefaultValueTransformer() {
+        
+        // Upper-casing of ASCII characters in these languages returns
+        // non-ASCII characters.
+        String language = Locale.getDefault().getLanguage();
+        _asciiUpperCase = !(language.equals("tr")
+                || language.equals("az")
+                || language.equals("lt"));
+    }
+    
+    /**
+     * Test for white space characters that are matched by the regular
+     * expression \\s.
+     * 
+     * @param c
+     * @return 
+     */
+    private static boolean isWhitespace(char c) {
+        
+        return ((c == ' ') || ((c >= '\t') && (c <= '\r')));
+    }
+    
     @Override
     public String transform(String value) {
 
-        return value.toUpperCase().replaceAll("\\s+", " ").trim();
+        return WHITESPACE.matcher(value.toUpperCase()).replaceAll(" ").trim();
+    }
+
+    @Override
+    public int transform(char[] value, int offset, int length) {
+        
+        if (!_asciiUpperCase) {
+            return -1;
+        }
+        
+        // Trim removes all characters less than or equal to the space
+        // character. White space characters that are replaced by a single
+        // space are included in this set.
+        int start = offset;
+        int end = offset + length;
+        for (int iChar = start; iChar < end; iChar++) {
+            if (value[iChar] >= 0x80) {
+                return -1;
+            }
+        }
+        while ((start < end) && (value[start] <= ' ')) {
+            start++;
+        }
+        while ((end > start) && (value[end - 1] <= ' ')) {
+            end--;
+        }
+        
+        int pos = offset;
+        boolean inWhitespace = false;
+        for (int iChar = start; iChar < end; iChar++) {
+            char c = value[iChar];
+            if (isWhitespace(c)) {
+                if (!inWhitespace) {
+                    value[pos++] = ' ';
+                    inWhitespace = true;
+                }
+            } else {
+                if ((c >= 'a') && (c <= 'z')) {
+                    c -= 32;
+                }
+                value[pos++] = c;
+                inWhitespace = false;
+            }
+        }
+        return pos - offset;
     }
 }
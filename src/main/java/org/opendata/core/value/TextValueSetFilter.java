@@ -18,7 +18,7 @@
 package org.opendata.core.value;
 
 import org.opendata.core.constraint.Threshold;
-import org.opendata.profiling.datatype.DefaultDataTypeAnnotator;
+import org.opendata.profiling.datatype.FastDataTypeAnnotator;
 
 /**
  * Value set filter for text sets.
@@ -45,7 +45,7 @@ public class TextValueSetFilter implements ValueSetFilter {
     @Override
     public boolean accept(Iterable<ValueCounter> values) {
 
-        DefaultDataTypeAnnotator typeCheck = new DefaultDataTypeAnnotator();
+        FastDataTypeAnnotator typeCheck = new FastDataTypeAnnotator();
         
         int textCount = 0;
         int totalCount = 0;
@@ -26,4 +26,18 @@ package org.opendata.core.value;
 public interface ValueTransformer {
     
     public String transform(String value);
+    
+    /**
+     * Transform the value in the given character array slice in place. The
+     * transformed value is written to the array starting at the given offset.
+     * Returns the length of the transformed value or -1 if the value cannot
+     * be transformed in place. In the latter case the array is unchanged
+     * and the value has to be transformed as a string.
+     * 
+     * @param value
+     * @param offset
+     * @param length
+     * @return 
+     */
+    public int transform(char[] value, int offset, int length);
 }
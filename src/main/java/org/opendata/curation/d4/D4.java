@@ -25,9 +25,11 @@ import java.math.BigDecimal;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.opendata.curation.d4.column.ExpandedColumnCache;
 import org.opendata.curation.d4.column.ExpandedColumnIndex;
 import org.opendata.curation.d4.column.ExpandedColumnReader;
 import org.opendata.curation.d4.column.ExpandedColumnStatsWriter;
+import org.opendata.curation.d4.column.ImmutableExpandedColumn;
 import org.opendata.curation.d4.column.ParallelColumnExpander;
 import org.opendata.curation.d4.domain.DomainReader;
 import org.opendata.curation.d4.domain.DomainSetStatsPrinter;
@@ -38,16 +40,25 @@ import org.opendata.curation.d4.signature.SignatureBlocksStats;
 import org.opendata.core.constraint.Threshold;
 import org.opendata.core.io.FileListReader;
 import org.opendata.core.io.FileSystem;
+import org.opendata.core.set.IdentifiableObjectSet;
 import org.opendata.curation.d4.domain.Domain;
 import org.opendata.curation.d4.domain.InMemLocalDomainGenerator;
 import org.opendata.curation.d4.domain.StrongDomain;
 import org.opendata.curation.d4.domain.StrongDomainReader;
+import org.opendata.curation.d4.domain.UniqueDomainSet;
 import org.opendata.curation.d4.export.ExportStrongDomains;
 import org.opendata.curation.d4.signature.SignatureBlocksReader;
 import org.opendata.curation.d4.signature.ContextSignatureBlocksWriter;
 import org.opendata.curation.d4.signature.SignatureBlocksGenerator;
 import org.opendata.db.eq.CompressedTermIndexFile;
+import org.opendata.db.column.Column;
+import org.opendata.db.column.PackedColumnFile;
+import org.opendata.db.column.TermIdColumnFile;
 import org.opendata.db.eq.CompressedTermIndexGenerator;
+import org.opendata.db.eq.ExternalMemCompressedTermIndexGenerator;
+import org.opendata.db.term.TermConsumer;
+import org.opendata.db.term.TermDictionary;
+import org.opendata.db.term.TermIdIndexGenerator;
 import org.opendata.db.term.TermIndexGenerator;
 import org.opendata.db.term.TermIndexReader;
 import org.opendata.db.tools.Dataset2ColumnsConverter;
@@ -62,36 +73,63 @@ public class D4 {
     public void columns(
             File inputDir,
             File metadataFile,
-            int cacheSize,
+            int bufferSize,
+            boolean packed,
+            File dictionaryFile,
             int threads,
             boolean verbose,
             File outputDir
     ) throws java.lang.InterruptedException, java.io.IOException {
         
         if (verbose) {
+            String dictionaryFileName = "";
+            if (dictionaryFile != null) {
+                dictionaryFileName = dictionaryFile.getAbsolutePath();
+            }
             System.out.println(
                     String.format(
                             "%s\n" +
                             "  --input=%s\n" +
                             "  --metadata=%s\n" +
-                            "  --cacheSize=%d\n" +
+                            "  --bufferSize=%d\n" +
+                            "  --packed=%s\n" +
+                            "  --dictionary=%s\n" +
                             "  --threads=%d\n" +
                             "  --output=%s\n",
                             STEP_GENERATE_COLUMNS,
                             inputDir.getAbsolutePath(),
                             metadataFile.getAbsolutePath(),
-                            cacheSize,
+                            bufferSize,
+                            Boolean.toString(packed),
+                            dictionaryFileName,
                             threads,
                             outputDir.getAbsolutePath()
                     )
             );
         }
 
+        TermDictionary dictionary = null;
+        if (dictionaryFile != null) {
+            dictionary = new TermDictionary();
+        }
+        
         try (PrintWriter out = FileSystem.openPrintWriter(metadataFile)) {
             List<File> files = new FileListReader(new String[]{".csv", ".tsv"})
                     .listFiles(inputDir);
-            new Dataset2ColumnsConverter(outputDir, out, cacheSize, verbose)
-                    .run(files, threads);
+            // The buffer size is given in MB for each column.
+            new Dataset2ColumnsConverter(
+                    outputDir,
+                    out,
+                    bufferSize * 1024L * 1024L,
+                    Dataset2ColumnsConverter.LARGE_FILE_SIZE,
+                    packed,
+                    dictionary,
+                    verbose
+            ).run(files, threads);
+        }
+        
+        if (dictionary != null) {
+            dictionary.write(dictionaryFile);
         }
     }
     
@@ -134,6 +172,7 @@ public class D4 {
 
     public void eqs(
             File inputFile,
+            int bufferSize,
             boolean verbose,
             File outputFile
     ) throws java.io.IOException {
@@ -143,17 +182,30 @@ public class D4 {
                     String.format(
                             "%s\n" +
                             "  --input=%s\n" +
+                            "  --bufferSize=%d\n" +
                             "  --output=%s\n",
                             STEP_COMPRESS_TERMINDEX,
                             inputFile.getAbsolutePath(),
+                            bufferSize,
                             outputFile.getAbsolutePath()
                     )
             );
         }
         
         try (PrintWriter out = FileSystem.openPrintWriter(outputFile)) {
-            new TermIndexReader(inputFile)
-                    .read(new CompressedTermIndexGenerator(out, verbose));
+            TermConsumer consumer;
+            if (bufferSize > 0) {
+                // Temporary run files are written next to the output file.
+                consumer = new ExternalMemCompressedTermIndexGenerator(
+                        out,
+                        outputFile.getAbsoluteFile().getParentFile(),
+                        bufferSize * 1024L * 1024L,
+                        verbose
+                );
+            } else {
+                consumer = new CompressedTermIndexGenerator(out, verbose);
+            }
+            new TermIndexReader(inputFile).read(consumer);
         }
     }
     
@@ -165,12 +217,17 @@ public class D4 {
             int numberOfIterations,
             BigDecimal decreaseFactor,
             int threads,
+            File cacheDir,
             boolean verbose,
             TelemetryCollector telemetry,
             File outputFile
     ) throws java.io.IOException {
         
         if (verbose) {
+            String cacheDirName = "";
+            if (cacheDir != null) {
+                cacheDirName = cacheDir.getAbsolutePath();
+            }
             System.out.println(
                     String.format(
                             "%s\n" +
@@ -181,6 +238,7 @@ public class D4 {
                             "  --decrease=%s\n" +
                             "  --iterations=%d\n" +
                             "  --threads=%d\n" +
+                            "  --cache=%s\n" +
                             "  --columns=%s",
                             STEP_EXPAND_COLUMNS,
                             eqFile.getAbsolutePath(),
@@ -190,6 +248,7 @@ public class D4 {
                             decreaseFactor.toPlainString(),
                             numberOfIterations,
                             threads,
+                            cacheDirName,
                             outputFile.getAbsolutePath()
                     )
             );
@@ -197,6 +256,19 @@ public class D4 {
 
         DataManager db = new DataManager(new CompressedTermIndexFile(eqFile));
 
+        ExpandedColumnCache cache = null;
+        if (cacheDir != null) {
+            cache = new ExpandedColumnCache(
+                    cacheDir,
+                    eqFile,
+                    signatureFile,
+                    trimmer,
+                    expandThreshold,
+                    decreaseFactor,
+                    numberOfIterations
+            );
+        }
+        
         new ParallelColumnExpander(telemetry).run(
                 db.getEQTermCounts(),
                 new SignatureBlocksReader(signatureFile),
@@ -207,6 +279,7 @@ public class D4 {
                 numberOfIterations,
                 threads,
                 verbose,
+                cache,
                 outputFile
         );
 
@@ -217,15 +290,128 @@ public class D4 {
         }
     }
     
+    public void expandLocalDomains(
+            File eqFile,
+            File signatureFile,
+            String trimmer,
+            Threshold expandThreshold,
+            int numberOfIterations,
+            BigDecimal decreaseFactor,
+            boolean originalOnly,
+            int threads,
+            File cacheDir,
+            boolean verbose,
+            TelemetryCollector telemetry,
+            File columnsFile,
+            File outputFile
+    ) throws java.io.IOException {
+        
+        if (verbose) {
+            String cacheDirName = "";
+            if (cacheDir != null) {
+                cacheDirName = cacheDir.getAbsolutePath();
+            }
+            String columnsFileName = "";
+            if (columnsFile != null) {
+                columnsFileName = columnsFile.getAbsolutePath();
+            }
+            System.out.println(
+                    String.format(
+                            "%s\n" +
+                            "  --eqs=%s\n" +
+                            "  --signatures=%s\n" +
+                            "  --trimmer=%s\n" +
+                            "  --expandThreshold=%s\n" +
+                            "  --decrease=%s\n" +
+                            "  --iterations=%d\n" +
+                            "  --originalonly=%s\n" +
+                            "  --threads=%d\n" +
+                            "  --cache=%s\n" +
+                            "  --columns=%s\n" +
+                            "  --localdomains=%s",
+                            STEP_EXPAND_LOCAL_DOMAINS,
+                            eqFile.getAbsolutePath(),
+                            signatureFile.getAbsolutePath(),
+                            trimmer,
+                            expandThreshold.toPlainString(),
+                            decreaseFactor.toPlainString(),
+                            numberOfIterations,
+                            Boolean.toString(originalOnly),
+                            threads,
+                            cacheDirName,
+                            columnsFileName,
+                            outputFile.getAbsolutePath()
+                    )
+            );
+        }
+
+        DataManager db = new DataManager(new CompressedTermIndexFile(eqFile));
+
+        ExpandedColumnCache cache = null;
+        if (cacheDir != null) {
+            cache = new ExpandedColumnCache(
+                    cacheDir,
+                    eqFile,
+                    signatureFile,
+                    trimmer,
+                    expandThreshold,
+                    decreaseFactor,
+                    numberOfIterations
+            );
+        }
+        
+        // The domain set maps column groups to column identifier. Groups are
+        // defined by the original column nodes and are therefore the same for
+        // expanded and unexpanded columns.
+        IdentifiableObjectSet<Column> columns = db.getColumns();
+        ExpandedColumnIndex columnIndex = new ExpandedColumnIndex();
+        columnIndex.open();
+        for (Column column : columns) {
+            columnIndex.consume(new ImmutableExpandedColumn(column));
+        }
+        columnIndex.close();
+        UniqueDomainSet domains = new UniqueDomainSet(columnIndex);
+        
+        new ParallelColumnExpander(telemetry).run(
+                db.getEQTermCounts(),
+                new SignatureBlocksReader(signatureFile),
+                db.getSignatureTrimmerFactory(trimmer, true),
+                columns,
+                expandThreshold,
+                decreaseFactor,
+                numberOfIterations,
+                threads,
+                verbose,
+                cache,
+                db.getSignatureTrimmerFactory(trimmer, originalOnly),
+                domains,
+                columnsFile
+        );
+        
+        domains.stream(new DomainWriter(outputFile));
+
+        if (verbose) {
+            if (columnsFile != null) {
+                ExpandedColumnStatsWriter colStats = new ExpandedColumnStatsWriter();
+                new ExpandedColumnReader(columnsFile).stream(colStats);
+                colStats.print();
+            }
+            DomainSetStatsPrinter localStats = new DomainSetStatsPrinter();
+            new DomainReader(outputFile).stream(localStats);
+            localStats.print();
+        }
+    }
+    
     public void exportStrongDomains(
             File eqFile,
             File termFile,
             File columnFile,
             File strongDomainFile,
             int sampleSize,
+            int threads,
             boolean verbose,
             File outputDir
-    ) throws java.io.IOException {
+    ) throws java.lang.InterruptedException, java.io.IOException {
 
         if (verbose) {
             System.out.println(
@@ -236,6 +422,7 @@ public class D4 {
                             "  --columns=%s\n" +
                             "  --domains=%s\n" +
                             "  --sampleSize=%d\n" +
+                            "  --threads=%d\n" +
                             "  --output=%s",
                             STEP_EXPORT_DOMAINS,
                             eqFile.getAbsolutePath(),
@@ -243,6 +430,7 @@ public class D4 {
                             columnFile.getAbsolutePath(),
                             strongDomainFile.getAbsolutePath(),
                             sampleSize,
+                            threads,
                             outputDir.getAbsolutePath()
                     )
             );
@@ -254,6 +442,7 @@ public class D4 {
                 columnFile,
                 strongDomainFile,
                 sampleSize,
+                threads,
                 outputDir
         );
     }
@@ -400,12 +589,17 @@ public class D4 {
             Threshold minSupportConstraint,
             BigDecimal supportFraction,
             int threads,
+            File overlapFile,
             boolean verbose,
             TelemetryCollector telemetry,
             File outputFile
     ) throws java.lang.InterruptedException, java.io.IOException {
         
         if (verbose) {
+            String overlapFileName = "";
+            if (overlapFile != null) {
+                overlapFileName = overlapFile.getAbsolutePath();
+            }
             System.out.println(
                     String.format(
                             "%s\n" +
@@ -415,6 +609,7 @@ public class D4 {
                             "  --minSupport=%s\n" +
                             "  --supportFraction=%s\n" +
                             "  --threads=%d\n" +
+                            "  --overlaps=%s\n" +
                             "  --strongdomains=%s",
                             STEP_STRONG_DOMAINS,
                             eqFile.getAbsolutePath(),
@@ -423,6 +618,7 @@ public class D4 {
                             minSupportConstraint.toPlainString(),
                             supportFraction.toPlainString(),
                             threads,
+                            overlapFileName,
                             outputFile.getAbsolutePath()
                     )
             );
@@ -438,6 +634,7 @@ public class D4 {
                 supportFraction,
                 verbose,
                 threads,
+                overlapFile,
                 outputFile
         );
 
@@ -462,37 +659,76 @@ public class D4 {
             File inputDir,
             Threshold threshold,
             int bufferSize,
+            int columnBufferSize,
+            BigDecimal sampleError,
+            File profileFile,
             boolean validate,
+            File dictionaryFile,
             int threads,
             boolean verbose,
             File outputFile
     ) throws java.lang.InterruptedException, java.io.IOException {
         
         if (verbose) {
+            String dictionaryFileName = "";
+            if (dictionaryFile != null) {
+                dictionaryFileName = dictionaryFile.getAbsolutePath();
+            }
+            String profileFileName = "";
+            if (profileFile != null) {
+                profileFileName = profileFile.getAbsolutePath();
+            }
             System.out.println(
                     String.format(
                             "%s\n" +
                             "  --input=%s\n" +
                             "  --textThreshold=%s\n" +
-                            "  --membuffer=%d\n" +
+                            "  --bufferSize=%d\n" +
+                            "  --columnbuffer=%d\n" +
+                            "  --sampleError=%s\n" +
+                            "  --profiles=%s\n" +
                             "  --validate=%s\n" +
+                            "  --dictionary=%s\n" +
                             "  --threads=%d\n" +
                             "  --output=%s\n",
                             STEP_TERMINDEX,
                             inputDir.getAbsolutePath(),
                             threshold.toPlainString(),
                             bufferSize,
+                            columnBufferSize,
+                            sampleError.toPlainString(),
+                            profileFileName,
                             Boolean.toString(validate),
+                            dictionaryFileName,
                             threads,
                             outputFile.getAbsolutePath()
                     )
             );
         }
         
+        if (dictionaryFile != null) {
+            // Columns of term identifiers are grouped by term identifier.
+            new TermIdIndexGenerator().run(
+                    new FileListReader(TermIdColumnFile.SUFFIX).listFiles(inputDir),
+                    dictionaryFile,
+                    threshold,
+                    bufferSize * 1024L * 1024L,
+                    columnBufferSize,
+                    threads,
+                    verbose,
+                    outputFile
+            );
+            return;
+        }
+        
         new TermIndexGenerator().run(
-                new FileListReader(".txt").listFiles(inputDir),
+                new FileListReader(new String[]{".txt", PackedColumnFile.SUFFIX})
+                        .listFiles(inputDir),
                 threshold,
-                bufferSize,
+                bufferSize * 1024L * 1024L,
+                columnBufferSize,
+                sampleError.doubleValue(),
+                profileFile,
                 validate,
                 threads,
                 verbose,
@@ -536,6 +772,7 @@ public class D4 {
     private static final String STEP_COLUMN_DOMAINS = "columns-as-domains";
     private static final String STEP_COMPRESS_TERMINDEX = "eqs";
     private static final String STEP_EXPAND_COLUMNS = "expand-columns";
+    private static final String STEP_EXPAND_LOCAL_DOMAINS = "expand-local-domains";
     private static final String STEP_EXPORT_DOMAINS = "export";
     private static final String STEP_GENERATE_COLUMNS = "columns";
     private static final String STEP_LOCAL_DOMAINS = "local-domains";
@@ -560,6 +797,7 @@ public class D4 {
             "      " + STEP_STRONG_DOMAINS + "\n\n" +
             "      Alternatives\n" +
             "      ------------\n" +
+            "      " + STEP_EXPAND_LOCAL_DOMAINS + "\n" +
             "      " + STEP_NO_EXPAND + "\n" +
             "      " + STEP_COLUMN_DOMAINS + "\n\n" +
             "      Explore Results\n" +
@@ -594,7 +832,9 @@ public class D4 {
                     new Parameter[] {
                         new Parameter("input", "<directory> [default: 'tsv']"),
                         new Parameter("metadata", "<file> [default: 'columns.tsv']"),
-                        new Parameter("cacheSize", "<int> [default: 1000]"),
+                        new Parameter("bufferSize", "<int> [default: 8] (MB per column)"),
+                        new Parameter("packed", "<boolean> [default: false]"),
+                        new Parameter("dictionary", "<file> [default: none]"),
                         new Parameter("verbose", "<boolean> [default: true]"),
                         new Parameter("threads", "<int> [default: 6]"),
                         new Parameter("output", "<directory> [default: 'columns']")
@@ -603,7 +843,12 @@ public class D4 {
             );
             File inputDir = params.getAsFile("input", "tsv");
             File outputFile = params.getAsFile("metadata", "columns.tsv");
-            int cacheSize = params.getAsInt("cacheSize", 1000);
+            int bufferSize = params.getAsInt("bufferSize", 8);
+            boolean packed = params.getAsBool("packed", false);
+            File dictionaryFile = null;
+            if (params.has("dictionary")) {
+                dictionaryFile = params.getAsFile("dictionary", null);
+            }
             boolean verbose = params.getAsBool("verbose", true);
             int threads = params.getAsInt("threads", 6);
             File outputDir = params.getAsFile("output", "columns");
@@ -611,7 +856,9 @@ public class D4 {
                 new D4().columns(
                         inputDir,
                         outputFile,
-                        cacheSize,
+                        bufferSize,
+                        packed,
+                        dictionaryFile,
                         threads,
                         verbose,
                         outputDir
@@ -631,8 +878,12 @@ public class D4 {
                                 "<directory | file> [default: 'columns']"
                         ),
                         new Parameter("textThreshold", "<constraint> [default: 'GT0.5']"),
-                        new Parameter("membuffer", "<int> [default: 10000000]"),
+                        new Parameter("bufferSize", "<int> [default: 256] (MB per thread)"),
+                        new Parameter("columnbuffer", "<int> [default: 100000] (values per column)"),
+                        new Parameter("sampleError", "<double> [default: 0] (0 = classify all values)"),
+                        new Parameter("profiles", "<file> [default: none]"),
                         new Parameter("validate", "<boolean> [default: false]"),
+                        new Parameter("dictionary", "<file> [default: none]"),
                         new Parameter("verbose", "<boolean> [default: true]"),
                         new Parameter("threads", "<int> [default: 6]"),
                         new Parameter("output", "<file> [default: 'text-columns.txt.gz']")
@@ -641,8 +892,19 @@ public class D4 {
             );
             File inputDir = params.getAsFile("input", "columns");
             Threshold threshold = params.getAsConstraint("textThreshold", "GT0.5");
-            int bufferSize = params.getAsInt("membuffer", 10000000);
+            int bufferSize = params.getAsInt("bufferSize", 256);
+            int columnBufferSize = params.getAsInt("columnbuffer", 100000);
+            BigDecimal sampleError = params
+                    .getAsBigDecimal("sampleError", BigDecimal.ZERO);
+            File profileFile = null;
+            if (params.has("profiles")) {
+                profileFile = params.getAsFile("profiles", null);
+            }
             boolean validate = params.getAsBool("validate", false);
+            File dictionaryFile = null;
+            if (params.has("dictionary")) {
+                dictionaryFile = params.getAsFile("dictionary", null);
+            }
             boolean verbose = params.getAsBool("verbose", true);
             int threads = params.getAsInt("threads", 6);
             File outputFile = params.getAsFile("output", "term-index.txt.gz");
@@ -651,7 +913,11 @@ public class D4 {
                         inputDir,
                         threshold,
                         bufferSize,
+                        columnBufferSize,
+                        sampleError,
+                        profileFile,
                         validate,
+                        dictionaryFile,
                         threads,
                         verbose,
                         outputFile
@@ -667,6 +933,7 @@ public class D4 {
             CLP params = new CLP(
                     new Parameter[] {
                         new Parameter("input", "<file> [default: 'term-index.txt.gz']"),
+                        new Parameter("bufferSize", "<int> [default: 0] (MB, 0 = in-memory)"),
                         new Parameter("verbose", "<boolean> [default: true]"),
                         new Parameter(
                                 "output",
@@ -676,11 +943,13 @@ public class D4 {
                     args
             );
             File inputFile = params.getAsFile("input", "term-index.txt.gz");
+            int bufferSize = params.getAsInt("bufferSize", 0);
             boolean verbose = params.getAsBool("verbose", true);
             File outputFile = params.getAsFile("output", "compressed-term-index.txt.gz");     
             try {
                 new D4().eqs(
                         inputFile,
+                        bufferSize,
                         verbose,
                         outputFile
                 );
@@ -754,6 +1023,7 @@ public class D4 {
                         new Parameter("decrease", "<double> [default: 0.05]"),
                         new Parameter("iterations", "<int> [default: 5]"),
                         new Parameter("threads", "<int> [default: 6]"),
+                        new Parameter("cache", "<directory> [default: none]"),
                         new Parameter("verbose", "<boolean> [default: true]"),
                         new Parameter("columns", "<file> [default: 'expanded-columns.txt.gz']")
                     },
@@ -767,6 +1037,10 @@ public class D4 {
                     .getAsBigDecimal("decrease", new BigDecimal("0.05"));
             int numberOfIterations = params.getAsInt("iterations", 5);
             int threads = params.getAsInt("threads", 6);
+            File cacheDir = null;
+            if (params.has("cache")) {
+                cacheDir = params.getAsFile("cache", null);
+            }
             boolean verbose = params.getAsBool("verbose", true);
             File columnsFile = params.getAsFile("columns", "expanded-columns.txt.gz");     
             try {
@@ -778,6 +1052,7 @@ public class D4 {
                         numberOfIterations,
                         decreaseFactor,
                         threads,
+                        cacheDir,
                         verbose,
                         new TelemetryPrinter(),
                         columnsFile
@@ -839,6 +1114,75 @@ public class D4 {
                 LOGGER.log(Level.SEVERE, STEP_LOCAL_DOMAINS, ex);
                 System.exit(-1);
             }
+        } else if (command.equals(STEP_EXPAND_LOCAL_DOMAINS)) {
+            // ----------------------------------------------------------------
+            // EXPAND COLUMNS AND DISCOVER LOCAL DOMAINS
+            // ----------------------------------------------------------------
+            CLP params = new CLP(
+                    new Parameter[] {
+                        new Parameter(
+                                "eqs",
+                                "<file> [default: 'compressed-term-index.txt.gz']"
+                        ),
+                        new Parameter("signatures", "<file> [default: 'signatures.txt.gz']"),
+                        new Parameter(
+                                "trimmer",
+                                "<string> [default: " + D4Config.TRIMMER_CENTRIST + "]"
+                        ),
+                        new Parameter("expandThreshold", "<constraint> [default: 'GT0.25']"),
+                        new Parameter("decrease", "<double> [default: 0.05]"),
+                        new Parameter("iterations", "<int> [default: 5]"),
+                        new Parameter("originalonly", "<boolean> [default: false]"),
+                        new Parameter("threads", "<int> [default: 6]"),
+                        new Parameter("cache", "<directory> [default: none]"),
+                        new Parameter("verbose", "<boolean> [default: true]"),
+                        new Parameter("columns", "<file> [default: none]"),
+                        new Parameter(
+                                "localdomains",
+                                "<file> [default: 'local-domains.txt.gz']"
+                        )
+                    },
+                    args
+            );
+            File eqFile = params.getAsFile("eqs", "compressed-term-index.txt.gz");
+            File signatureFile = params.getAsFile("signatures", "signatures.txt.gz");     
+            String trimmer = params.getAsString("trimmer", D4Config.TRIMMER_CENTRIST);
+            Threshold expandThreshold = params.getAsConstraint("expandThreshold", "GT0.25");
+            BigDecimal decreaseFactor = params
+                    .getAsBigDecimal("decrease", new BigDecimal("0.05"));
+            int numberOfIterations = params.getAsInt("iterations", 5);
+            boolean originalOnly = params.getAsBool("originalonly", false);
+            int threads = params.getAsInt("threads", 6);
+            File cacheDir = null;
+            if (params.has("cache")) {
+                cacheDir = params.getAsFile("cache", null);
+            }
+            boolean verbose = params.getAsBool("verbose", true);
+            File columnsFile = null;
+            if (params.has("columns")) {
+                columnsFile = params.getAsFile("columns", null);
+            }
+            File localDomainFile = params.getAsFile("localdomains", "local-domains.txt.gz");
+            try {
+                new D4().expandLocalDomains(
+                        eqFile,
+                        signatureFile,
+                        trimmer,
+                        expandThreshold,
+                        numberOfIterations,
+                        decreaseFactor,
+                        originalOnly,
+                        threads,
+                        cacheDir,
+                        verbose,
+                        new TelemetryPrinter(),
+                        columnsFile,
+                        localDomainFile
+                );
+            } catch (java.io.IOException ex) {
+                LOGGER.log(Level.SEVERE, STEP_EXPAND_LOCAL_DOMAINS, ex);
+                System.exit(-1);
+            }
         } else if (command.equals(STEP_STRONG_DOMAINS)) {
             // ----------------------------------------------------------------
             // PRUNE STRONG DOMAINS
@@ -857,6 +1201,7 @@ public class D4 {
                         new Parameter("minSupport",  "<constraint> [default: 'GT0.1']"),
                         new Parameter("supportFraction",  "<double> [default: 0.25]"),
                         new Parameter("threads", "<int> [default: 6]"),
+                        new Parameter("overlaps", "<file> [default: none]"),
                         new Parameter("verbose", "<boolean> [default: true]"),
                         new Parameter(
                                 "strongdomains",
@@ -872,6 +1217,10 @@ public class D4 {
             BigDecimal supportFraction = params
                     .getAsBigDecimal("supportFraction", new BigDecimal("0.25"));
             int threads = params.getAsInt("threads", 6);
+            File overlapFile = null;
+            if (params.has("overlaps")) {
+                overlapFile = params.getAsFile("overlaps", null);
+            }
             boolean verbose = params.getAsBool("verbose", true);
             File strongDomainFile = params.getAsFile("strongdomains", "strong-domains.txt.gz");
             try {
@@ -882,6 +1231,7 @@ public class D4 {
                         minSupportConstraint,
                         supportFraction,
                         threads,
+                        overlapFile,
                         verbose,
                         new TelemetryPrinter(),
                         strongDomainFile
@@ -969,6 +1319,7 @@ public class D4 {
                                 "<file> [default: 'strong-domains.txt.gz']"
                         ),
                         new Parameter("sampleSize", "<int> [default: 100]"),
+                        new Parameter("threads", "<int> [default: 6]"),
                         new Parameter("verbose", "<boolean> [default: true]"),
                         new Parameter("output", "<direcory> [default: 'domains']"),
                     },
@@ -979,6 +1330,7 @@ public class D4 {
             File columnsFile = params.getAsFile("columns", "columns.tsv");
             File domainsFile = params.getAsFile("domains", "strong-domains.txt.gz");
             int samleSize = params.getAsInt("sampleSize", 100);
+            int threads = params.getAsInt("threads", 6);
             boolean verbose = params.getAsBool("verbose", true);
             File outputDir = params.getAsFile("output", "domains");
             try {
@@ -988,10 +1340,11 @@ public class D4 {
                         columnsFile,
                         domainsFile,
                         samleSize,
+                        threads,
                         verbose,
                         outputDir
                 );
-            } catch (java.io.IOException ex) {
+            } catch (java.lang.InterruptedException | java.io.IOException ex) {
                 LOGGER.log(Level.SEVERE, "EXPORT DOMAINS", ex);
                 System.exit(-1);
             }
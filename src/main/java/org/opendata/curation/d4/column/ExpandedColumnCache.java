@@ -0,0 +1,204 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.curation.d4.column;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.opendata.core.constraint.Threshold;
+import org.opendata.core.io.FileSetReader;
+import org.opendata.core.io.FileSystem;
+import org.opendata.core.set.HashIDSet;
+import org.opendata.core.set.IDSet;
+import org.opendata.core.set.IDSetKey;
+import org.opendata.core.set.ImmutableIDSet;
+import org.opendata.core.util.StringHelper;
+
+/**
+ * Persistent cache for expanded columns. The expansion of a column only
+ * depends on the set of original column nodes, the EQ term counts, the
+ * signature blocks, and the expansion parameters. The cache maintains one
+ * file for each combination of EQ and signature file fingerprint (file names,
+ * sizes, and modification times) and expansion parameters (trimmer,
+ * threshold, decrease factor, and number of iterations). Within each file
+ * the expansions are keyed by the original column nodes.
+ *
+ * Each line in a cache file contains the comma-separated list of original
+ * column nodes and (optionally) the comma-separated list of expansion nodes.
+ * Only the entries that were read or written during a run are kept when the
+ * cache file is written.
+ *
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class ExpandedColumnCache {
+
+    private HashMap<IDSetKey, IDSet> _entries = null;
+    private final File _file;
+    private int _hitCount = 0;
+    private HashMap<IDSetKey, IDSet> _usedEntries = null;
+
+    public ExpandedColumnCache(
+            File directory,
+            File eqFile,
+            File signatureFile,
+            String trimmer,
+            Threshold threshold,
+            BigDecimal decreaseFactor,
+            int numberOfIterations
+    ) {
+
+        // The EQ file provides the columns and the term counts that are used
+        // during expansion.
+        StringBuilder buf = new StringBuilder()
+                .append(eqFile.getName())
+                .append(":").append(eqFile.length())
+                .append(":").append(eqFile.lastModified())
+                .append("\t");
+        for (File file : new FileSetReader(signatureFile, false)) {
+            buf.append(file.getName())
+                    .append(":").append(file.length())
+                    .append(":").append(file.lastModified())
+                    .append("\t");
+        }
+        buf.append(trimmer)
+                .append("\t").append(threshold.toPlainString())
+                .append("\t").append(decreaseFactor.toPlainString())
+                .append("\t").append(numberOfIterations);
+
+        _file = FileSystem.joinPath(
+                directory,
+                "expansion-" + DigestUtils.md5Hex(buf.toString()) + ".txt.gz"
+        );
+    }
+
+    /**
+     * Write all cache entries that were used in the current run to the cache
+     * file. The file is first written to a temporary file that then replaces
+     * the existing cache file.
+     */
+    public void close() {
+
+        FileSystem.createParentFolder(_file);
+        File tmpFile = new File(_file.getAbsolutePath() + ".tmp.gz");
+        try (PrintWriter out = FileSystem.openPrintWriter(tmpFile)) {
+            for (IDSetKey key : _usedEntries.keySet()) {
+                String line = StringHelper.joinIntegers(key.values());
+                IDSet expansion = _usedEntries.get(key);
+                if (!expansion.isEmpty()) {
+                    line += "\t" + expansion.toIntString();
+                }
+                out.println(line);
+            }
+        } catch (java.io.IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        if (_file.exists()) {
+            _file.delete();
+        }
+        if (!tmpFile.renameTo(_file)) {
+            throw new RuntimeException(
+                    "Could not write cache file " + _file.getAbsolutePath()
+            );
+        }
+
+        _entries = null;
+        _usedEntries = null;
+    }
+
+    /**
+     * Get the cached expansion for the given column. Returns null if the
+     * cache does not contain an entry for the original nodes of the column.
+     *
+     * @param column
+     * @return
+     */
+    public ExpandedColumn get(ExpandedColumn column) {
+
+        IDSetKey key = new IDSetKey(column.originalNodes());
+        IDSet expansion = _entries.get(key);
+        if (expansion != null) {
+            _usedEntries.put(key, expansion);
+            _hitCount++;
+            return new ImmutableExpandedColumn(
+                    column.id(),
+                    column.originalNodes(),
+                    expansion
+            );
+        }
+        return null;
+    }
+
+    /**
+     * Number of cache hits since the cache was opened.
+     *
+     * @return
+     */
+    public int hitCount() {
+
+        return _hitCount;
+    }
+
+    /**
+     * Read the cache file (if it exists).
+     */
+    public void open() {
+
+        _entries = new HashMap<>();
+        _usedEntries = new HashMap<>();
+        _hitCount = 0;
+
+        if (!_file.exists()) {
+            return;
+        }
+
+        try (BufferedReader in = FileSystem.openReader(_file)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] tokens = line.split("\t");
+                IDSet expansion;
+                if (tokens.length >= 2) {
+                    expansion = new ImmutableIDSet(tokens[1]);
+                } else {
+                    expansion = new HashIDSet();
+                }
+                _entries.put(
+                        new IDSetKey(new ImmutableIDSet(tokens[0])),
+                        expansion
+                );
+            }
+        } catch (java.io.IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Add expansion result for a column to the cache.
+     *
+     * @param column
+     */
+    public void put(ExpandedColumn column) {
+
+        _usedEntries.put(
+                new IDSetKey(column.originalNodes()),
+                column.expandedNodes()
+        );
+    }
+}
@@ -24,6 +24,7 @@ import java.util.List;
 import org.opendata.core.set.HashIDSet;
 import org.opendata.core.set.HashObjectSet;
 import org.opendata.core.set.IDSet;
+import org.opendata.core.set.IDSetKey;
 import org.opendata.core.set.IdentifiableIDSet;
 import org.opendata.core.set.IdentifiableIDSetWrapper;
 import org.opendata.core.set.IdentifiableObjectSet;
@@ -38,7 +39,7 @@ import org.opendata.core.set.IdentifiableObjectSet;
  */
 public class ExpandedColumnIndex implements ExpandedColumnConsumer, Iterable<ExpandedColumn> {
 
-    private HashMap<String, Integer> _columnIndex;
+    private HashMap<IDSetKey, Integer> _columnIndex;
     private List<ExpandedColumn> _columnList = null;
     private HashMap<Integer, HashIDSet> _columnMapping;
     
@@ -75,7 +76,7 @@ public class ExpandedColumnIndex implements ExpandedColumnConsumer, Iterable<Exp
     @Override
     public final void consume(ExpandedColumn column) {
 
-        String key = column.originalNodes().toIntString();
+        IDSetKey key = new IDSetKey(column.originalNodes());
         if (!_columnIndex.containsKey(key)) {
             _columnList.add(column);
             _columnIndex.put(key, column.id());
@@ -24,9 +24,11 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.opendata.curation.d4.telemetry.TelemetryCollector;
@@ -35,16 +37,27 @@ import org.opendata.curation.d4.signature.trim.SignatureTrimmer;
 import org.opendata.curation.d4.SignatureTrimmerFactory;
 import org.opendata.core.constraint.Threshold;
 import org.opendata.core.set.HashIDSet;
+import org.opendata.core.set.IDSetKey;
 import org.opendata.core.set.IdentifiableObjectSet;
 import org.opendata.core.util.MemUsagePrinter;
+import org.opendata.curation.d4.domain.UndirectedDomainGenerator;
+import org.opendata.curation.d4.domain.UniqueDomainSet;
 import org.opendata.curation.d4.signature.SignatureBlocksDispatcher;
 import org.opendata.db.column.Column;
 import org.opendata.curation.d4.signature.SignatureBlocksStream;
 
 /**
- * Expand columns using multiple threads. Each thread expands a single columns
- * while a given queue is not empty. This implementation relies on a in-memory
- * index of signature blocks.
+ * Expand columns using multiple threads. Column expansion is done in rounds.
+ * In each round every thread makes a single pass over the signature blocks for
+ * its assigned set of columns. At the start of each round the columns that
+ * have not converged yet are re-assigned to the threads based on their
+ * estimated cost (column size times average signature length) such that the
+ * work for each thread is roughly the same.
+ * 
+ * If a local domain set is given, the local domains for each column are
+ * generated as part of the signature pass in the round after the column
+ * expansion has converged. This avoids a separate pass over the signature
+ * blocks for the local domain generation step.
  * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
@@ -55,117 +68,114 @@ public class ParallelColumnExpander {
     private final static Logger LOGGER = Logger
             .getLogger(ParallelColumnExpander.class.getName());
     
-    private class ExpanderTask implements Runnable {
+    /**
+     * Run a single expansion round for a list of columns. Returns the
+     * execution time in milliseconds.
+     */
+    private class ExpanderTask implements Callable<Long> {
 
-        private final BigDecimal _decreaseFactor;
-        private final List<ExpandedColumn> _columns;
-        private final ExpandedColumnConsumer _consumer;
         private final Integer[] _eqTermCounts;
         private final int _id;
-        private final int _numberOfIterations;
+        private final RoundPartition _partition;
+        private final int _round;
         private final SignatureBlocksStream _signatures;
-        private final Threshold _threshold;
+        private final LocalDomainTarget _target;
         private final SignatureTrimmerFactory _trimmerFactory;
         private final boolean _verbose;
         
         public ExpanderTask(
                 int id,
+                int round,
                 Integer[] eqTermCounts,
-                List<ExpandedColumn> columns,
+                RoundPartition partition,
                 SignatureBlocksStream signatures,
                 SignatureTrimmerFactory trimmerFactory,
-                Threshold threshold,
-                BigDecimal decreaseFactor,
-                int numberOfIterations,
-                boolean verbose,
-                ExpandedColumnConsumer consumer
+                LocalDomainTarget target,
+                boolean verbose
         ) {
             _id = id;
+            _round = round;
             _eqTermCounts = eqTermCounts;
-            _columns = columns;
+            _partition = partition;
             _signatures = signatures;
             _trimmerFactory = trimmerFactory;
-            _threshold = threshold;
-            _decreaseFactor = decreaseFactor;
-            _numberOfIterations = numberOfIterations;
+            _target = target;
             _verbose = verbose;
-            _consumer = consumer;
         }
         
         @Override
-        public void run() {
+        public Long call() {
 
-            _consumer.open();
-            
             Date start = new Date();
             
-            List<SingleColumnExpander> columns;
-            columns = new ArrayList<>();
-            for (ExpandedColumn column : _columns) {
-                    SingleColumnExpander expander;
-                    expander = new SingleColumnExpander(
-                            _eqTermCounts,
-                            column,
-                            _threshold,
-                            _decreaseFactor,
-                            _numberOfIterations
-                    );
-                    columns.add(expander);
+            SignatureBlocksDispatcher dispatcher;
+            dispatcher = new SignatureBlocksDispatcher();
+            for (SingleColumnExpander expander : _partition.expanders) {
+                SignatureTrimmer trimmer;
+                trimmer = _trimmerFactory
+                        .getSignatureTrimmer(expander.column(), expander);
+                dispatcher.add(trimmer);
             }
-            int round = 0;
-            while (!columns.isEmpty()) {
-                SignatureBlocksDispatcher dispatcher;
-                dispatcher = new SignatureBlocksDispatcher();
-                for (SingleColumnExpander expander : columns) {
-                    SignatureTrimmer trimmer;
-                    trimmer = _trimmerFactory
-                            .getSignatureTrimmer(expander.column(), expander);
-                    dispatcher.add(trimmer);
-                }
-                round++;
-                if (_verbose) {
-                    LOGGER.log(
-                            Level.INFO,
-                            String.format(
-                                    "%d ROUND %d WITH %d columns",
-                                    _id,
-                                    round,
-                                    columns.size()
-                            )
-                    );
-                }
-                _signatures.stream(dispatcher);
-                List<SingleColumnExpander> candidates = new ArrayList<>();
-                for (SingleColumnExpander expander : columns) {
-                    if (expander.isDone()) {
-                        _consumer.consume(expander.column());
-                    } else {
-                        candidates.add(expander);
-                    }
-                }
-                columns = candidates;
+            for (ExpandedColumn column : _partition.domainColumns) {
+                UndirectedDomainGenerator domainGenerator;
+                domainGenerator = new UndirectedDomainGenerator(
+                        column,
+                        _target.domains,
+                        _eqTermCounts
+                );
+                dispatcher.add(
+                        _target.trimmerFactory
+                                .getSignatureTrimmer(column, domainGenerator)
+                );
             }
-            
-            Date end = new Date();
-            
-            _consumer.close();
-
-            long execTime = end.getTime() - start.getTime();
-            
             if (_verbose) {
                 LOGGER.log(
                         Level.INFO,
                         String.format(
-                                "%d DONE WITH %d COLUMNS IN %d ms",
+                                "%d ROUND %d WITH %d columns AND %d DOMAIN COLUMNS",
                                 _id,
-                                _columns.size(),
-                                execTime
+                                _round,
+                                _partition.expanders.size(),
+                                _partition.domainColumns.size()
                         )
                 );
             }
+            _signatures.stream(dispatcher);
+            
+            Date end = new Date();
+            
+            return end.getTime() - start.getTime();
         }
     }
     
+    /**
+     * Result set and signature trimmer factory for local domains that are
+     * generated for converged columns.
+     */
+    private class LocalDomainTarget {
+        
+        private final UniqueDomainSet domains;
+        private final SignatureTrimmerFactory trimmerFactory;
+        
+        public LocalDomainTarget(
+                SignatureTrimmerFactory trimmerFactory,
+                UniqueDomainSet domains
+        ) {
+            this.trimmerFactory = trimmerFactory;
+            this.domains = domains;
+        }
+    }
+    
+    /**
+     * Work that is assigned to a single thread in an expansion round.
+     */
+    private class RoundPartition {
+        
+        private final List<ExpandedColumn> domainColumns = new ArrayList<>();
+        private final List<SingleColumnExpander> expanders = new ArrayList<>();
+        private double load = 0;
+    }
+    
     private final TelemetryCollector _telemetry;
     
     public ParallelColumnExpander(TelemetryCollector telemetry) {
@@ -202,11 +212,109 @@ public class ParallelColumnExpander {
             boolean verbose,
             File outputFile
     ) {
-        HashMap<String, ExpandedColumn> columnIndex = new HashMap<>();
+        this.run(
+                eqTermCounts,
+                signatures,
+                trimmerFactory,
+                columns,
+                threshold,
+                decreaseFactor,
+                numberOfIterations,
+                threads,
+                verbose,
+                null,
+                outputFile
+        );
+    }
+
+    /**
+     * Expand the given set of columns. If an expansion cache is given, columns
+     * whose expansion is contained in the cache are not expanded again. The
+     * expansions for all other columns are added to the cache.
+     * 
+     * @param eqTermCounts
+     * @param signatures
+     * @param trimmerFactory
+     * @param columns
+     * @param threshold
+     * @param decreaseFactor
+     * @param numberOfIterations
+     * @param threads
+     * @param verbose
+     * @param cache
+     * @param outputFile 
+     */
+    public void run(
+            Integer[] eqTermCounts,
+            SignatureBlocksStream signatures,
+            SignatureTrimmerFactory trimmerFactory,
+            IdentifiableObjectSet<Column> columns,
+            Threshold threshold,
+            BigDecimal decreaseFactor,
+            int numberOfIterations,
+            int threads,
+            boolean verbose,
+            ExpandedColumnCache cache,
+            File outputFile
+    ) {
+        this.run(
+                eqTermCounts,
+                signatures,
+                trimmerFactory,
+                columns,
+                threshold,
+                decreaseFactor,
+                numberOfIterations,
+                threads,
+                verbose,
+                cache,
+                null,
+                null,
+                outputFile
+        );
+    }
+    
+    /**
+     * Expand the given set of columns and generate the local domains for each
+     * expanded column. The local domains are added to the given domain set.
+     * The domain set has to be initialized with an index for the unexpanded
+     * columns. Writing the expanded columns to file is optional, i.e., the
+     * output file may be null.
+     * 
+     * @param eqTermCounts
+     * @param signatures
+     * @param trimmerFactory
+     * @param columns
+     * @param threshold
+     * @param decreaseFactor
+     * @param numberOfIterations
+     * @param threads
+     * @param verbose
+     * @param cache
+     * @param domainTrimmerFactory
+     * @param domains
+     * @param outputFile 
+     */
+    public void run(
+            Integer[] eqTermCounts,
+            SignatureBlocksStream signatures,
+            SignatureTrimmerFactory trimmerFactory,
+            IdentifiableObjectSet<Column> columns,
+            Threshold threshold,
+            BigDecimal decreaseFactor,
+            int numberOfIterations,
+            int threads,
+            boolean verbose,
+            ExpandedColumnCache cache,
+            SignatureTrimmerFactory domainTrimmerFactory,
+            UniqueDomainSet domains,
+            File outputFile
+    ) {
+        HashMap<IDSetKey, ExpandedColumn> columnIndex = new HashMap<>();
         HashMap<Integer, HashIDSet> groups = new HashMap<>();
-        HashMap<String, Integer> mapping = new HashMap<>();
+        HashMap<IDSetKey, Integer> mapping = new HashMap<>();
         for (Column column : columns) {
-            String key = column.toIntString();
+            IDSetKey key = new IDSetKey(column);
             if (!columnIndex.containsKey(key)) {
                 columnIndex.put(key, new MutableExpandedColumn(column));
             } else {
@@ -230,6 +338,11 @@ public class ParallelColumnExpander {
         );
         Collections.reverse(columnList);
         
+        LocalDomainTarget target = null;
+        if (domains != null) {
+            target = new LocalDomainTarget(domainTrimmerFactory, domains);
+        }
+        
         Date start = new Date();
         if (verbose) {
             System.out.println(
@@ -243,39 +356,146 @@ public class ParallelColumnExpander {
             new MemUsagePrinter().print();
         }
                 
-        ExpandedColumnWriter writer;
-        writer = new ExpandedColumnWriter(outputFile, groups);
+        ExpandedColumnWriter writer = null;
+        if (outputFile != null) {
+            writer = new ExpandedColumnWriter(outputFile, groups);
+            writer.open();
+        }
         
-        writer.open();
+        if (cache != null) {
+            cache.open();
+        }
+        
+        // Converged columns for which local domains still need to be
+        // generated.
+        List<ExpandedColumn> pending = new ArrayList<>();
         
-        ExecutorService es = Executors.newCachedThreadPool();
-        for (int iThread = 0; iThread < threads; iThread++) {
-            List<ExpandedColumn> taskColumns = new ArrayList<>();
-            for (int iCol = iThread; iCol < columnList.size(); iCol += threads) {
-                taskColumns.add(columnList.get(iCol));
+        List<SingleColumnExpander> active = new ArrayList<>();
+        for (ExpandedColumn column : columnList) {
+            if (cache != null) {
+                ExpandedColumn cachedColumn = cache.get(column);
+                if (cachedColumn != null) {
+                    if (writer != null) {
+                        writer.consume(cachedColumn);
+                    }
+                    if (target != null) {
+                        pending.add(cachedColumn);
+                    }
+                    continue;
+                }
             }
-            ExpanderTask expander = new ExpanderTask(
-                    iThread,
-                    eqTermCounts,
-                    taskColumns,
-                    signatures,
-                    trimmerFactory,
-                    threshold,
-                    decreaseFactor,
-                    numberOfIterations,
-                    verbose,
-                    writer
+            active.add(
+                    new SingleColumnExpander(
+                            eqTermCounts,
+                            column,
+                            threshold,
+                            decreaseFactor,
+                            numberOfIterations
+                    )
             );
-            es.execute(expander);
+        }
+        
+        if ((verbose) && (cache != null)) {
+            System.out.println(
+                    String.format(
+                            "%d COLUMN GROUPS FROM CACHE, EXPAND %d",
+                            cache.hitCount(),
+                            active.size()
+                    )
+            );
+        }
+        
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        int round = 0;
+        double avgSignatureLength = 1;
+        while ((!active.isEmpty()) || (!pending.isEmpty())) {
+            round++;
+            List<RoundPartition> partitions;
+            partitions = this.schedule(active, pending, avgSignatureLength, threads);
+            List<Callable<Long>> tasks = new ArrayList<>();
+            for (int iTask = 0; iTask < partitions.size(); iTask++) {
+                tasks.add(
+                        new ExpanderTask(
+                                iTask,
+                                round,
+                                eqTermCounts,
+                                partitions.get(iTask),
+                                signatures,
+                                trimmerFactory,
+                                target,
+                                verbose
+                        )
+                );
+            }
+            Date roundStart = new Date();
+            long busyTime = 0;
+            try {
+                for (Future<Long> result : es.invokeAll(tasks)) {
+                    busyTime += result.get();
+                }
+            } catch (java.lang.InterruptedException | ExecutionException ex) {
+                es.shutdownNow();
+                throw new RuntimeException(ex);
+            }
+            long roundTime = new Date().getTime() - roundStart.getTime();
+            final int domainColumnCount = pending.size();
+            pending = new ArrayList<>();
+            List<SingleColumnExpander> candidates = new ArrayList<>();
+            double lengthSum = 0;
+            for (SingleColumnExpander expander : active) {
+                lengthSum += expander.averageSignatureLength();
+                if (expander.isDone()) {
+                    if (writer != null) {
+                        writer.consume(expander.column());
+                    }
+                    if (cache != null) {
+                        cache.put(expander.column());
+                    }
+                    if (target != null) {
+                        pending.add(expander.column());
+                    }
+                } else {
+                    candidates.add(expander);
+                }
+            }
+            if (!active.isEmpty()) {
+                avgSignatureLength = lengthSum / (double)active.size();
+            }
+            if (verbose) {
+                // Utilization is the fraction of the available thread time
+                // in this round that was spent expanding columns.
+                long utilization = 100;
+                if (roundTime > 0) {
+                    utilization = Math.round(
+                            (100.0 * busyTime) / ((double)threads * roundTime)
+                    );
+                }
+                String key = String.format("%s ROUND %d", TELEMETRY_ID, round);
+                _telemetry.add(key, roundTime);
+                _telemetry.add(key + " UTILIZATION (%)", utilization);
+                LOGGER.log(
+                        Level.INFO,
+                        String.format(
+                                "ROUND %d: %d COLUMNS (%d DOMAIN COLUMNS) ON %d THREADS, %d DONE",
+                                round,
+                                active.size(),
+                                domainColumnCount,
+                                partitions.size(),
+                                active.size() - candidates.size()
+                        )
+                );
+            }
+            active = candidates;
         }
         es.shutdown();
-        try {
-            es.awaitTermination(threads, TimeUnit.DAYS);
-        } catch (java.lang.InterruptedException ex) {
-            throw new RuntimeException(ex);
+        
+        if (writer != null) {
+            writer.close();
         }
         
-        writer.close();
+        if (cache != null) {
+            cache.close();
+        }
         
         Date end = new Date();
         
@@ -286,4 +506,70 @@ public class ParallelColumnExpander {
             new MemUsagePrinter().print();
         }
     }
+    
+    /**
+     * Assign columns to at most the given number of partitions. Uses the
+     * longest-processing-time-first rule: columns are sorted in decreasing
+     * order of their estimated cost and each column is assigned to the
+     * partition with the lowest total cost so far. Converged columns that
+     * are waiting for local domain generation are assigned afterwards. Their
+     * cost is estimated using the average signature length of the previous
+     * round.
+     * 
+     * @param columns
+     * @param domainColumns
+     * @param avgSignatureLength
+     * @param threads
+     * @return 
+     */
+    private List<RoundPartition> schedule(
+            List<SingleColumnExpander> columns,
+            List<ExpandedColumn> domainColumns,
+            double avgSignatureLength,
+            int threads
+    ) {
+        
+        final int size = Math.min(
+                threads,
+                columns.size() + domainColumns.size()
+        );
+        
+        List<SingleColumnExpander> columnList = new ArrayList<>(columns);
+        Collections.sort(columnList, (SingleColumnExpander c1, SingleColumnExpander c2) -> 
+                Double.compare(c2.cost(), c1.cost())
+        );
+
+        List<RoundPartition> partitions = new ArrayList<>();
+        for (int iPart = 0; iPart < size; iPart++) {
+            partitions.add(new RoundPartition());
+        }
+        for (SingleColumnExpander column : columnList) {
+            RoundPartition partition = this.minLoad(partitions);
+            partition.expanders.add(column);
+            partition.load += column.cost();
+        }
+        
+        List<ExpandedColumn> domainList = new ArrayList<>(domainColumns);
+        Collections.sort(domainList, (ExpandedColumn c1, ExpandedColumn c2) -> 
+                Integer.compare(c2.totalSize(), c1.totalSize())
+        );
+        for (ExpandedColumn column : domainList) {
+            RoundPartition partition = this.minLoad(partitions);
+            partition.domainColumns.add(column);
+            partition.load += column.totalSize() * avgSignatureLength;
+        }
+        
+        return partitions;
+    }
+    
+    private RoundPartition minLoad(List<RoundPartition> partitions) {
+        
+        RoundPartition result = partitions.get(0);
+        for (int iPart = 1; iPart < partitions.size(); iPart++) {
+            if (partitions.get(iPart).load < result.load) {
+                result = partitions.get(iPart);
+            }
+        }
+        return result;
+    }
 }
@@ -44,6 +44,8 @@ public class SingleColumnExpander implements RobustSignatureConsumer {
     private int _expansionSize;
     private int _iteration;
     private final int _numberOfIterations;
+    private long _signatureCount = 0;
+    private long _signatureLength = 0;
     private HashMap<Integer, SupportCounter> _support;
     private final Threshold _threshold;
         
@@ -76,11 +78,39 @@ public class SingleColumnExpander implements RobustSignatureConsumer {
         _expansionSize = 0;
     }
 
+    /**
+     * Average length of the robust signatures that were consumed in the
+     * previous round. Returns one if no signatures have been consumed yet.
+     * 
+     * @return 
+     */
+    public double averageSignatureLength() {
+        
+        if (_signatureCount > 0) {
+            return (double)_signatureLength / (double)_signatureCount;
+        } else {
+            return 1;
+        }
+    }
+    
     public ExpandedColumn column() {
 
         return _column;
     }
 
+    /**
+     * Estimated cost for the next expansion round. The cost is the number of
+     * nodes in the column times the average length of the robust signatures
+     * that were consumed in the previous round. If no signatures have been
+     * consumed yet the average length is assumed to be one.
+     * 
+     * @return 
+     */
+    public double cost() {
+        
+        return _column.totalSize() * this.averageSignatureLength();
+    }
+
     public boolean isDone() {
 
         return _done;
@@ -153,7 +183,9 @@ public class SingleColumnExpander implements RobustSignatureConsumer {
 
         boolean isOriginalNode = _column.isColumnNode(sig.id());
         int weight = _eqTermCounts[sig.id()];
+        _signatureCount++;
         for (int nodeId : sig) {
+            _signatureLength++;
             if (!_column.contains(nodeId)) {
                 SupportCounter sup;
                 if (_support.containsKey(nodeId)) {
@@ -175,6 +207,8 @@ public class SingleColumnExpander implements RobustSignatureConsumer {
     public void open() {
 
         _done = false;        
+        _signatureCount = 0;
+        _signatureLength = 0;
         _support = new HashMap<>();
     }
     
@@ -71,6 +71,23 @@ public class DomainHelper {
         return overlap;
     }
 
+    /**
+     * Jaccard similarity for a pair of domains with a given term-weighted
+     * overlap.
+     * 
+     * @param domI
+     * @param domJ
+     * @param overlap
+     * @return 
+     */
+    public BigDecimal termOverlap(Domain domI, Domain domJ, int overlap) {
+        
+        int sizeI = _domainSizes.get(domI.id());
+        int sizeJ = _domainSizes.get(domJ.id());
+        
+        return new JaccardIndex().sim(sizeI, sizeJ, overlap);
+    }
+    
     public BigDecimal termOverlap(Domain domI, Domain domJ) {
         
         int overlap = this.overlap(domI.nodes(), domJ.nodes(), _eqTermCounts);
@@ -0,0 +1,696 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.curation.d4.domain;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opendata.core.constraint.GreaterOrEqualConstraint;
+import org.opendata.core.constraint.Threshold;
+import org.opendata.core.io.FileSystem;
+import org.opendata.core.set.IDSetKey;
+
+/**
+ * Sparse matrix of term-weighted overlaps between local domains. The matrix
+ * contains an entry for every pair of overlapping domains whose Jaccard
+ * similarity is at least the lower bound of a given list of constraints. If
+ * the list is empty, or if one of the constraints has no lower bound, the
+ * matrix contains all pairs of overlapping domains. A matrix can be filtered
+ * to contain only those pairs that satisfy at least one constraint. Rows
+ * and columns are domain positions in an EQDomainIndex. Each row contains
+ * all matching domains, i.e., the matrix is symmetric.
+ * 
+ * Candidate pairs are generated using a size-bounded prefix join. For a
+ * lower bound t on the Jaccard similarity, two domains of term-weighted size
+ * a and b can only match if min(a, b) >= t * max(a, b). In addition, their
+ * overlap has to be at least t * max(a, b). Equivalence classes are ordered
+ * globally by the number of domains that contain them (rare classes first).
+ * Each domain is indexed only by the shortest prefix of its equivalence
+ * classes such that the remaining suffix has a term-weighted size below
+ * t * a. Two domains that match have to share at least one prefix element.
+ * The exact overlap is computed for all candidate pairs.
+ * 
+ * The matrix is stored in compressed sparse row format. It is computed in
+ * parallel. Each thread processes chunks of consecutive rows and buffers the
+ * results in its own arrays. The chunks are merged into the final arrays when
+ * all threads are done.
+ * 
+ * The matrix can be written to file. The file contains a fingerprint of the
+ * domains and equivalence class term counts, and the lower bound the matrix
+ * was computed for. A matrix file can be used for any list of constraints
+ * whose lower bound is not smaller than the bound in the file.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class DomainOverlapMatrix {
+    
+    private static final int CHUNK_SIZE = 256;
+    // Relative slack for bounds that are computed with double precision.
+    private static final double SLACK = 1e-9;
+    private static final int VERSION = 3;
+    
+    /**
+     * Matching pairs (row, column) with column > row for a chunk of
+     * consecutive rows.
+     */
+    private class RowChunk {
+        
+        private int[] columns = new int[CHUNK_SIZE];
+        private long comparisons = 0;
+        private int[] overlaps = new int[CHUNK_SIZE];
+        private int[] rows = new int[CHUNK_SIZE];
+        private int size = 0;
+        private final int start;
+        
+        public RowChunk(int start) {
+            
+            this.start = start;
+        }
+        
+        public void add(int row, int column, int overlap) {
+            
+            if (size == columns.length) {
+                columns = Arrays.copyOf(columns, size * 2);
+                overlaps = Arrays.copyOf(overlaps, size * 2);
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size] = row;
+            columns[size] = column;
+            overlaps[size] = overlap;
+            size++;
+        }
+    }
+    
+    /**
+     * Generate and verify candidate pairs for chunks of rows until all rows
+     * are processed.
+     */
+    private class JoinTask implements Runnable {
+
+        private final Threshold _boundConstraint;
+        private final List<RowChunk> _chunks;
+        private final EQDomainIndex _index;
+        private final double _lowerBound;
+        private final AtomicInteger _nextRow;
+        private final int[][] _postings;
+        private final int[][] _prefixes;
+        
+        public JoinTask(
+                EQDomainIndex index,
+                Threshold boundConstraint,
+                double lowerBound,
+                int[][] prefixes,
+                int[][] postings,
+                AtomicInteger nextRow,
+                List<RowChunk> chunks
+        ) {
+            _index = index;
+            _boundConstraint = boundConstraint;
+            _lowerBound = lowerBound;
+            _prefixes = prefixes;
+            _postings = postings;
+            _nextRow = nextRow;
+            _chunks = chunks;
+        }
+        
+        @Override
+        public void run() {
+
+            final int rows = _index.length();
+            
+            int[] candidates = new int[rows];
+            int[] marker = new int[rows];
+            Arrays.fill(marker, -1);
+            
+            int start;
+            while ((start = _nextRow.getAndAdd(CHUNK_SIZE)) < rows) {
+                int end = Math.min(start + CHUNK_SIZE, rows);
+                RowChunk chunk = new RowChunk(start);
+                for (int row = start; row < end; row++) {
+                    final int size = _index.size(row);
+                    final double minSize = size * _lowerBound * (1 - SLACK);
+                    final double maxSize;
+                    if (_lowerBound > 0) {
+                        maxSize = size / (_lowerBound * (1 - SLACK));
+                    } else {
+                        maxSize = Double.MAX_VALUE;
+                    }
+                    int count = 0;
+                    for (int eqId : _prefixes[row]) {
+                        final int[] posting = _postings[eqId];
+                        int iPos = this.firstWithMinSize(posting, minSize);
+                        for (; iPos < posting.length; iPos++) {
+                            final int column = posting[iPos];
+                            if (_index.size(column) > maxSize) {
+                                break;
+                            }
+                            if ((column > row) && (marker[column] != row)) {
+                                marker[column] = row;
+                                candidates[count++] = column;
+                            }
+                        }
+                    }
+                    chunk.comparisons += count;
+                    for (int iCand = 0; iCand < count; iCand++) {
+                        final int column = candidates[iCand];
+                        final int overlap = _index.overlap(row, column);
+                        if ((overlap > 0) && (this.isAboveBound(row, column, overlap))) {
+                            chunk.add(row, column, overlap);
+                        }
+                    }
+                }
+                _chunks.add(chunk);
+            }
+        }
+        
+        private int firstWithMinSize(int[] posting, double minSize) {
+            
+            int low = 0;
+            int high = posting.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (_index.size(posting[mid]) < minSize) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        private boolean isAboveBound(int row, int column, int overlap) {
+            
+            if (_boundConstraint == null) {
+                return true;
+            }
+            final int divisor = (_index.size(row) + _index.size(column)) - overlap;
+            return _boundConstraint.isSatisfied(overlap, divisor);
+        }
+    }
+    
+    private final int[] _columns;
+    private final long _comparisons;
+    private final long[] _fingerprint;
+    private final BigDecimal _lowerBound;
+    private final int[] _offsets;
+    private final int[] _overlaps;
+    
+    /**
+     * Compute the overlap matrix for all pairs of domains in the given index
+     * whose Jaccard similarity is at least the lower bound of the given
+     * constraints.
+     * 
+     * @param index
+     * @param constraints
+     * @param threads
+     * @throws java.lang.InterruptedException 
+     */
+    public DomainOverlapMatrix(
+            EQDomainIndex index,
+            Threshold[] constraints,
+            int threads
+    ) throws java.lang.InterruptedException {
+        
+        _fingerprint = fingerprint(index);
+        _lowerBound = lowerBound(constraints);
+        
+        final int rows = index.length();
+        
+        final double lowerBound = _lowerBound.doubleValue();
+        Threshold boundConstraint = null;
+        if (_lowerBound.compareTo(BigDecimal.ZERO) > 0) {
+            boundConstraint = new GreaterOrEqualConstraint(_lowerBound);
+        }
+        
+        // Order equivalence classes by the number of domains that contain
+        // them and get the prefix for each domain.
+        int maxEqId = -1;
+        for (int pos = 0; pos < rows; pos++) {
+            final int[] nodes = index.domain(pos).nodes();
+            if (nodes.length > 0) {
+                maxEqId = Math.max(maxEqId, nodes[nodes.length - 1]);
+            }
+        }
+        int[][] prefixes = new int[rows][];
+        int[] prefixCounts = new int[maxEqId + 1];
+        for (int pos = 0; pos < rows; pos++) {
+            final int[] nodes = index.domain(pos).nodes();
+            long[] order = new long[nodes.length];
+            for (int iNode = 0; iNode < nodes.length; iNode++) {
+                final int eqId = nodes[iNode];
+                order[iNode] = (((long)index.frequency(eqId)) << 32) | eqId;
+            }
+            Arrays.sort(order);
+            final double minOverlap = index.size(pos) * lowerBound * (1 - SLACK);
+            int suffixSize = index.size(pos);
+            int prefixLength = 0;
+            while ((prefixLength < order.length) && (suffixSize >= minOverlap)) {
+                final int eqId = (int)order[prefixLength];
+                suffixSize -= index.eqTermCount(eqId);
+                prefixLength++;
+            }
+            int[] prefix = new int[prefixLength];
+            for (int iNode = 0; iNode < prefixLength; iNode++) {
+                prefix[iNode] = (int)order[iNode];
+                prefixCounts[prefix[iNode]]++;
+            }
+            prefixes[pos] = prefix;
+        }
+        
+        // Posting lists for prefix elements. Domains in each list are sorted
+        // by their term-weighted size.
+        Integer[] bySize = new Integer[rows];
+        for (int pos = 0; pos < rows; pos++) {
+            bySize[pos] = pos;
+        }
+        Arrays.sort(bySize, (Integer p1, Integer p2) -> {
+            int comp = Integer.compare(index.size(p1), index.size(p2));
+            if (comp == 0) {
+                comp = Integer.compare(p1, p2);
+            }
+            return comp;
+        });
+        int[][] postings = new int[prefixCounts.length][];
+        for (int eqId = 0; eqId < prefixCounts.length; eqId++) {
+            postings[eqId] = new int[prefixCounts[eqId]];
+            prefixCounts[eqId] = 0;
+        }
+        for (int pos : bySize) {
+            for (int eqId : prefixes[pos]) {
+                postings[eqId][prefixCounts[eqId]++] = pos;
+            }
+        }
+        
+        AtomicInteger nextRow = new AtomicInteger(0);
+        List<List<RowChunk>> results = new ArrayList<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        
+        ExecutorService es = Executors.newCachedThreadPool();
+        for (int iThread = 0; iThread < threads; iThread++) {
+            List<RowChunk> chunks = new ArrayList<>();
+            results.add(chunks);
+            Future<?> task = es.submit(
+                    new JoinTask(
+                            index,
+                            boundConstraint,
+                            lowerBound,
+                            prefixes,
+                            postings,
+                            nextRow,
+                            chunks
+                    )
+            );
+            tasks.add(task);
+        }
+        es.shutdown();
+        es.awaitTermination(threads, TimeUnit.DAYS);
+        // The matrix is incomplete if any of the tasks failed.
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof Error) {
+                    throw (Error)ex.getCause();
+                }
+                throw new RuntimeException(ex.getCause());
+            }
+        }
+        
+        List<RowChunk> chunks = new ArrayList<>();
+        for (List<RowChunk> result : results) {
+            chunks.addAll(result);
+        }
+        Collections.sort(chunks, (RowChunk c1, RowChunk c2) ->
+                Integer.compare(c1.start, c2.start)
+        );
+        
+        // Merge the upper triangle pairs from all chunks into a symmetric
+        // matrix in compressed sparse row format.
+        long comparisons = 0;
+        _offsets = new int[rows + 1];
+        for (RowChunk chunk : chunks) {
+            comparisons += chunk.comparisons;
+            for (int iEntry = 0; iEntry < chunk.size; iEntry++) {
+                _offsets[chunk.rows[iEntry] + 1]++;
+                _offsets[chunk.columns[iEntry] + 1]++;
+            }
+        }
+        _comparisons = comparisons;
+        for (int iRow = 0; iRow < rows; iRow++) {
+            _offsets[iRow + 1] += _offsets[iRow];
+        }
+        _columns = new int[_offsets[rows]];
+        _overlaps = new int[_offsets[rows]];
+        int[] cursor = Arrays.copyOf(_offsets, rows);
+        for (RowChunk chunk : chunks) {
+            for (int iEntry = 0; iEntry < chunk.size; iEntry++) {
+                final int row = chunk.rows[iEntry];
+                final int column = chunk.columns[iEntry];
+                final int overlap = chunk.overlaps[iEntry];
+                _columns[cursor[row]] = column;
+                _overlaps[cursor[row]++] = overlap;
+                _columns[cursor[column]] = row;
+                _overlaps[cursor[column]++] = overlap;
+            }
+        }
+    }
+    
+    /**
+     * Compute the overlap matrix for all pairs of overlapping domains in the
+     * given index.
+     * 
+     * @param index
+     * @param threads
+     * @throws java.lang.InterruptedException 
+     */
+    public DomainOverlapMatrix(
+            EQDomainIndex index,
+            int threads
+    ) throws java.lang.InterruptedException {
+        
+        this(index, new Threshold[0], threads);
+    }
+    
+    private DomainOverlapMatrix(
+            long[] fingerprint,
+            BigDecimal lowerBound,
+            long comparisons,
+            int[] offsets,
+            int[] columns,
+            int[] overlaps
+    ) {
+        _fingerprint = fingerprint;
+        _lowerBound = lowerBound;
+        _comparisons = comparisons;
+        _offsets = offsets;
+        _columns = columns;
+        _overlaps = overlaps;
+    }
+    
+    /**
+     * Position of the first entry for the given row.
+     * 
+     * @param row
+     * @return 
+     */
+    public int begin(int row) {
+        
+        return _offsets[row];
+    }
+    
+    /**
+     * Column (domain position) for the given entry.
+     * 
+     * @param entry
+     * @return 
+     */
+    public int column(int entry) {
+        
+        return _columns[entry];
+    }
+    
+    /**
+     * Number of candidate pairs for which the overlap was computed.
+     * 
+     * @return 
+     */
+    public long comparisons() {
+        
+        return _comparisons;
+    }
+    
+    /**
+     * Position after the last entry for the given row.
+     * 
+     * @param row
+     * @return 
+     */
+    public int end(int row) {
+        
+        return _offsets[row + 1];
+    }
+    
+    /**
+     * Compute a 128-bit fingerprint for the domains in the given index. The
+     * fingerprint covers the domain identifier, domain elements, the
+     * term-weighted domain sizes, and the term counts of the equivalence
+     * classes in each domain.
+     * 
+     * @param index
+     * @return 
+     */
+    public static long[] fingerprint(EQDomainIndex index) {
+        
+        final int size = index.length();
+        int[] values = new int[size * 10];
+        for (int pos = 0; pos < size; pos++) {
+            final int[] nodes = index.domain(pos).nodes();
+            int[] termCounts = new int[nodes.length];
+            for (int iNode = 0; iNode < nodes.length; iNode++) {
+                termCounts[iNode] = index.eqTermCount(nodes[iNode]);
+            }
+            IDSetKey key = new IDSetKey(nodes);
+            IDSetKey countKey = new IDSetKey(termCounts);
+            values[pos * 10] = index.domain(pos).id();
+            values[pos * 10 + 1] = index.size(pos);
+            values[pos * 10 + 2] = (int)(key.hashHigh() >>> 32);
+            values[pos * 10 + 3] = (int)key.hashHigh();
+            values[pos * 10 + 4] = (int)(key.hashLow() >>> 32);
+            values[pos * 10 + 5] = (int)key.hashLow();
+            values[pos * 10 + 6] = (int)(countKey.hashHigh() >>> 32);
+            values[pos * 10 + 7] = (int)countKey.hashHigh();
+            values[pos * 10 + 8] = (int)(countKey.hashLow() >>> 32);
+            values[pos * 10 + 9] = (int)countKey.hashLow();
+        }
+        IDSetKey key = new IDSetKey(values);
+        return new long[]{key.hashHigh(), key.hashLow()};
+    }
+    
+    /**
+     * Get a matrix that only contains the pairs of domains that satisfy at
+     * least one of the given constraints. Returns this matrix if the list of
+     * constraints is empty.
+     * 
+     * @param index
+     * @param constraints
+     * @return 
+     */
+    public DomainOverlapMatrix filter(EQDomainIndex index, Threshold[] constraints) {
+        
+        if (constraints.length == 0) {
+            return this;
+        }
+        final int rows = _offsets.length - 1;
+        int[] offsets = new int[rows + 1];
+        int[] columns = new int[_columns.length];
+        int[] overlaps = new int[_overlaps.length];
+        int count = 0;
+        for (int row = 0; row < rows; row++) {
+            final int size = index.size(row);
+            for (int iEntry = _offsets[row]; iEntry < _offsets[row + 1]; iEntry++) {
+                final int column = _columns[iEntry];
+                final int overlap = _overlaps[iEntry];
+                final int divisor = (size + index.size(column)) - overlap;
+                for (Threshold constraint : constraints) {
+                    if (constraint.isSatisfied(overlap, divisor)) {
+                        columns[count] = column;
+                        overlaps[count++] = overlap;
+                        break;
+                    }
+                }
+            }
+            offsets[row + 1] = count;
+        }
+        // The filtered matrix does not contain all pairs above the lower
+        // bound and therefore cannot be written to file.
+        return new DomainOverlapMatrix(
+                _fingerprint,
+                null,
+                _comparisons,
+                offsets,
+                Arrays.copyOf(columns, count),
+                Arrays.copyOf(overlaps, count)
+        );
+    }
+    
+    /**
+     * Lower bound for the Jaccard similarity of domain pairs that satisfy at
+     * least one of the given constraints. Returns zero if the list of
+     * constraints is empty or if any of the constraints has no lower bound.
+     * 
+     * @param constraints
+     * @return 
+     */
+    private static BigDecimal lowerBound(Threshold[] constraints) {
+        
+        if (constraints.length == 0) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal bound = null;
+        for (Threshold constraint : constraints) {
+            BigDecimal value = constraint.lowerBound();
+            if (value == null) {
+                return BigDecimal.ZERO;
+            }
+            if ((bound == null) || (value.compareTo(bound) < 0)) {
+                bound = value;
+            }
+        }
+        return bound.max(BigDecimal.ZERO);
+    }
+    
+    /**
+     * Number of non-zero entries in the matrix.
+     * 
+     * @return 
+     */
+    public int nonZeroCount() {
+        
+        return _columns.length;
+    }
+    
+    /**
+     * Term-weighted overlap for the given entry.
+     * 
+     * @param entry
+     * @return 
+     */
+    public int overlap(int entry) {
+        
+        return _overlaps[entry];
+    }
+    
+    /**
+     * Read overlap matrix from file. Returns null if the file does not exist,
+     * if the matrix in the file was computed for a different set of domains,
+     * or if the lower bound in the file is greater than the lower bound of
+     * the given constraints. The returned matrix only contains the pairs that
+     * satisfy at least one of the given constraints.
+     * 
+     * @param file
+     * @param index
+     * @param constraints
+     * @return
+     * @throws java.io.IOException 
+     */
+    public static DomainOverlapMatrix read(
+            File file,
+            EQDomainIndex index,
+            Threshold[] constraints
+    ) throws java.io.IOException {
+        
+        if (!file.exists()) {
+            return null;
+        }
+        
+        long[] fingerprint = fingerprint(index);
+        
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(FileSystem.openFile(file))
+        )) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            if ((in.readLong() != fingerprint[0]) || (in.readLong() != fingerprint[1])) {
+                return null;
+            }
+            BigDecimal lowerBound = new BigDecimal(in.readUTF());
+            if (lowerBound.compareTo(lowerBound(constraints)) > 0) {
+                return null;
+            }
+            int rows = in.readInt();
+            if (rows != index.length()) {
+                return null;
+            }
+            long comparisons = in.readLong();
+            int[] offsets = new int[rows + 1];
+            for (int iRow = 0; iRow <= rows; iRow++) {
+                offsets[iRow] = in.readInt();
+            }
+            int[] columns = new int[offsets[rows]];
+            int[] overlaps = new int[offsets[rows]];
+            for (int iEntry = 0; iEntry < columns.length; iEntry++) {
+                columns[iEntry] = in.readInt();
+                overlaps[iEntry] = in.readInt();
+            }
+            return new DomainOverlapMatrix(
+                    fingerprint,
+                    lowerBound,
+                    comparisons,
+                    offsets,
+                    columns,
+                    overlaps
+            ).filter(index, constraints);
+        }
+    }
+    
+    /**
+     * Write matrix to file. Filtered matrices cannot be written. The file is
+     * removed if writing fails.
+     * 
+     * @param file
+     * @throws java.io.IOException 
+     */
+    public void write(File file) throws java.io.IOException {
+        
+        if (_lowerBound == null) {
+            throw new IllegalStateException("Cannot write filtered matrix");
+        }
+        
+        FileSystem.createParentFolder(file);
+        
+        boolean success = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(FileSystem.openOutputFile(file))
+            )) {
+                out.writeInt(VERSION);
+                out.writeLong(_fingerprint[0]);
+                out.writeLong(_fingerprint[1]);
+                out.writeUTF(_lowerBound.toPlainString());
+                out.writeInt(_offsets.length - 1);
+                out.writeLong(_comparisons);
+                for (int offset : _offsets) {
+                    out.writeInt(offset);
+                }
+                for (int iEntry = 0; iEntry < _columns.length; iEntry++) {
+                    out.writeInt(_columns[iEntry]);
+                    out.writeInt(_overlaps[iEntry]);
+                }
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.curation.d4.domain;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.opendata.core.set.IdentifiableObjectSet;
+
+/**
+ * Index of local domains and the equivalence classes they contain. Domains
+ * are referenced by their position in the index. Positions are assigned in
+ * ascending order of domain identifier.
+ * 
+ * For each domain the index maintains the term-weighted size. For each
+ * equivalence class the index maintains the number of domains that contain
+ * the equivalence class.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class EQDomainIndex {
+    
+    private final Domain[] _domains;
+    private final Integer[] _eqTermCounts;
+    private final int[] _frequency;
+    private final int[] _ids;
+    private final int[] _sizes;
+    
+    public EQDomainIndex(Integer[] eqTermCounts, IdentifiableObjectSet<Domain> domains) {
+        
+        _eqTermCounts = eqTermCounts;
+        
+        List<Domain> domainList = domains.toList();
+        Collections.sort(domainList, (Domain d1, Domain d2) -> 
+                Integer.compare(d1.id(), d2.id())
+        );
+        _domains = domainList.toArray(new Domain[domainList.size()]);
+        _ids = new int[_domains.length];
+        _sizes = new int[_domains.length];
+        _frequency = new int[eqTermCounts.length];
+        for (int iDomain = 0; iDomain < _domains.length; iDomain++) {
+            _ids[iDomain] = _domains[iDomain].id();
+            for (int eqId : _domains[iDomain].nodes()) {
+                _frequency[eqId]++;
+                _sizes[iDomain] += eqTermCounts[eqId];
+            }
+        }
+    }
+    
+    public Domain domain(int pos) {
+        
+        return _domains[pos];
+    }
+    
+    /**
+     * Number of terms in the given equivalence class.
+     * 
+     * @param eqId
+     * @return 
+     */
+    public int eqTermCount(int eqId) {
+        
+        return _eqTermCounts[eqId];
+    }
+    
+    /**
+     * Number of domains that contain the given equivalence class.
+     * 
+     * @param eqId
+     * @return 
+     */
+    public int frequency(int eqId) {
+        
+        return _frequency[eqId];
+    }
+    
+    public int length() {
+        
+        return _domains.length;
+    }
+    
+    /**
+     * Term-weighted overlap between the domains at the given positions.
+     * 
+     * @param posI
+     * @param posJ
+     * @return 
+     */
+    public int overlap(int posI, int posJ) {
+        
+        final int[] nodesI = _domains[posI].nodes();
+        final int[] nodesJ = _domains[posJ].nodes();
+        final int lenI = nodesI.length;
+        final int lenJ = nodesJ.length;
+        
+        int idxI = 0;
+        int idxJ = 0;
+        int overlap = 0;
+        while ((idxI < lenI) && (idxJ < lenJ)) {
+            final int nodeI = nodesI[idxI];
+            final int nodeJ = nodesJ[idxJ];
+            if (nodeI < nodeJ) {
+                idxI++;
+            } else if (nodeI > nodeJ) {
+                idxJ++;
+            } else {
+                overlap += _eqTermCounts[nodeI];
+                idxI++;
+                idxJ++;
+            }
+        }
+        return overlap;
+    }
+    
+    /**
+     * Get position of the domain with the given identifier. Returns a
+     * negative value if the index does not contain the domain.
+     * 
+     * @param domainId
+     * @return 
+     */
+    public int position(int domainId) {
+        
+        return Arrays.binarySearch(_ids, domainId);
+    }
+    
+    /**
+     * Term-weighted size of the domain at the given position.
+     * 
+     * @param pos
+     * @return 
+     */
+    public int size(int pos) {
+        
+        return _sizes[pos];
+    }
+}
@@ -33,15 +33,17 @@ import org.opendata.curation.d4.signature.trim.SignatureTrimmer;
 import org.opendata.curation.d4.SignatureTrimmerFactory;
 import org.opendata.core.util.MemUsagePrinter;
 import org.opendata.curation.d4.signature.RobustSignatureConsumer;
-import org.opendata.curation.d4.signature.SignatureBlocksStream;
+import org.opendata.curation.d4.signature.SignatureBlocksIndex;
 
 /**
  * Generator for local domains using undirected graphs. Each connected component
  * in the graph generated from the robust signatures of the column elements 
  * represents a local domain.
  * 
- * The multi scan local domain generator reads the set of signature blocks into
- * main memory and scans through the set for each column.
+ * The in-memory local domain generator keeps the set of signature blocks in
+ * main memory. For each column only the signature blocks of the column nodes
+ * are read from the index, i.e., the cost for each column is proportional to
+ * the column size and not to the size of the signature blocks set.
  * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
@@ -55,7 +57,7 @@ public class InMemLocalDomainGenerator {
         private final UniqueDomainSet _domains;
         private final Integer[] _eqTermCounts;
         private final int _id;
-        private final SignatureBlocksStream _signatures;
+        private final SignatureBlocksIndex _signatures;
         private final SignatureTrimmerFactory _trimmerFactory;
         private final boolean _verbose;
         
@@ -63,7 +65,7 @@ public class InMemLocalDomainGenerator {
                 int id,
                 Integer[] eqTermCounts,
                 ConcurrentLinkedQueue<ExpandedColumn> columns,
-                SignatureBlocksStream signatures,
+                SignatureBlocksIndex signatures,
                 SignatureTrimmerFactory trimmerFactory,
                 UniqueDomainSet domains,
                 boolean verbose
@@ -92,10 +94,7 @@ public class InMemLocalDomainGenerator {
                 );
                 SignatureTrimmer trimmer;
                 trimmer = _trimmerFactory.getSignatureTrimmer(column, domainGenerator);
-                Date runStart = new Date();
-                _signatures.stream(trimmer);
-                Date runEnd = new Date();
-                System.out.println(column.id() + " (" + column.totalSize() + "): " + (runEnd.getTime() - runStart.getTime()) + " ms");
+                _signatures.stream(trimmer, column.nodes());
             }
             
             Date end = new Date();
@@ -137,7 +136,7 @@ public class InMemLocalDomainGenerator {
     public void run(
             Integer[] eqTermCounts,
             ExpandedColumnIndex columnIndex,
-            SignatureBlocksStream signatures,
+            SignatureBlocksIndex signatures,
             SignatureTrimmerFactory trimmerFactory,
             int threads,
             boolean verbose,
@@ -78,8 +78,8 @@ public class StrongDomain extends IdentifiableObjectImpl {
         for (StrongDomainMember node : this.members()) {
             double weight = node.weight().doubleValue();
             nodes.add(new IdentifiableDouble(node.id(), weight));
-            Collections.sort(nodes, new DoubleValueDescSort<>());
         }
+        Collections.sort(nodes, new DoubleValueDescSort<>());
 
         MaxDropFinder<IdentifiableDouble> dropFinder;
         dropFinder = new MaxDropFinder<>(0.0, true, true);
@@ -19,8 +19,10 @@ package org.opendata.curation.d4.domain;
 
 import java.io.File;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -35,7 +37,6 @@ import org.opendata.core.set.HashObjectSet;
 import org.opendata.core.set.IDSet;
 import org.opendata.core.set.IdentifiableIDSet;
 import org.opendata.core.set.IdentifiableObjectSet;
-import org.opendata.core.util.IdentifiableCounterSet;
 
 /**
  * Identify domains that have support by at least n other domains. Support
@@ -47,31 +48,79 @@ public class StrongDomainGenerator {
     
     public static final String TELEMETRY_ID = "STRONG DOMAINS";
 
+    /**
+     * Count the distinct columns for a set of local domains. The counter uses
+     * a marker array that is indexed by the column identifier. Each counter
+     * should only be used by a single thread.
+     */
+    private class ColumnCounter {
+        
+        private int _count = 0;
+        private final int[] _marker;
+        private int _stamp = 0;
+        
+        public ColumnCounter(int maxColumnId) {
+            
+            _marker = new int[maxColumnId + 1];
+        }
+        
+        public void add(Domain domain) {
+            
+            for (int columnId : domain.columns()) {
+                if (_marker[columnId] != _stamp) {
+                    _marker[columnId] = _stamp;
+                    _count++;
+                }
+            }
+        }
+        
+        public int count() {
+            
+            return _count;
+        }
+        
+        public void reset() {
+            
+            _stamp++;
+            _count = 0;
+        }
+    }
+    
     /**
      * Estimate frequency for the semantic type of a local domain. Frequency is
      * estimated based on the number of columns that contain overlapping local
      * domains for a given threshold.
+     * 
+     * The overlap matrix is symmetric, i.e., each task computes the frequency
+     * for the domains that it takes from the queue using only the matrix row
+     * for that domain. The frequency is written to the position of the domain
+     * in the shared result array. Each position is written by exactly one
+     * task.
      */
     private class DomainFrequencyEstimator implements Runnable {
 
-        private final IdentifiableObjectSet<Domain> _domains;
-        private final DomainHelper _helper;
+        private final ColumnCounter _columns;
+        private final int[] _frequency;
+        private final EQDomainIndex _index;
+        private final DomainOverlapMatrix _overlaps;
         private final ConcurrentLinkedQueue<Domain> _queue;
         private final Threshold _supportConstraint;
-        private final HashMap<Integer, HashIDSet> _typeColumns;
 
         public DomainFrequencyEstimator(
                 ConcurrentLinkedQueue<Domain> queue,
-                IdentifiableObjectSet<Domain> domains,
+                EQDomainIndex index,
+                DomainOverlapMatrix overlaps,
                 Threshold supportConstraint,
-                DomainHelper helper,
-                HashMap<Integer, HashIDSet> typeColumns
+                int maxColumnId,
+                int[] frequency
         ) {
             _queue = queue;
-            _domains = domains;
+            _index = index;
+            _overlaps = overlaps;
             _supportConstraint = supportConstraint;
-            _helper = helper;
-            _typeColumns = typeColumns;
+            _frequency = frequency;
+            
+            _columns = new ColumnCounter(maxColumnId);
         }
 
         @Override
@@ -79,23 +128,21 @@ public class StrongDomainGenerator {
 
             Domain domI;
             while ((domI = _queue.poll()) != null) {
-                for (Domain domJ : _domains) {
-                    if (domI.id() < domJ.id()) {
-                        BigDecimal ovp = _helper.termOverlap(domI, domJ);
-                        if (_supportConstraint.isSatisfied(ovp)) {
-                            HashIDSet colsI =_typeColumns.get(domI.id());
-                            synchronized(this) {
-                                colsI.add(domJ.columns());
-                            }
-                            HashIDSet colsJ = _typeColumns.get(domJ.id());
-                            synchronized(this) {
-                                colsJ.add(domI.columns());
-                            }
-                        }
+                final int posI = _index.position(domI.id());
+                final int sizeI = _index.size(posI);
+                _columns.reset();
+                _columns.add(domI);
+                final int end = _overlaps.end(posI);
+                for (int iEntry = _overlaps.begin(posI); iEntry < end; iEntry++) {
+                    int posJ = _overlaps.column(iEntry);
+                    int overlap = _overlaps.overlap(iEntry);
+                    int divisor = (sizeI + _index.size(posJ)) - overlap;
+                    if (_supportConstraint.isSatisfied(overlap, divisor)) {
+                        _columns.add(_index.domain(posJ));
                     }
                 }
+                _frequency[posI] = _columns.count() - 1;
             }
-
         }
     }
     
@@ -132,33 +179,37 @@ public class StrongDomainGenerator {
      */
     private class DomainSupportComputer implements Runnable {
 
-        private final IdentifiableObjectSet<Domain> _domains;
-        private final IdentifiableCounterSet _frequencyEstimate;
-        private final DomainHelper _helper;
+        private final ColumnCounter _columns;
+        private final int[] _frequency;
+        private final EQDomainIndex _index;
         private final Threshold _overlapConstraint;
+        private final DomainOverlapMatrix _overlaps;
         private final ConcurrentLinkedQueue<Domain> _queue;
-        private final HashObjectSet<DomainSupport> _strongDomains;
+        private final List<DomainSupport> _strongDomains;
         private final BigDecimal _supportFraction;
         private final boolean _verbose;
         
         public DomainSupportComputer(
                 ConcurrentLinkedQueue<Domain> queue,
-                IdentifiableObjectSet<Domain> domains,
+                EQDomainIndex index,
+                DomainOverlapMatrix overlaps,
                 Threshold overlapConstraint,
                 BigDecimal supportFraction,
-                IdentifiableCounterSet frequencyEstimate,
-                DomainHelper helper,
+                int[] frequency,
+                int maxColumnId,
                 boolean verbose,
-                HashObjectSet<DomainSupport> strongDomains
+                List<DomainSupport> strongDomains
         ) {
             _queue = queue;
-            _domains = domains;
+            _index = index;
+            _overlaps = overlaps;
             _overlapConstraint = overlapConstraint;
             _supportFraction = supportFraction;
-            _frequencyEstimate = frequencyEstimate;
-            _helper = helper;
+            _frequency = frequency;
             _verbose = verbose;
             _strongDomains = strongDomains;
+            
+            _columns = new ColumnCounter(maxColumnId);
         }
         
         @Override
@@ -166,37 +217,36 @@ public class StrongDomainGenerator {
 
             Domain domain;
             while ((domain = _queue.poll()) != null) {
-                HashIDSet columns = new HashIDSet(domain.columns());
                 HashIDSet support = new HashIDSet();
-                for (Domain domI : _domains) {
-                    if (domain.id() != domI.id()) {
-                        if (domain.overlaps(domI)) {
-                            BigDecimal ji = _helper.termOverlap(domain, domI);
-                            if (_overlapConstraint.isSatisfied(ji)) {
-                                columns.add(domI.columns());
-                                support.add(domI.id());
-                            }
-                        }
+                final int pos = _index.position(domain.id());
+                final int size = _index.size(pos);
+                _columns.reset();
+                _columns.add(domain);
+                final int end = _overlaps.end(pos);
+                for (int iEntry = _overlaps.begin(pos); iEntry < end; iEntry++) {
+                    int posI = _overlaps.column(iEntry);
+                    Domain domI = _index.domain(posI);
+                    int overlap = _overlaps.overlap(iEntry);
+                    int divisor = (size + _index.size(posI)) - overlap;
+                    if (_overlapConstraint.isSatisfied(overlap, divisor)) {
+                        _columns.add(domI);
+                        support.add(domI.id());
                     }
                 }
                 // Minimum number of columns the domain needs support from to
                 // be considered a strong domain.
-                int frequency = _frequencyEstimate.get(domain.id()).value();
+                int frequency = _frequency[pos];
                 int minColumnCount = ((int)Math.floor(
                         new BigDecimal(frequency)
                             .multiply(_supportFraction)
                             .doubleValue()
                 )) + 1;
-                int edgeCount = columns.length() - 1;
+                int edgeCount = _columns.count() - 1;
                 // If the support constraint is satisfied add the domain to the
                 // set of strong domains. Add edges in the support graph with
                 // all local domains that provided support.
                 if (edgeCount >= minColumnCount) {
-                    synchronized(this) {
-                        _strongDomains.add(
-                                new DomainSupport(domain.id(), support)
-                        );
-                    }
+                    _strongDomains.add(new DomainSupport(domain.id(), support));
                 }
                 if (_verbose) {
                     System.out.println(
@@ -233,6 +283,7 @@ public class StrongDomainGenerator {
      * @param supportFraction
      * @param verbose
      * @param threads
+     * @param overlapFile
      * @param outputFile
      * @throws java.lang.InterruptedException
      * @throws java.io.IOException 
@@ -245,6 +296,7 @@ public class StrongDomainGenerator {
             BigDecimal supportFraction,
             boolean verbose,
             int threads,
+            File overlapFile,
             File outputFile
     ) throws java.lang.InterruptedException, java.io.IOException {
 
@@ -261,41 +313,100 @@ public class StrongDomainGenerator {
             );
         }
         
-        DomainHelper helper = new DomainHelper(eqTermCounts, localDomains);
+        // Inverted index from equivalence classes to local domains. Only
+        // domains that share at least one equivalence class are compared.
+        EQDomainIndex index = new EQDomainIndex(eqTermCounts, localDomains);
+        
+        // The term-weighted overlap for all pairs of domains that satisfy
+        // the constraint of at least one of the two phases is computed once
+        // and shared by both phases. If an overlap file is given, the matrix
+        // is read from (or written to) that file. The file is reused as long
+        // as its lower bound is not greater than the lower bound of the
+        // constraints. The frequency estimation does not need the matrix if every pair satisfies its constraint.
+        Threshold[] constraints;
+        if (minSupportConstraint.isSatisfied(BigDecimal.ZERO)) {
+            constraints = new Threshold[]{domainOverlapConstraint};
+        } else {
+            constraints = new Threshold[]{
+                minSupportConstraint,
+                domainOverlapConstraint
+            };
+        }
+        DomainOverlapMatrix overlaps = null;
+        if (overlapFile != null) {
+            overlaps = DomainOverlapMatrix.read(overlapFile, index, constraints);
+        }
+        if (overlaps == null) {
+            overlaps = new DomainOverlapMatrix(index, constraints, threads);
+            if (overlapFile != null) {
+                overlaps.write(overlapFile);
+            }
+            overlaps = overlaps.filter(index, constraints);
+        } else if (verbose) {
+            System.out.println("READ OVERLAPS FROM " + overlapFile.getName());
+        }
+        if (verbose) {
+            long pairCount = ((long)index.length() * (index.length() - 1)) / 2;
+            double pruned = 0;
+            if (pairCount > 0) {
+                pruned = 100.0 * (pairCount - overlaps.comparisons()) / pairCount;
+            }
+            System.out.println(
+                    String.format(
+                            "COMPARED %d OF %d DOMAIN PAIRS (%.2f%% PRUNED), " +
+                            "%d MATCHING PAIRS",
+                            overlaps.comparisons(),
+                            pairCount,
+                            pruned,
+                            overlaps.nonZeroCount() / 2
+                    )
+            );
+        }
         
         // For each local domain we first estimate the frequency of the semantic
         // type that the domain represents in the database. The estimate is
         // based on the number of columns that contain a local domain that
         // overlaps with the given domain at a low (minSupportConstraint)
-        // threshold.
-        HashMap<Integer, HashIDSet> typeColumns = new HashMap<>();
+        // threshold. Frequencies are maintained in an array that is indexed
+        // by the domain position in the index.
+        int maxColumnId = -1;
         for (Domain domain : localDomains) {
-            typeColumns.put(domain.id(), new HashIDSet(domain.columns()));
+            if (!domain.columns().isEmpty()) {
+                maxColumnId = Math.max(maxColumnId, domain.columns().maxId());
+            }
         }
+        int[] frequency = new int[index.length()];
 
         ConcurrentLinkedQueue<Domain> queue;
-        queue = new ConcurrentLinkedQueue<>(localDomains.toList());
-        
-        ExecutorService es = Executors.newCachedThreadPool();
-        for (int iThread = 0; iThread < threads; iThread++) {
-            DomainFrequencyEstimator command;
-            command = new DomainFrequencyEstimator(
-                    queue,
-                    localDomains,
-                    minSupportConstraint,
-                    helper,
-                    typeColumns
-            );
-            es.execute(command);
+        ExecutorService es;
+        if (minSupportConstraint.isSatisfied(BigDecimal.ZERO)) {
+            // Every pair of domains satisfies the constraint (including pairs
+            // that do not overlap).
+            ColumnCounter columns = new ColumnCounter(maxColumnId);
+            columns.reset();
+            for (Domain domain : localDomains) {
+                columns.add(domain);
+            }
+            Arrays.fill(frequency, columns.count() - 1);
+        } else {
+            queue = new ConcurrentLinkedQueue<>(localDomains.toList());
+            es = Executors.newCachedThreadPool();
+            for (int iThread = 0; iThread < threads; iThread++) {
+                DomainFrequencyEstimator command;
+                command = new DomainFrequencyEstimator(
+                        queue,
+                        index,
+                        overlaps,
+                        minSupportConstraint,
+                        maxColumnId,
+                        frequency
+                );
+                es.execute(command);
+            }
+            es.shutdown();
+            es.awaitTermination(threads, TimeUnit.DAYS);
         }
-        es.shutdown();
-        es.awaitTermination(threads, TimeUnit.DAYS);
 
-        IdentifiableCounterSet frequencyEstimate = new IdentifiableCounterSet();
-        for (int domainId : typeColumns.keySet()) {
-            frequencyEstimate.add(domainId, typeColumns.get(domainId).length() - 1);
-        }
-        
         if (verbose) {
             System.out.println(
                     "GOT FREQUENCY FOR " + localDomains.length() +
@@ -305,28 +416,40 @@ public class StrongDomainGenerator {
 
         // Compte support for all local domains. Maintain domains that are
         // identified as strong domains in a domain buffer together with the
-        // local domains that provided support.
-        HashObjectSet<DomainSupport> strongDomains = new HashObjectSet<>();
+        // local domains that provided support. Each task collects strong
+        // domains in its own list. The lists are merged when all tasks are
+        // done.
+        List<List<DomainSupport>> results = new ArrayList<>();
         queue = new ConcurrentLinkedQueue<>(localDomains.toList());
 
         es = Executors.newCachedThreadPool();
         for (int iThread = 0; iThread < threads; iThread++) {
+            List<DomainSupport> result = new ArrayList<>();
+            results.add(result);
             DomainSupportComputer command;
             command = new DomainSupportComputer(
                     queue,
-                    localDomains,
+                    index,
+                    overlaps,
                     domainOverlapConstraint,
                     supportFraction,
-                    frequencyEstimate,
-                    helper,
+                    frequency,
+                    maxColumnId,
                     verbose,
-                    strongDomains
+                    result
             );
             es.execute(command);
         }
         es.shutdown();
         es.awaitTermination(threads, TimeUnit.DAYS);
         
+        HashObjectSet<DomainSupport> strongDomains = new HashObjectSet<>();
+        for (List<DomainSupport> result : results) {
+            for (DomainSupport domain : result) {
+                strongDomains.add(domain);
+            }
+        }
+        
         // For each strong domain generate the set of local domains that
         // provided the support for each other to become a strong domain.
         UndirectedConnectedComponents supportGraph;
@@ -0,0 +1,179 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.curation.d4.domain;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Statistics for the members of a strong domain. For each equivalence class
+ * that occurs in at least one of the local domains in the support set of a
+ * strong domain, the statistics contain the number of local domains that the
+ * equivalence class occurs in and the number of distinct columns of these
+ * local domains.
+ * 
+ * All statistics are computed from a single pass over the local domains.
+ * Column counts are computed by grouping local domains by column and marking
+ * the members that are covered by each column once.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class StrongDomainMemberStats {
+    
+    private final int[] _columnCounts;
+    private final int[] _columns;
+    private final int[] _domainCounts;
+    private final int[] _members;
+    
+    public StrongDomainMemberStats(List<Domain> localDomains) {
+        
+        // Sorted list of distinct members.
+        int size = 0;
+        for (Domain domain : localDomains) {
+            size += domain.nodes().length;
+        }
+        int[] members = new int[size];
+        size = 0;
+        for (Domain domain : localDomains) {
+            int[] nodes = domain.nodes();
+            System.arraycopy(nodes, 0, members, size, nodes.length);
+            size += nodes.length;
+        }
+        _members = unique(members);
+        
+        // Position of each local domain node in the member list. Count the
+        // number of local domains for each member. Collect (column, domain)
+        // pairs to group local domains by column.
+        int[][] slots = new int[localDomains.size()][];
+        _domainCounts = new int[_members.length];
+        int pairCount = 0;
+        for (int iDomain = 0; iDomain < localDomains.size(); iDomain++) {
+            Domain domain = localDomains.get(iDomain);
+            int[] nodes = domain.nodes();
+            int[] domainSlots = new int[nodes.length];
+            for (int iNode = 0; iNode < nodes.length; iNode++) {
+                int slot = Arrays.binarySearch(_members, nodes[iNode]);
+                domainSlots[iNode] = slot;
+                _domainCounts[slot]++;
+            }
+            slots[iDomain] = domainSlots;
+            pairCount += domain.columns().length();
+        }
+        long[] pairs = new long[pairCount];
+        pairCount = 0;
+        for (int iDomain = 0; iDomain < localDomains.size(); iDomain++) {
+            for (int columnId : localDomains.get(iDomain).columns()) {
+                pairs[pairCount++] = (((long)columnId) << 32) | iDomain;
+            }
+        }
+        Arrays.sort(pairs);
+        
+        // Count the distinct columns for each member. Each column marks the
+        // members of all local domains in the column once.
+        _columnCounts = new int[_members.length];
+        int[] marker = new int[_members.length];
+        Arrays.fill(marker, -1);
+        int[] columns = new int[pairs.length];
+        int columnCount = 0;
+        int iPair = 0;
+        while (iPair < pairs.length) {
+            final int columnId = (int)(pairs[iPair] >>> 32);
+            columns[columnCount] = columnId;
+            while ((iPair < pairs.length) && ((int)(pairs[iPair] >>> 32) == columnId)) {
+                for (int slot : slots[(int)pairs[iPair]]) {
+                    if (marker[slot] != columnCount) {
+                        marker[slot] = columnCount;
+                        _columnCounts[slot]++;
+                    }
+                }
+                iPair++;
+            }
+            columnCount++;
+        }
+        _columns = Arrays.copyOf(columns, columnCount);
+    }
+    
+    /**
+     * Number of distinct columns for the local domains that contain the
+     * member at the given index.
+     * 
+     * @param index
+     * @return 
+     */
+    public int columnCount(int index) {
+        
+        return _columnCounts[index];
+    }
+    
+    /**
+     * Sorted list of distinct columns for all local domains.
+     * 
+     * @return 
+     */
+    public int[] columns() {
+        
+        return _columns;
+    }
+    
+    /**
+     * Number of local domains that contain the member at the given index.
+     * 
+     * @param index
+     * @return 
+     */
+    public int domainCount(int index) {
+        
+        return _domainCounts[index];
+    }
+    
+    /**
+     * Identifier of the member at the given index.
+     * 
+     * @param index
+     * @return 
+     */
+    public int member(int index) {
+        
+        return _members[index];
+    }
+    
+    /**
+     * Number of members in the strong domain.
+     * 
+     * @return 
+     */
+    public int size() {
+        
+        return _members.length;
+    }
+    
+    private static int[] unique(int[] values) {
+        
+        if (values.length == 0) {
+            return values;
+        }
+        Arrays.sort(values);
+        int size = 1;
+        for (int iValue = 1; iValue < values.length; iValue++) {
+            if (values[iValue] != values[size - 1]) {
+                values[size++] = values[iValue];
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+}
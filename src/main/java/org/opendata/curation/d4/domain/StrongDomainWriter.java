@@ -22,7 +22,6 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 import org.opendata.core.io.FileSystem;
-import org.opendata.core.set.HashIDSet;
 import org.opendata.core.set.IdentifiableIDSet;
 import org.opendata.core.set.IdentifiableObjectSet;
 
@@ -37,6 +36,9 @@ import org.opendata.core.set.IdentifiableObjectSet;
  *   in
  * - comma-separated list of column ids for all columns the domain occurs in
  * 
+ * Equivalence classes and columns are listed in ascending order of their
+ * identifier.
+ * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class StrongDomainWriter implements StrongDomainConsumer {
@@ -69,31 +71,32 @@ public class StrongDomainWriter implements StrongDomainConsumer {
     public void consume(IdentifiableIDSet domain) {
 
         List<Domain> domainSet = new ArrayList<>();
-        HashIDSet domainColumns = new HashIDSet();
-        HashIDSet domainNodes = new HashIDSet();
         for (int domId : domain) {
-            Domain locDomain = _localDomains.get(domId);
-            domainSet.add(locDomain);
-            domainColumns.add(locDomain.columns());
-            domainNodes.add(locDomain);
+            domainSet.add(_localDomains.get(domId));
         }
+        StrongDomainMemberStats stats = new StrongDomainMemberStats(domainSet);
 
-        _out.print(domain.id() +"\t" + domain.toIntString());
-        String delim = "\t";
-        for (int nodeId : domainNodes) {
-            int domCount = 0;
-            HashIDSet nodeColumns = new HashIDSet();
-            for (Domain locDomain : domainSet) {
-                if (locDomain.contains(nodeId)) {
-                    domCount++;
-                    nodeColumns.add(locDomain.columns());
-                }
+        StringBuilder line = new StringBuilder();
+        line.append(domain.id()).append("\t").append(domain.toIntString());
+        char delim = '\t';
+        for (int iMember = 0; iMember < stats.size(); iMember++) {
+            line.append(delim)
+                    .append(stats.member(iMember))
+                    .append(':')
+                    .append(stats.domainCount(iMember))
+                    .append(':')
+                    .append(stats.columnCount(iMember));
+            delim = ',';
+        }
+        line.append('\t');
+        int[] columns = stats.columns();
+        for (int iColumn = 0; iColumn < columns.length; iColumn++) {
+            if (iColumn > 0) {
+                line.append(',');
             }
-            int colCount = nodeColumns.length();
-            _out.print(delim + nodeId + ":" + domCount + ":" + colCount);
-            delim = ",";
+            line.append(columns[iColumn]);
         }
-        _out.println("\t" + domainColumns.toIntString());
+        _out.println(line);
     }
 
     @Override
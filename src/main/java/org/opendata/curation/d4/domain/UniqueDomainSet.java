@@ -18,72 +18,95 @@
 package org.opendata.curation.d4.domain;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import org.opendata.curation.d4.column.ExpandedColumnIndex;
-import org.opendata.core.set.HashObjectSet;
+import org.opendata.core.set.HashIDSet;
 import org.opendata.core.set.IDSet;
-import org.opendata.core.set.IdentifiableIDSet;
+import org.opendata.core.set.IDSetKey;
 import org.opendata.core.set.ImmutableIDSet;
-import org.opendata.core.set.ImmutableIdentifiableIDSet;
-import org.opendata.core.set.MutableIdentifiableIDSet;
-import org.opendata.core.util.Counter;
-import org.opendata.core.util.SimpleCounter;
 
 /**
  * Create a set of unique database domains for local domains.
  * 
  * Create the domain set from the results of individual column domain set
- * generator tasks.
+ * generator tasks. The set can be updated concurrently by multiple threads.
+ * Domains are indexed by their content key in a concurrent hash map. The
+ * columns for each domain are maintained in a separate set that is locked
+ * only while adding columns to that particular domain.
+ * 
+ * Domain identifier are assigned when the domain set is read. Domains are
+ * sorted by their content to ensure that the output does not depend on the
+ * order in which domains were added.
  * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class UniqueDomainSet implements DomainStream {
 
     private final ExpandedColumnIndex _columnIndex;
-    private final Counter _domainIdFactory;
-    private final HashMap<String, IdentifiableIDSet> _domainIndex;
-    private final HashObjectSet<MutableIdentifiableIDSet> _domainMapping;
+    private final ConcurrentHashMap<IDSetKey, HashIDSet> _domainIndex;
     
     public UniqueDomainSet(ExpandedColumnIndex columnIndex) {
         
         _columnIndex = columnIndex;
         
-        _domainIndex = new HashMap<>();
-        _domainMapping = new HashObjectSet<>();
-        _domainIdFactory = new SimpleCounter();
+        _domainIndex = new ConcurrentHashMap<>();
     }
 
     public List<Domain> domains() {
 
+        List<IDSetKey> keys = new ArrayList<>(_domainIndex.keySet());
+        Collections.sort(keys, (IDSetKey k1, IDSetKey k2) -> {
+            int[] values1 = k1.values();
+            int[] values2 = k2.values();
+            int len = Math.min(values1.length, values2.length);
+            for (int iPos = 0; iPos < len; iPos++) {
+                int comp = Integer.compare(values1[iPos], values2[iPos]);
+                if (comp != 0) {
+                    return comp;
+                }
+            }
+            return Integer.compare(values1.length, values2.length);
+        });
+        
         ArrayList<Domain> result = new ArrayList<>();
         
-        for (IdentifiableIDSet domain : _domainIndex.values()) {
-            IdentifiableIDSet columns = _domainMapping.get(domain.id());
-            result.add(new Domain(domain.id(), domain, columns));
+        for (int iDomain = 0; iDomain < keys.size(); iDomain++) {
+            IDSetKey key = keys.get(iDomain);
+            int[] values = key.values();
+            Integer[] nodes = new Integer[values.length];
+            for (int iPos = 0; iPos < values.length; iPos++) {
+                nodes[iPos] = values[iPos];
+            }
+            HashIDSet columns = _domainIndex.get(key);
+            ImmutableIDSet columnSet;
+            synchronized (columns) {
+                columnSet = new ImmutableIDSet(columns);
+            }
+            result.add(
+                    new Domain(
+                            iDomain,
+                            new ImmutableIDSet(nodes, true),
+                            columnSet
+                    )
+            );
         }
         
         return result;
     }
     
-    public synchronized void put(int columnId, IDSet nodes) {
+    public void put(int columnId, IDSet nodes) {
         
-        IdentifiableIDSet domain;
-        
-        String key = nodes.toIntString();
-        if (_domainIndex.containsKey(key)) {
-            domain = _domainIndex.get(key);
-        } else {
-            domain = new ImmutableIdentifiableIDSet(
-                    _domainIdFactory.inc(),
-                    new ImmutableIDSet(nodes.toList())
-            );
-            _domainIndex.put(key, domain);
-            _domainMapping.add(new MutableIdentifiableIDSet(domain.id()));
+        IDSetKey key = new IDSetKey(nodes);
+        HashIDSet columns = _domainIndex.get(key);
+        if (columns == null) {
+            columns = _domainIndex.computeIfAbsent(key, (IDSetKey k) -> new HashIDSet());
         }
         
-        for (int colId : _columnIndex.columns(columnId)) {
-            _domainMapping.get(domain.id()).add(colId);
+        IDSet columnIds = _columnIndex.columns(columnId);
+        synchronized (columns) {
+            columns.add(columnIds);
         }
     }
 
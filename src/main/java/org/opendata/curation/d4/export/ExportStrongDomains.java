@@ -17,16 +17,20 @@
  */
 package org.opendata.curation.d4.export;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.opendata.core.io.FileSystem;
@@ -55,14 +59,101 @@ import org.opendata.db.term.TermIndexReader;
  */
 public class ExportStrongDomains {
     
+    /**
+     * Write strong domains from a shared queue to separate files in the
+     * output directory. Each file is streamed using a Json writer.
+     */
+    private class DomainWriterTask implements Callable<Void> {
+
+        private final HashMap<Integer, String[]> _columnNames;
+        private final File _outputDir;
+        private final ConcurrentLinkedQueue<StrongDomain> _queue;
+        private final HashMap<Integer, EQTerms> _terms;
+        
+        public DomainWriterTask(
+                ConcurrentLinkedQueue<StrongDomain> queue,
+                HashMap<Integer, String[]> columnNames,
+                HashMap<Integer, EQTerms> terms,
+                File outputDir
+        ) {
+            _queue = queue;
+            _columnNames = columnNames;
+            _terms = terms;
+            _outputDir = outputDir;
+        }
+        
+        @Override
+        public Void call() throws java.io.IOException {
+
+            StrongDomain domain;
+            while ((domain = _queue.poll()) != null) {
+                String filename = domain.id() + ".json";
+                File outputFile = FileSystem.joinPath(_outputDir, filename);
+                try (PrintWriter out = FileSystem.openPrintWriter(outputFile)) {
+                    JsonWriter writer = new JsonWriter(out);
+                    writer.setIndent("  ");
+                    writer.setHtmlSafe(true);
+                    this.write(domain, writer);
+                    writer.flush();
+                    out.println();
+                }
+            }
+            return null;
+        }
+        
+        private void write(
+                StrongDomain domain,
+                JsonWriter writer
+        ) throws java.io.IOException {
+            
+            writer.beginObject();
+            writer.name("columns").beginArray();
+            for (int columnId : domain.columns()) {
+                String[] columnInfo;
+                if (_columnNames.containsKey(columnId)) {
+                    columnInfo = _columnNames.get(columnId);
+                } else {
+                    columnInfo = new String[]{"unknown", "unknown"};
+                }
+                writer.beginObject();
+                writer.name("id").value(columnId);
+                writer.name("name").value(columnInfo[0]);
+                writer.name("dataset").value(columnInfo[1]);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.name("terms").beginArray();
+            for (List<IdentifiableDouble> block : domain.getBlocksWithWeights()) {
+                writer.beginArray();
+                for (IdentifiableDouble item : block) {
+                    EQTerms eq = _terms.get(item.id());
+                    writer.beginObject();
+                    writer.name("id").value(eq.id());
+                    writer.name("termCount").value(eq.termCount());
+                    writer.name("weight").value(item.toPlainString());
+                    writer.name("terms").beginArray();
+                    for (String term : eq) {
+                        writer.value(term);
+                    }
+                    writer.endArray();
+                    writer.endObject();
+                }
+                writer.endArray();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+    
     public void run(
             File eqFile,
             File termFile,
             File columnFile,
             File strongDomainFile,
             int sampleSize,
+            int threads,
             File outputDir
-    ) throws java.io.IOException {
+    ) throws java.lang.InterruptedException, java.io.IOException {
         
         // Create the output directory if it does not exist. Remove all files
         // from the directory if it exists.
@@ -109,53 +200,35 @@ public class ExportStrongDomains {
             }
         }
         
-        // Read information about all terms
+        // Read information about all terms. Only a sample of terms is read
+        // for equivalence classes that contain more than sampleSize terms.
         HashMap<Integer, EQTerms> terms;
-        terms = new Database(eqIndex, new TermIndexReader(termFile)).read(termFilter);
+        terms = new Database(eqIndex, new TermIndexReader(termFile))
+                .read(termFilter, sampleSize);
         
         // Write each domain to a separate file in the output directory
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        for (StrongDomain domain : strongDomains) {
-            String filename = domain.id() + ".json";
-            File outputFile = FileSystem.joinPath(outputDir, filename);
-            try (PrintWriter out = FileSystem.openPrintWriter(outputFile)) {
-                JsonArray arrColumns = new JsonArray();
-                for (int columnId : domain.columns()) {
-                    String[] columnInfo;
-                    if (columnNames.containsKey(columnId)) {
-                        columnInfo = columnNames.get(columnId);
-                    } else {
-                        columnInfo = new String[]{"unknown", "unknown"};
-                    }
-                    JsonObject objCol = new JsonObject();
-                    objCol.add("id", new JsonPrimitive(columnId));
-                    objCol.add("name", new JsonPrimitive(columnInfo[0]));
-                    objCol.add("dataset", new JsonPrimitive(columnInfo[1]));
-                    arrColumns.add(objCol);
-                }
-                List<List<IdentifiableDouble>> blocks = domain.getBlocksWithWeights();
-                JsonArray arrTerms = new JsonArray();
-                for (List<IdentifiableDouble> block : blocks) {
-                    JsonArray arrBlock = new JsonArray();
-                    for (IdentifiableDouble item : block) {
-                        EQTerms eq = terms.get(item.id());
-                        JsonObject obj = new JsonObject();
-                        obj.add("id", new JsonPrimitive(eq.id()));
-                        obj.add("termCount", new JsonPrimitive(eq.termCount()));
-                        obj.add("weight", new JsonPrimitive(item.toPlainString()));
-                        JsonArray eqTerms = new JsonArray();
-                        for (String term : eq) {
-                            eqTerms.add(new JsonPrimitive(term));
-                        }
-                        obj.add("terms", eqTerms);
-                        arrBlock.add(obj);
-                    }
-                    arrTerms.add(arrBlock);
+        ConcurrentLinkedQueue<StrongDomain> queue;
+        queue = new ConcurrentLinkedQueue<>(strongDomains.toList());
+        List<Future<Void>> tasks = new ArrayList<>();
+        ExecutorService es = Executors.newCachedThreadPool();
+        for (int iThread = 0; iThread < threads; iThread++) {
+            tasks.add(
+                    es.submit(
+                            new DomainWriterTask(queue, columnNames, terms, outputDir)
+                    )
+            );
+        }
+        es.shutdown();
+        es.awaitTermination(threads, TimeUnit.DAYS);
+        // Propagate the first error that occurred in any of the tasks.
+        for (Future<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof java.io.IOException) {
+                    throw (java.io.IOException)ex.getCause();
                 }
-                JsonObject doc = new JsonObject();
-                doc.add("columns", arrColumns);
-                doc.add("terms", arrTerms);
-                out.println(gson.toJson(doc));
+                throw new RuntimeException(ex.getCause());
             }
         }
     }
@@ -167,6 +240,7 @@ public class ExportStrongDomains {
             "  <column-file>\n" +
             "  <strong-domain-file>\n" +
             "  <sample-size>\n" +
+            "  <threads>\n" +
             "  <output-dir>";
     
     private final static Logger LOGGER = Logger
@@ -176,7 +250,7 @@ public class ExportStrongDomains {
         
         System.out.println(Constants.NAME + " - Export Strong Domains - Version (" + Constants.VERSION + ")\n");
         
-        if (args.length != 6) {
+        if (args.length != 7) {
             System.out.println(COMMAND);
             System.exit(-1);
         }
@@ -186,7 +260,8 @@ public class ExportStrongDomains {
         File columnFile = new File(args[2]);
         File strongDomainFile = new File(args[3]);
         int sampleSize = Integer.parseInt(args[4]);
-        File outputDir = new File(args[5]);
+        int threads = Integer.parseInt(args[5]);
+        File outputDir = new File(args[6]);
 
         try {
             new ExportStrongDomains()
@@ -196,9 +271,10 @@ public class ExportStrongDomains {
                             columnFile,
                             strongDomainFile,
                             sampleSize,
+                            threads,
                             outputDir
                     );
-        } catch (java.io.IOException ex) {
+        } catch (java.lang.InterruptedException | java.io.IOException ex) {
             LOGGER.log(Level.SEVERE, "RUN", ex);
             System.exit(-1);
         }
@@ -19,9 +19,11 @@ package org.opendata.curation.d4.signature;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
+import org.opendata.core.set.IDSet;
 
 /**
  * In-memory index for signature blocks.
@@ -95,4 +97,28 @@ public class SignatureBlocksIndex implements SignatureBlocksStream, SignatureBlo
         }
         consumer.close();
     }
+
+    /**
+     * Stream only the signature blocks for the given set of nodes. Signatures
+     * are streamed in ascending order of their node identifier. Nodes that
+     * do not have a signature in the index are ignored.
+     * 
+     * @param consumer
+     * @param nodes 
+     */
+    public void stream(SignatureBlocksConsumer consumer, IDSet nodes) {
+        
+        int[] nodeIds = nodes.toArray();
+        Arrays.sort(nodeIds);
+        
+        consumer.open();
+        
+        for (int nodeId : nodeIds) {
+            IndexElement el = _elements.get(nodeId);
+            if (el != null) {
+                consumer.consume(nodeId, el.sim(), el.blocks());
+            }
+        }
+        consumer.close();
+    }
 }
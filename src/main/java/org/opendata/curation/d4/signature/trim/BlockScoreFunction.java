@@ -24,44 +24,70 @@ import org.opendata.curation.d4.signature.SignatureBlock;
 /**
  * Score function for signature blocks.
  * 
+ * The column elements are kept in an open addressing hash table together with
+ * their term counts. The overlap between a block and the column is computed
+ * with one lookup per block element, i.e., independently of the column size.
+ * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public abstract class BlockScoreFunction {
     
-    private final Integer[] _column;
-    private final Integer[] _eqTermCounts;
+    private static final int EMPTY = -1;
+    
+    private final int[] _keys;
+    private final int _mask;
+    private final int[] _weights;
     
     public BlockScoreFunction(IDSet column, Integer[] eqTermCounts) {
         
-        _column = new Integer[column.length()];
-        column.toSortedList().toArray(_column);
-        _eqTermCounts = eqTermCounts;
+        int capacity = 2;
+        while (capacity < (column.length() * 2)) {
+            capacity *= 2;
+        }
+        _keys = new int[capacity];
+        _weights = new int[capacity];
+        _mask = capacity - 1;
+        for (int iPos = 0; iPos < capacity; iPos++) {
+            _keys[iPos] = EMPTY;
+        }
+        for (int nodeId : column) {
+            int pos = hash(nodeId) & _mask;
+            while ((_keys[pos] != EMPTY) && (_keys[pos] != nodeId)) {
+                pos = (pos + 1) & _mask;
+            }
+            _keys[pos] = nodeId;
+            _weights[pos] = eqTermCounts[nodeId];
+        }
+    }
+    
+    private static int hash(int key) {
+        
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
     
     public int overlap(SignatureBlock block) {
 
-        final int len1 = _column.length;
-        final int len2 = block.elementCount();
+        final int len = block.elementCount();
         
-        int idx1 = 0;
-        int idx2 = 0;
         int overlap = 0;
         
-        while ((idx1 < len1) && (idx2 < len2)) {
-            int comp = Integer.compare(_column[idx1], block.elementAt(idx2));
-            if (comp < 0) {
-                idx1++;
-            } else if (comp > 0) {
-                idx2++;
-            } else {
-                overlap += _eqTermCounts[_column[idx1]];
-                idx1++;
-                idx2++;
+        for (int iEl = 0; iEl < len; iEl++) {
+            final int nodeId = block.elementAt(iEl);
+            int pos = hash(nodeId) & _mask;
+            int key;
+            while ((key = _keys[pos]) != EMPTY) {
+                if (key == nodeId) {
+                    overlap += _weights[pos];
+                    break;
+                }
+                pos = (pos + 1) & _mask;
             }
         }
         
         return overlap;
     }
+    
     /**
      * Get score for a given signature block.
      * 
@@ -69,4 +95,17 @@ public abstract class BlockScoreFunction {
      * @return 
      */
     public abstract BigDecimal score(SignatureBlock block);
+    
+    /**
+     * Get score for a given signature block as a double value. The default
+     * implementation converts the result of score(). Subclasses may override
+     * the method to avoid the use of BigDecimal.
+     * 
+     * @param block
+     * @return 
+     */
+    public double scoreValue(SignatureBlock block) {
+        
+        return this.score(block).doubleValue();
+    }
 }
@@ -20,13 +20,11 @@ package org.opendata.curation.d4.signature.trim;
 import org.opendata.curation.d4.signature.MultiBlockSignature;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import org.opendata.core.constraint.GreaterThanConstraint;
 import org.opendata.core.object.IdentifiableDouble;
 import org.opendata.core.prune.MaxDropFinder;
 import org.opendata.core.set.IDSet;
-import org.opendata.core.sort.DoubleValueDescSort;
 import org.opendata.curation.d4.signature.RobustSignatureConsumer;
 import org.opendata.curation.d4.signature.SignatureBlock;
 
@@ -36,12 +34,19 @@ import org.opendata.curation.d4.signature.SignatureBlock;
  * elements in the given column. It uses a drop finder to then decide which
  * blocks to keep or prune.
  * 
+ * Block scores are computed and sorted using primitive arrays that are reused
+ * across signatures. A trimmer instance is therefore not thread-safe.
+ * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class CentristTrimmer extends SignatureTrimmer {
 
+    private int[] _buffer = new int[0];
     private final MaxDropFinder<IdentifiableDouble> _dropFinder;
+    private int[] _order = new int[0];
     private final BlockScoreFunction _scoreFunc;
+    private double[] _scores = new double[0];
+    private double[] _values = new double[0];
 
     public CentristTrimmer(
             IDSet column,
@@ -73,22 +78,90 @@ public class CentristTrimmer extends SignatureTrimmer {
         );
     }
 
+    /**
+     * Sort the first size positions in the order array in decreasing order of
+     * their score. The sort is stable, i.e., blocks with equal scores remain
+     * in their original order. Uses insertion sort for short arrays and merge
+     * sort otherwise.
+     * 
+     * @param order
+     * @param scores
+     * @param size 
+     */
+    private void sort(int[] order, double[] scores, int size) {
+        
+        if (size <= 16) {
+            for (int i = 1; i < size; i++) {
+                int el = order[i];
+                double score = scores[el];
+                int j = i - 1;
+                while ((j >= 0) && (scores[order[j]] < score)) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = el;
+            }
+            return;
+        }
+        
+        if (_buffer.length < size) {
+            _buffer = new int[_order.length];
+        }
+        int[] src = order;
+        int[] dst = _buffer;
+        for (int width = 1; width < size; width *= 2) {
+            for (int left = 0; left < size; left += 2 * width) {
+                int mid = Math.min(left + width, size);
+                int right = Math.min(left + 2 * width, size);
+                int i = left;
+                int j = mid;
+                int k = left;
+                while ((i < mid) && (j < right)) {
+                    if (scores[src[j]] > scores[src[i]]) {
+                        dst[k++] = src[j++];
+                    } else {
+                        dst[k++] = src[i++];
+                    }
+                }
+                while (i < mid) {
+                    dst[k++] = src[i++];
+                }
+                while (j < right) {
+                    dst[k++] = src[j++];
+                }
+            }
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        if (src != order) {
+            System.arraycopy(src, 0, order, 0, size);
+        }
+    }
+    
     @Override
     public void trim(int id, List<SignatureBlock> blocks, RobustSignatureConsumer consumer) {
 
-        List<IdentifiableDouble> elements = new ArrayList<>();
-        for (int iBlock = 0; iBlock < blocks.size(); iBlock++) {
-            final SignatureBlock block = blocks.get(iBlock);
-            BigDecimal score = _scoreFunc.score(block);
-            elements.add(new IdentifiableDouble(iBlock, score));
+        final int size = blocks.size();
+        if (_order.length < size) {
+            _order = new int[size];
+            _scores = new double[size];
+            _values = new double[size];
+        }
+        
+        for (int iBlock = 0; iBlock < size; iBlock++) {
+            _scores[iBlock] = _scoreFunc.scoreValue(blocks.get(iBlock));
+            _order[iBlock] = iBlock;
+        }
+        this.sort(_order, _scores, size);
+        for (int iEl = 0; iEl < size; iEl++) {
+            _values[iEl] = _scores[_order[iEl]];
         }
-        Collections.sort(elements, new DoubleValueDescSort());
-        int dropIndex = _dropFinder.getPruneIndex(elements);
+        int dropIndex = _dropFinder.getPruneIndex(_values, size);
         List<SignatureBlock> sig = new ArrayList<>();
         for (int iEl = 0; iEl < dropIndex; iEl++) {
-            IdentifiableDouble el = elements.get(iEl);
-            if (el.value() > 0) {
-                sig.add(blocks.get(el.id()));
+            if (_values[iEl] > 0) {
+                sig.add(blocks.get(_order[iEl]));
             } else {
                 break;
             }
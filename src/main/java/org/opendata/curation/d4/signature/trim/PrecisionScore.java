@@ -38,4 +38,10 @@ public class PrecisionScore extends BlockScoreFunction {
 
         return new Precision(this.overlap(block), block.termCount()).value();
     }
+
+    @Override
+    public double scoreValue(SignatureBlock block) {
+
+        return (double)this.overlap(block) / (double)block.termCount();
+    }
 }
@@ -0,0 +1,213 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.column;
+
+import java.io.File;
+import org.opendata.profiling.datatype.DataType;
+
+/**
+ * Data type profile for a single column. Contains the number of empty values
+ * and the number of non-empty values for each data type. The profile is
+ * associated with the file that contains the column. The size and the
+ * modification time of the file are used to detect whether the profile is
+ * still valid.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class ColumnProfile {
+    
+    public static final int[] DATATYPES = new int[]{
+        DataType.INTEGER,
+        DataType.LONG,
+        DataType.DECIMAL,
+        DataType.DATE,
+        DataType.GEO,
+        DataType.TEXT
+    };
+    
+    private final int _columnId;
+    private final int[] _counts;
+    private int _emptyCount;
+    private final long _fileSize;
+    private final long _lastModified;
+    private final String _name;
+    
+    public ColumnProfile(
+            int columnId,
+            String name,
+            long fileSize,
+            long lastModified,
+            int emptyCount,
+            int[] counts
+    ) {
+        
+        _columnId = columnId;
+        _name = name;
+        _fileSize = fileSize;
+        _lastModified = lastModified;
+        _emptyCount = emptyCount;
+        _counts = counts;
+    }
+    
+    public ColumnProfile(int columnId, File file) {
+        
+        this(
+                columnId,
+                file.getName(),
+                file.length(),
+                file.lastModified(),
+                0,
+                new int[DATATYPES.length]
+        );
+    }
+    
+    /**
+     * Add a non-empty value of the given type to the profile.
+     * 
+     * @param type 
+     */
+    public void add(DataType type) {
+        
+        _counts[index(type.id())]++;
+    }
+    
+    /**
+     * Add an empty value to the profile.
+     */
+    public void addEmpty() {
+        
+        _emptyCount++;
+    }
+    
+    public int columnId() {
+        
+        return _columnId;
+    }
+    
+    /**
+     * Number of non-empty values of the given type.
+     * 
+     * @param type
+     * @return 
+     */
+    public int count(int type) {
+        
+        return _counts[index(type)];
+    }
+    
+    public int emptyCount() {
+        
+        return _emptyCount;
+    }
+    
+    private static int index(int type) {
+        
+        for (int iType = 0; iType < DATATYPES.length; iType++) {
+            if (DATATYPES[iType] == type) {
+                return iType;
+            }
+        }
+        throw new IllegalArgumentException("Unknown data type " + type);
+    }
+    
+    /**
+     * True, if the profile was created for the given file in its current
+     * state.
+     * 
+     * @param file
+     * @return 
+     */
+    public boolean isValidFor(File file) {
+        
+        return _name.equals(file.getName())
+                && (_fileSize == file.length())
+                && (_lastModified == file.lastModified());
+    }
+    
+    /**
+     * Parse a profile from a line in a profile file.
+     * 
+     * @param line
+     * @return 
+     */
+    public static ColumnProfile parse(String line) {
+        
+        String[] tokens = line.split("\t");
+        if (tokens.length != DATATYPES.length + 5) {
+            throw new IllegalArgumentException("Invalid profile: " + line);
+        }
+        int[] counts = new int[DATATYPES.length];
+        for (int iType = 0; iType < DATATYPES.length; iType++) {
+            counts[iType] = Integer.parseInt(tokens[iType + 5]);
+        }
+        return new ColumnProfile(
+                Integer.parseInt(tokens[0]),
+                tokens[1],
+                Long.parseLong(tokens[2]),
+                Long.parseLong(tokens[3]),
+                Integer.parseInt(tokens[4]),
+                counts
+        );
+    }
+    
+    /**
+     * Number of non-empty text values.
+     * 
+     * @return 
+     */
+    public int textCount() {
+        
+        return this.count(DataType.TEXT);
+    }
+    
+    /**
+     * Tab-delimited representation of the profile that contains the column
+     * identifier, the file name, size and modification time, the number of
+     * empty values, and the value counts for each data type.
+     * 
+     * @return 
+     */
+    @Override
+    public String toString() {
+        
+        StringBuilder line = new StringBuilder()
+                .append(_columnId)
+                .append("\t").append(_name)
+                .append("\t").append(_fileSize)
+                .append("\t").append(_lastModified)
+                .append("\t").append(_emptyCount);
+        for (int count : _counts) {
+            line.append("\t").append(count);
+        }
+        return line.toString();
+    }
+    
+    /**
+     * Number of non-empty values.
+     * 
+     * @return 
+     */
+    public int valueCount() {
+        
+        int count = 0;
+        for (int value : _counts) {
+            count += value;
+        }
+        return count;
+    }
+}
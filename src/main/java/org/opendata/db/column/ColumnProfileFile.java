@@ -0,0 +1,117 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.column;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import org.opendata.core.io.FileSystem;
+
+/**
+ * Cache of column profiles that is persisted as a tab-delimited file. Each
+ * line contains the profile of one column. Profiles are keyed by the column
+ * identifier. A profile is only returned if it is valid for the current
+ * state of the column file.
+ * 
+ * The cache is thread-safe.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class ColumnProfileFile {
+    
+    private final File _file;
+    private volatile boolean _modified = false;
+    private final ConcurrentHashMap<Integer, ColumnProfile> _profiles;
+    
+    /**
+     * Initialize the cache. Reads all profiles if the file exists.
+     * 
+     * @param file
+     * @throws java.io.IOException 
+     */
+    public ColumnProfileFile(File file) throws java.io.IOException {
+        
+        _file = file;
+        _profiles = new ConcurrentHashMap<>();
+        
+        if (file.exists()) {
+            try (BufferedReader in = FileSystem.openReader(file)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    ColumnProfile profile = ColumnProfile.parse(line);
+                    _profiles.put(profile.columnId(), profile);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get the profile for the given column. Returns null if the cache does
+     * not contain a profile for the column or if the file has changed since
+     * the profile was created.
+     * 
+     * @param columnId
+     * @param file
+     * @return 
+     */
+    public ColumnProfile get(int columnId, File file) {
+        
+        ColumnProfile profile = _profiles.get(columnId);
+        if ((profile != null) && (profile.isValidFor(file))) {
+            return profile;
+        }
+        return null;
+    }
+    
+    public void put(ColumnProfile profile) {
+        
+        _profiles.put(profile.columnId(), profile);
+        _modified = true;
+    }
+    
+    public int size() {
+        
+        return _profiles.size();
+    }
+    
+    /**
+     * Write all profiles to file if the cache was modified. Lines are sorted
+     * by column identifier.
+     * 
+     * @throws java.io.IOException 
+     */
+    public void write() throws java.io.IOException {
+        
+        if (!_modified) {
+            return;
+        }
+        List<Integer> columnIds = new ArrayList<>(_profiles.keySet());
+        Collections.sort(columnIds);
+        FileSystem.createParentFolder(_file);
+        try (PrintWriter out = FileSystem.openPrintWriter(_file)) {
+            for (int columnId : columnIds) {
+                out.println(_profiles.get(columnId).toString());
+            }
+        }
+        _modified = false;
+    }
+}
@@ -25,7 +25,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.opendata.core.io.FileListReader;
 import org.opendata.core.io.FileSystem;
-import org.opendata.profiling.datatype.DefaultDataTypeAnnotator;
+import org.opendata.profiling.datatype.FastDataTypeAnnotator;
 import org.opendata.profiling.datatype.DataType;
 import org.opendata.core.util.Counter;
 import org.opendata.core.util.SimpleCounter;
@@ -37,15 +37,6 @@ import org.opendata.core.util.SimpleCounter;
  */
 public class ColumnTypePrinter {
     
-    private static final int[] DATATYPES = new int[]{
-        DataType.INTEGER,
-        DataType.LONG,
-        DataType.DECIMAL,
-        DataType.DATE,
-        DataType.GEO,
-        DataType.TEXT
-    };
-    
     /**
      * Output column files that have a fraction of text values that satisfies
      * the given constraint.
@@ -57,7 +48,7 @@ public class ColumnTypePrinter {
      */
     public void run(List<File> files, int limitCount, PrintWriter out) throws java.io.IOException {
         
-        DefaultDataTypeAnnotator typeCheck = new DefaultDataTypeAnnotator();
+        FastDataTypeAnnotator typeCheck = new FastDataTypeAnnotator();
         
         for (File file : files) {
             try (FlexibleColumnReader reader = new FlexibleColumnReader(file)) {
@@ -77,7 +68,7 @@ public class ColumnTypePrinter {
                     }
                 }
                 String line = Integer.toString(reader.columnId());
-                for (int key : DATATYPES) {
+                for (int key : ColumnProfile.DATATYPES) {
                     int count = 0;
                     if (types.containsKey(key)) {
                         count = types.get(key).value();
@@ -123,27 +123,7 @@ public class FlexibleColumnReader extends ColumnReader<ValueCounter> {
                 throw new java.lang.RuntimeException(ex);
             }
             if (line != null) {
-                String[] tokens = line.split(_delimiter);
-                switch (tokens.length) {
-                    case 1:
-                        _value = new ValueCounterImpl(tokens[0], 1);
-                        break;
-                    case 2:
-                        _value = new ValueCounterImpl(
-                                tokens[0],
-                                Integer.parseInt(tokens[1])
-                        );
-                        break;
-                    case 3:
-                        _value = new IdentifiableValueCounterImpl(
-                           Integer.parseInt(tokens[0]),
-                           tokens[1],
-                           Integer.parseInt(tokens[2])
-                        );
-                       break;
-                    default:
-                        throw new java.lang.RuntimeException("Unexpected token count in file " + _file.getAbsolutePath() + " (Line " + line + "):" + tokens.length);
-                }
+                _value = parseLine(line, _delimiter, _file);
             } else {
                 try {
                     _in.close();
@@ -156,6 +136,37 @@ public class FlexibleColumnReader extends ColumnReader<ValueCounter> {
         return result;
     }
 
+    /**
+     * Parse a line in a column file. The line either contains the value, the
+     * value and count, or the value identifier, value, and count.
+     * 
+     * @param line
+     * @param delimiter
+     * @param file
+     * @return 
+     */
+    static ValueCounter parseLine(String line, String delimiter, File file) {
+        
+        String[] tokens = line.split(delimiter);
+        switch (tokens.length) {
+            case 1:
+                return new ValueCounterImpl(tokens[0], 1);
+            case 2:
+                return new ValueCounterImpl(
+                        tokens[0],
+                        Integer.parseInt(tokens[1])
+                );
+            case 3:
+                return new IdentifiableValueCounterImpl(
+                   Integer.parseInt(tokens[0]),
+                   tokens[1],
+                   Integer.parseInt(tokens[2])
+                );
+            default:
+                throw new java.lang.RuntimeException("Unexpected token count in file " + file.getAbsolutePath() + " (Line " + line + "):" + tokens.length);
+        }
+    }
+    
     /**
      * Read the whole stream of column values. Requires to keep all value
      * counters in main memory.
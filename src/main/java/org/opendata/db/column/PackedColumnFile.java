@@ -0,0 +1,156 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.column;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Container file for all columns of a dataset. Each column is stored as a
+ * separate gzip member that has the same content as an individual column
+ * file (tab-delimited term and count). The column data is followed by a
+ * directory with the identifier, name, offset, and length of each column.
+ * The file ends with the offset of the directory and a magic number.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class PackedColumnFile {
+    
+    /**
+     * Directory entry for a column in a container file.
+     */
+    public static class Entry {
+        
+        private final int _columnId;
+        private final File _file;
+        private final long _length;
+        private final String _name;
+        private final long _offset;
+        
+        public Entry(File file, int columnId, String name, long offset, long length) {
+            
+            _file = file;
+            _columnId = columnId;
+            _name = name;
+            _offset = offset;
+            _length = length;
+        }
+        
+        public int columnId() {
+            
+            return _columnId;
+        }
+        
+        public File file() {
+            
+            return _file;
+        }
+        
+        public long length() {
+            
+            return _length;
+        }
+        
+        public String name() {
+            
+            return _name;
+        }
+        
+        public long offset() {
+            
+            return _offset;
+        }
+        
+        public PackedColumnReader reader() {
+            
+            return new PackedColumnReader(this);
+        }
+    }
+    
+    public static final int MAGIC = 0x44344350;
+    public static final String SUFFIX = ".columns";
+    
+    private final List<Entry> _columns;
+    private final File _file;
+    
+    /**
+     * Read the column directory from the given file.
+     * 
+     * @param file
+     * @throws java.io.IOException 
+     */
+    public PackedColumnFile(File file) throws java.io.IOException {
+        
+        _file = file;
+        _columns = new ArrayList<>();
+        
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            if (length < 12) {
+                throw new java.io.IOException("Invalid column file " + file.getName());
+            }
+            in.seek(length - 12);
+            long directory = in.readLong();
+            if (in.readInt() != MAGIC) {
+                throw new java.io.IOException("Invalid column file " + file.getName());
+            }
+            in.seek(directory);
+            byte[] buf = new byte[(int)(length - 12 - directory)];
+            in.readFully(buf);
+            DataInputStream dir = new DataInputStream(new java.io.ByteArrayInputStream(buf));
+            int count = dir.readInt();
+            for (int iColumn = 0; iColumn < count; iColumn++) {
+                int columnId = dir.readInt();
+                String name = dir.readUTF();
+                long offset = dir.readLong();
+                long size = dir.readLong();
+                _columns.add(new Entry(file, columnId, name, offset, size));
+            }
+        }
+    }
+    
+    /**
+     * List of columns in the order in which they were written.
+     * 
+     * @return 
+     */
+    public List<Entry> columns() {
+        
+        return Collections.unmodifiableList(_columns);
+    }
+    
+    public File file() {
+        
+        return _file;
+    }
+    
+    /**
+     * Test if the given file is a column container file.
+     * 
+     * @param file
+     * @return 
+     */
+    public static boolean isPackedFile(File file) {
+        
+        return file.getName().endsWith(SUFFIX);
+    }
+}
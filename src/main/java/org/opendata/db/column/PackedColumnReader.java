@@ -0,0 +1,170 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.column;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+import org.opendata.core.value.ValueCounter;
+
+/**
+ * Reads a single column from a column container file. The file is only
+ * opened while the column is being read.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class PackedColumnReader extends ColumnReader<ValueCounter> {
+    
+    /**
+     * Input stream that ends after a given number of bytes.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private long _remaining;
+        
+        public BoundedInputStream(InputStream in, long length) {
+            
+            super(in);
+            
+            _remaining = length;
+        }
+        
+        @Override
+        public int available() throws java.io.IOException {
+            
+            return (int)Math.min(super.available(), _remaining);
+        }
+        
+        @Override
+        public int read() throws java.io.IOException {
+            
+            if (_remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                _remaining--;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws java.io.IOException {
+            
+            if (_remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int)Math.min(len, _remaining));
+            if (n > 0) {
+                _remaining -= n;
+            }
+            return n;
+        }
+    }
+    
+    private final PackedColumnFile.Entry _column;
+    private BufferedReader _in;
+    private ValueCounter _value = null;
+    
+    public PackedColumnReader(PackedColumnFile.Entry column) {
+        
+        super(column.columnId());
+        
+        _column = column;
+        
+        this.reset();
+    }
+
+    @Override
+    public ColumnReader<ValueCounter> cloneReader() {
+
+        return new PackedColumnReader(_column);
+    }
+
+    @Override
+    public void close() {
+        
+        if (_in != null) {
+            try {
+                _in.close();
+            } catch (java.io.IOException ex) {
+            }
+            _in = null;
+        }
+    }
+    
+    @Override
+    public boolean hasNext() {
+
+        return (_value != null);
+    }
+
+    @Override
+    public final ValueCounter next() {
+
+        ValueCounter result = _value;
+        if (_in != null) {
+            String line = null;
+            try {
+                line = _in.readLine();
+            } catch (java.io.IOException ex) {
+                this.close();
+                throw new java.lang.RuntimeException(ex);
+            }
+            if (line != null) {
+                _value = FlexibleColumnReader.parseLine(
+                        line,
+                        FlexibleColumnReader.DEFAULT_DELIMITER,
+                        _column.file()
+                );
+            } else {
+                this.close();
+                _value = null;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final void reset() {
+
+        this.close();
+        try {
+            FileInputStream in = new FileInputStream(_column.file());
+            try {
+                in.getChannel().position(_column.offset());
+                _in = new BufferedReader(
+                        new InputStreamReader(
+                                new GZIPInputStream(
+                                        new BoundedInputStream(in, _column.length())
+                                )
+                        )
+                );
+            } catch (java.io.IOException ex) {
+                in.close();
+                throw ex;
+            }
+        } catch (java.io.IOException ex) {
+            throw new java.lang.RuntimeException(ex);
+        }
+        this.next();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.column;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import org.opendata.core.io.FileSystem;
+
+/**
+ * Column of term identifiers and their counts. Term identifiers refer to a
+ * term dictionary. The column file is a binary file that contains pairs of
+ * term identifier and count, sorted by term identifier. The list of pairs is
+ * terminated by a negative term identifier that is followed by the number of
+ * pairs in the file.
+ * 
+ * Column files are written and read as streams. The pairs of a column are
+ * never held in memory.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class TermIdColumnFile {
+    
+    public static final String SUFFIX = ".tid.gz";
+    
+    // Marker for the end of the list of pairs.
+    private static final int END_OF_COLUMN = -1;
+    
+    /**
+     * Read the pairs of term identifier and count from a column file.
+     */
+    public static class Reader implements AutoCloseable {
+        
+        private int _count;
+        private final File _file;
+        private final DataInputStream _in;
+        private int _size = 0;
+        private int _termId;
+        
+        public Reader(File file) throws java.io.IOException {
+            
+            _file = file;
+            _in = new DataInputStream(
+                    new BufferedInputStream(FileSystem.openFile(file))
+            );
+        }
+        
+        @Override
+        public void close() throws java.io.IOException {
+            
+            _in.close();
+        }
+        
+        public int count() {
+            
+            return _count;
+        }
+        
+        /**
+         * Read the next pair. Returns false if the end of the column has been
+         * reached. Raises an error if the number of pairs does not match the
+         * number that was recorded when the file was written.
+         * 
+         * @return
+         * @throws java.io.IOException 
+         */
+        public boolean next() throws java.io.IOException {
+            
+            int termId = _in.readInt();
+            if (termId == END_OF_COLUMN) {
+                int size = _in.readInt();
+                if (size != _size) {
+                    throw new java.io.IOException(
+                            String.format(
+                                    "%s: expected %d terms but read %d",
+                                    _file.getName(),
+                                    size,
+                                    _size
+                            )
+                    );
+                }
+                return false;
+            }
+            _termId = termId;
+            _count = _in.readInt();
+            _size++;
+            return true;
+        }
+        
+        public int termId() {
+            
+            return _termId;
+        }
+    }
+    
+    /**
+     * Write pairs of term identifier and count to a column file. Pairs have
+     * to be added in ascending order of their term identifier.
+     */
+    public static class Writer implements AutoCloseable {
+        
+        private final DataOutputStream _out;
+        private int _size = 0;
+        private int _termId = -1;
+        
+        public Writer(File file) throws java.io.IOException {
+            
+            _out = new DataOutputStream(
+                    new BufferedOutputStream(FileSystem.openOutputFile(file))
+            );
+        }
+        
+        /**
+         * Add a term and its count to the column. Counts are stored as
+         * integers.
+         * 
+         * @param termId
+         * @param count 
+         * @throws java.io.IOException 
+         */
+        public void add(int termId, long count) throws java.io.IOException {
+            
+            if (termId <= _termId) {
+                throw new IllegalArgumentException(
+                        String.format("Term %d is out of order", termId)
+                );
+            }
+            if ((count < 0) || (count > Integer.MAX_VALUE)) {
+                throw new IllegalArgumentException(
+                        String.format("Invalid count %d for term %d", count, termId)
+                );
+            }
+            _out.writeInt(termId);
+            _out.writeInt((int)count);
+            _termId = termId;
+            _size++;
+        }
+        
+        /**
+         * Write the end of column marker and the number of pairs in the file.
+         * 
+         * @throws java.io.IOException 
+         */
+        @Override
+        public void close() throws java.io.IOException {
+            
+            try {
+                _out.writeInt(END_OF_COLUMN);
+                _out.writeInt(_size);
+            } finally {
+                _out.close();
+            }
+        }
+    }
+}
@@ -20,14 +20,18 @@ package org.opendata.db.column;
 import java.io.File;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.opendata.core.constraint.Threshold;
 import org.opendata.core.io.FileListReader;
 import org.opendata.core.io.FileSystem;
 import org.opendata.core.metric.Support;
-import org.opendata.profiling.datatype.DefaultDataTypeAnnotator;
+import org.opendata.core.value.ValueCounter;
+import org.opendata.profiling.datatype.FastDataTypeAnnotator;
+import org.opendata.profiling.datatype.SequentialTextClassifier;
 
 /**
  * Identify columns that contain text values. Takes a list of column files as
@@ -35,58 +39,209 @@ import org.opendata.profiling.datatype.DefaultDataTypeAnnotator;
  * values (from the distinct list of values). Outputs the absolute column file
  * path if the fraction of text values satisfies a given threshold constraint.
  * 
+ * If a sample error rate is given, the decision is made using a random
+ * sample of the column values. Columns where the sample does not settle the
+ * decision are read a second time to classify all values.
+ * 
+ * If a profile file is given, columns that have a valid profile are not read.
+ * Profiles are created for all other columns by classifying all of their
+ * values.
+ * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class TextColumnFinder {
     
+    /**
+     * Count the number of text values in a column file.
+     * 
+     * @param file
+     * @param typeCheck
+     * @return 
+     */
+    private int countText(File file, FastDataTypeAnnotator typeCheck) {
+        
+        int textCount = 0;
+        try (FlexibleColumnReader reader = new FlexibleColumnReader(file)) {
+            while (reader.hasNext()) {
+                if (typeCheck.getType(reader.next().getText()).isText()) {
+                    textCount++;
+                }
+            }
+        }
+        return textCount;
+    }
+    
+    /**
+     * Get the profile for a column file. Reads and classifies all values if
+     * the cache does not contain a valid profile for the file.
+     * 
+     * @param file
+     * @param profiles
+     * @param typeCheck
+     * @return 
+     */
+    private ColumnProfile profile(
+            File file,
+            ColumnProfileFile profiles,
+            FastDataTypeAnnotator typeCheck
+    ) {
+        
+        int columnId = ColumnHelper.getColumnId(file);
+        ColumnProfile profile = profiles.get(columnId, file);
+        if (profile == null) {
+            profile = new ColumnProfile(columnId, file);
+            try (FlexibleColumnReader reader = new FlexibleColumnReader(file, columnId)) {
+                while (reader.hasNext()) {
+                    ValueCounter colVal = reader.next();
+                    if (!colVal.isEmpty()) {
+                        profile.add(typeCheck.getType(colVal.getText()));
+                    } else {
+                        profile.addEmpty();
+                    }
+                }
+            }
+            profiles.put(profile);
+        }
+        return profile;
+    }
+    
     /**
      * Output column files that have a fraction of text values that satisfies
-     * the given constraint.
+     * the given constraint. Uses the column profiles in the given cache if
+     * it is not null. Otherwise, classifies a sample of the column values if
+     * the sample error rate is greater than zero.
      * 
      * @param files
      * @param threshold
+     * @param sampleError
+     * @param profiles
      * @param out
      * @throws java.io.IOException 
      */
-    public void run(List<File> files, Threshold threshold, PrintWriter out) throws java.io.IOException {
+    public void run(
+            List<File> files,
+            Threshold threshold,
+            double sampleError,
+            ColumnProfileFile profiles,
+            PrintWriter out
+    ) throws java.io.IOException {
         
-        DefaultDataTypeAnnotator typeCheck = new DefaultDataTypeAnnotator();
+        FastDataTypeAnnotator typeCheck = new FastDataTypeAnnotator();
+        SequentialTextClassifier classifier = null;
+        if ((sampleError > 0) && (profiles == null)) {
+            classifier = new SequentialTextClassifier(threshold, sampleError);
+        }
         
         for (File file : files) {
-            try (FlexibleColumnReader reader = new FlexibleColumnReader(file)) {
-                int textCount = 0;
-                int valueCount = 0;
-                while (reader.hasNext()) {
-                    if (typeCheck.getType(reader.next().getText()).isText()) {
-                        textCount++;
-                    }
-                    valueCount++;
-                }
+            if (profiles != null) {
+                ColumnProfile profile = this.profile(file, profiles, typeCheck);
+                // Empty values are classified as text.
+                int valueCount = profile.valueCount() + profile.emptyCount();
                 if (valueCount > 0) {
+                    int textCount = profile.textCount() + profile.emptyCount();
                     BigDecimal frac = new Support(textCount, valueCount).value();
                     if (threshold.isSatisfied(frac)) {
                         out.println(file.getAbsolutePath());
                     }
                 }
+                continue;
+            }
+            int valueCount = 0;
+            boolean isTextColumn;
+            try (FlexibleColumnReader reader = new FlexibleColumnReader(file)) {
+                if (classifier != null) {
+                    List<String> sample = new ArrayList<>();
+                    Random random = new Random(reader.columnId());
+                    while (reader.hasNext()) {
+                        classifier.add(sample, reader.next().getText(), valueCount, random);
+                        valueCount++;
+                    }
+                    if (valueCount == 0) {
+                        continue;
+                    }
+                    SequentialTextClassifier.Result result;
+                    result = classifier.classify(sample, valueCount, random);
+                    if (result != null) {
+                        isTextColumn = result.isSatisfied();
+                    } else {
+                        int textCount = this.countText(file, typeCheck);
+                        BigDecimal frac = new Support(textCount, valueCount).value();
+                        isTextColumn = threshold.isSatisfied(frac);
+                    }
+                } else {
+                    int textCount = 0;
+                    while (reader.hasNext()) {
+                        if (typeCheck.getType(reader.next().getText()).isText()) {
+                            textCount++;
+                        }
+                        valueCount++;
+                    }
+                    if (valueCount == 0) {
+                        continue;
+                    }
+                    BigDecimal frac = new Support(textCount, valueCount).value();
+                    isTextColumn = threshold.isSatisfied(frac);
+                }
             } catch (java.lang.NumberFormatException ex) {
                 LOGGER.log(Level.SEVERE, file.getName(), ex);
                 System.exit(-1);
+                return;
+            }
+            if (isTextColumn) {
+                out.println(file.getAbsolutePath());
             }
         }
     }
     
+    /**
+     * Output column files that have a fraction of text values that satisfies
+     * the given constraint. Classifies a sample of the column values if the
+     * sample error rate is greater than zero.
+     * 
+     * @param files
+     * @param threshold
+     * @param sampleError
+     * @param out
+     * @throws java.io.IOException 
+     */
+    public void run(
+            List<File> files,
+            Threshold threshold,
+            double sampleError,
+            PrintWriter out
+    ) throws java.io.IOException {
+        
+        this.run(files, threshold, sampleError, null, out);
+    }
+    
+    /**
+     * Output column files that have a fraction of text values that satisfies
+     * the given constraint.
+     * 
+     * @param files
+     * @param threshold
+     * @param out
+     * @throws java.io.IOException 
+     */
+    public void run(List<File> files, Threshold threshold, PrintWriter out) throws java.io.IOException {
+        
+        this.run(files, threshold, 0, out);
+    }
+    
     private static final String COMMAND =
             "Usage:\n" +
             "  <column-file-or-dir>\n" +
             "  <threshold-constraint>\n" +
-            "  <output-file>";
+            "  <output-file>\n" +
+            "  [<sample-error-rate>] [default: 0]\n" +
+            "  [<profile-file>] [default: none]";
     
     private static final Logger LOGGER = Logger
             .getLogger(TextColumnFinder.class.getName());
     
     public static void main(String[] args) {
         
-        if (args.length != 3) {
+        if ((args.length < 3) || (args.length > 5)) {
             System.out.println(COMMAND);
             System.exit(-1);
         }
@@ -94,13 +249,30 @@ public class TextColumnFinder {
         File inFile = new File(args[0]);
         Threshold threshold = Threshold.getConstraint(args[1]);
         File outputFile = new File(args[2]);
+        double sampleError = 0;
+        if (args.length > 3) {
+            sampleError = Double.parseDouble(args[3]);
+        }
+        File profileFile = null;
+        if (args.length > 4) {
+            profileFile = new File(args[4]);
+        }
         
         try (PrintWriter out = FileSystem.openPrintWriter(outputFile)) {
+            ColumnProfileFile profiles = null;
+            if (profileFile != null) {
+                profiles = new ColumnProfileFile(profileFile);
+            }
             new TextColumnFinder().run(
                     new FileListReader(".txt").listFiles(inFile),
                     threshold,
+                    sampleError,
+                    profiles,
                     out
             );
+            if (profiles != null) {
+                profiles.write();
+            }
         } catch (java.io.IOException ex) {
             LOGGER.log(Level.SEVERE, "RUN", ex);
             System.exit(-1);
@@ -25,13 +25,17 @@ import org.opendata.core.object.ObjectFilter;
 import org.opendata.core.value.ValueCounter;
 
 /**
- * Reader factory for column files. Uses the flexible column reader.
+ * Reader factory for column files. Uses the flexible column reader for
+ * individual column files and the packed column reader for the columns in
+ * column container files.
  * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class ValueColumnsReaderFactory implements ColumnReaderFactory {
 
+    private final LinkedList<PackedColumnFile.Entry> _columns;
     private final LinkedList<File> _files;
+    private final ObjectFilter<Integer> _filter;
     
     public ValueColumnsReaderFactory(
             File directory,
@@ -43,10 +47,14 @@ public class ValueColumnsReaderFactory implements ColumnReaderFactory {
             throw new IllegalArgumentException(directory.getAbsolutePath() + " not a directory");
         }
         
+        _columns = new LinkedList<>();
         _files = new LinkedList<>();
+        _filter = filter;
 
         for (File file : directory.listFiles()) {
-            if ((file.getName().endsWith(".txt")) || (file.getName().endsWith(".txt.gz"))) {
+            if (PackedColumnFile.isPackedFile(file)) {
+                _files.add(file);
+            } else if ((file.getName().endsWith(".txt")) || (file.getName().endsWith(".txt.gz"))) {
                     int columnId = ColumnHelper.getColumnId(file);
                     if (filter.contains(columnId)) {
                         _files.add(file);
@@ -62,18 +70,48 @@ public class ValueColumnsReaderFactory implements ColumnReaderFactory {
     
     public ValueColumnsReaderFactory(List<File> files) {
         
+        _columns = new LinkedList<>();
         _files = new LinkedList<>(files);
+        _filter = new AnyObjectFilter<>();
+    }
+    
+    /**
+     * Read the directories of container files at the head of the file list
+     * until the next column is known or the file list is empty.
+     */
+    private void expand() {
+        
+        while ((_columns.isEmpty()) && (!_files.isEmpty())) {
+            if (!PackedColumnFile.isPackedFile(_files.peek())) {
+                return;
+            }
+            File file = _files.pop();
+            try {
+                for (PackedColumnFile.Entry column : new PackedColumnFile(file).columns()) {
+                    if (_filter.contains(column.columnId())) {
+                        _columns.add(column);
+                    }
+                }
+            } catch (java.io.IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
     }
     
     @Override
     public boolean hasNext() {
 
-        return (!_files.isEmpty());
+        this.expand();
+        return ((!_columns.isEmpty()) || (!_files.isEmpty()));
     }
 
     @Override
     public ColumnReader<ValueCounter> next() {
 
+        this.expand();
+        if (!_columns.isEmpty()) {
+            return _columns.pop().reader();
+        }
         File file = _files.pop();
         int columnId = ColumnHelper.getColumnId(file);
         return new FlexibleColumnReader(file, columnId);
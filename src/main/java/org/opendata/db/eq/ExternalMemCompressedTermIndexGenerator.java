@@ -0,0 +1,470 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.eq;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.opendata.core.io.FileSystem;
+import org.opendata.core.object.IdentifiableInteger;
+import org.opendata.core.set.SortedObjectSet;
+import org.opendata.core.util.IdentifiableCount;
+import org.opendata.db.term.Term;
+import org.opendata.db.term.TermConsumer;
+
+/**
+ * Compress a term index into a set of equivalence classes using a bounded
+ * amount of memory.
+ * 
+ * The list of column identifiers for each term is hashed into a 128-bit key.
+ * Terms are buffered as (key, term identifier, column counts) records. If the
+ * buffer exceeds the given size, records are sorted by key and written to a
+ * temporary run file. At the end all runs are merged and consecutive records
+ * with the same key form an equivalence class. If there are too many runs to
+ * merge at once, groups of runs are first merged into larger runs.
+ * 
+ * The output contains the same equivalence classes as the in-memory
+ * generator. Equivalence classes are written in order of their key.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class ExternalMemCompressedTermIndexGenerator implements TermConsumer {
+
+    // Estimated memory (in bytes) for a buffered record and each column.
+    private static final long RECORD_SIZE = 64;
+    private static final long COLUMN_SIZE = 8;
+    // Maximum number of run files that are merged at once.
+    private static final int MAX_MERGE = 64;
+    
+    /**
+     * Term record. The columns array contains pairs of column identifier and
+     * term count.
+     */
+    private class Record implements Comparable<Record> {
+        
+        private final int[] _columns;
+        private final long _keyHigh;
+        private final long _keyLow;
+        private final int _termId;
+        
+        public Record(long keyHigh, long keyLow, int termId, int[] columns) {
+            
+            _keyHigh = keyHigh;
+            _keyLow = keyLow;
+            _termId = termId;
+            _columns = columns;
+        }
+
+        @Override
+        public int compareTo(Record r) {
+
+            int comp = Long.compare(_keyHigh, r._keyHigh);
+            if (comp == 0) {
+                comp = Long.compare(_keyLow, r._keyLow);
+                if (comp == 0) {
+                    comp = Integer.compare(_termId, r._termId);
+                }
+            }
+            return comp;
+        }
+        
+        public boolean hasKey(Record r) {
+            
+            return (_keyHigh == r._keyHigh) && (_keyLow == r._keyLow);
+        }
+        
+        public void write(DataOutputStream out) throws java.io.IOException {
+            
+            out.writeLong(_keyHigh);
+            out.writeLong(_keyLow);
+            out.writeInt(_termId);
+            out.writeInt(_columns.length);
+            for (int value : _columns) {
+                out.writeInt(value);
+            }
+        }
+    }
+    
+    /**
+     * Reader for a sorted run file.
+     */
+    private class RunReader implements Comparable<RunReader> {
+        
+        private Record _current = null;
+        private final DataInputStream _in;
+        private int _remaining;
+        
+        public RunReader(File file) throws java.io.IOException {
+            
+            _in = new DataInputStream(
+                    new BufferedInputStream(FileSystem.openFile(file))
+            );
+            _remaining = _in.readInt();
+        }
+        
+        public void close() throws java.io.IOException {
+            
+            _in.close();
+        }
+
+        @Override
+        public int compareTo(RunReader reader) {
+
+            return _current.compareTo(reader._current);
+        }
+        
+        public Record current() {
+            
+            return _current;
+        }
+        
+        /**
+         * Number of records that have not been read yet.
+         * 
+         * @return 
+         */
+        public int remaining() {
+            
+            return _remaining;
+        }
+        
+        public boolean next() throws java.io.IOException {
+            
+            if (_remaining == 0) {
+                _current = null;
+                return false;
+            }
+            _remaining--;
+            long keyHigh = _in.readLong();
+            long keyLow = _in.readLong();
+            int termId = _in.readInt();
+            int[] columns = new int[_in.readInt()];
+            for (int iValue = 0; iValue < columns.length; iValue++) {
+                columns[iValue] = _in.readInt();
+            }
+            _current = new Record(keyHigh, keyLow, termId, columns);
+            return true;
+        }
+    }
+    
+    private List<Record> _buffer;
+    private final long _bufferSize;
+    private int _eqCount;
+    private Record _eqKey;
+    private int[] _eqColumns;
+    private List<Integer> _eqTerms;
+    private final MessageDigest _digest;
+    private long _memory;
+    private final List<File> _runs;
+    private final File _tmpDir;
+    private final boolean _verbose;
+    private final EQWriter _writer;
+
+    public ExternalMemCompressedTermIndexGenerator(
+            EQWriter writer,
+            File tmpDir,
+            long bufferSize,
+            boolean verbose
+    ) {
+
+        _writer = writer;
+        _tmpDir = tmpDir;
+        _bufferSize = bufferSize;
+        _verbose = verbose;
+        
+        try {
+            _digest = MessageDigest.getInstance("MD5");
+        } catch (java.security.NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        _runs = new ArrayList<>();
+    }
+
+    public ExternalMemCompressedTermIndexGenerator(
+            PrintWriter out,
+            File tmpDir,
+            long bufferSize,
+            boolean verbose
+    ) {
+
+        this(new EQFileWriter(out), tmpDir, bufferSize, verbose);
+    }
+    
+    /**
+     * Add a record to the current equivalence class. Writes the current
+     * equivalence class and starts a new one if the record has a different
+     * key.
+     * 
+     * @param record 
+     */
+    private void add(Record record) {
+        
+        if ((_eqKey != null) && (_eqKey.hasKey(record))) {
+            int[] columns = record._columns;
+            if (columns.length != _eqColumns.length) {
+                throw new IllegalArgumentException(
+                        String.format(
+                                "Mismatch in number of columns: %d <> %d",
+                                _eqColumns.length / 2,
+                                columns.length / 2
+                        )
+                );
+            }
+            _eqTerms.add(record._termId);
+            for (int iValue = 0; iValue < columns.length; iValue += 2) {
+                if (_eqColumns[iValue] != columns[iValue]) {
+                    throw new IllegalArgumentException(
+                            String.format(
+                                    "Mismatch at position %d: %d <> %d",
+                                    iValue / 2,
+                                    _eqColumns[iValue],
+                                    columns[iValue]
+                            )
+                    );
+                }
+                _eqColumns[iValue + 1] += columns[iValue + 1];
+            }
+        } else {
+            this.flush();
+            _eqKey = record;
+            _eqColumns = record._columns.clone();
+            _eqTerms = new ArrayList<>();
+            _eqTerms.add(record._termId);
+        }
+    }
+    
+    @Override
+    public void close() {
+
+        _eqCount = 0;
+        _eqKey = null;
+        try {
+            if (_runs.isEmpty()) {
+                Collections.sort(_buffer);
+                for (Record record : _buffer) {
+                    this.add(record);
+                }
+                _buffer = null;
+            } else {
+                if (!_buffer.isEmpty()) {
+                    this.write();
+                }
+                _buffer = null;
+                this.merge();
+            }
+            this.flush();
+        } catch (java.io.IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            for (File file : _runs) {
+                file.delete();
+            }
+            _runs.clear();
+        }
+        
+        if (_verbose) {
+            System.out.println("NUMBER OF EQUIVALENCE CLASSES IS " + _eqCount);
+        }
+    }
+
+    @Override
+    public void consume(Term term) {
+
+        SortedObjectSet<IdentifiableInteger> columns = term.columns();
+        int[] values = new int[columns.objectCount() * 2];
+        byte[] key = new byte[columns.objectCount() * 4];
+        for (int iCol = 0; iCol < columns.objectCount(); iCol++) {
+            IdentifiableInteger col = columns.objectAt(iCol);
+            int columnId = col.id();
+            values[iCol * 2] = columnId;
+            values[(iCol * 2) + 1] = col.value();
+            key[iCol * 4] = (byte)(columnId >>> 24);
+            key[(iCol * 4) + 1] = (byte)(columnId >>> 16);
+            key[(iCol * 4) + 2] = (byte)(columnId >>> 8);
+            key[(iCol * 4) + 3] = (byte)columnId;
+        }
+        byte[] hash = _digest.digest(key);
+        long keyHigh = 0;
+        long keyLow = 0;
+        for (int iByte = 0; iByte < 8; iByte++) {
+            keyHigh = (keyHigh << 8) | (hash[iByte] & 0xFF);
+            keyLow = (keyLow << 8) | (hash[iByte + 8] & 0xFF);
+        }
+        
+        _buffer.add(new Record(keyHigh, keyLow, term.id(), values));
+        _memory += RECORD_SIZE + (COLUMN_SIZE * columns.objectCount());
+        if (_memory > _bufferSize) {
+            try {
+                this.write();
+            } catch (java.io.IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+    
+    /**
+     * Write the current equivalence class (if any).
+     */
+    private void flush() {
+        
+        if (_eqKey != null) {
+            IdentifiableCount[] counts = new IdentifiableCount[_eqColumns.length / 2];
+            for (int iCol = 0; iCol < counts.length; iCol++) {
+                counts[iCol] = new IdentifiableCount(
+                        _eqColumns[iCol * 2],
+                        _eqColumns[(iCol * 2) + 1]
+                );
+            }
+            _writer.write(_eqTerms, new SortedObjectSet<>(counts));
+            _eqCount++;
+            _eqKey = null;
+        }
+    }
+    
+    /**
+     * Merge all run files. Groups of run files are merged into new run files
+     * until the number of runs does not exceed the maximum number of files
+     * that are merged at once.
+     * 
+     * @throws java.io.IOException 
+     */
+    private void merge() throws java.io.IOException {
+        
+        while (_runs.size() > MAX_MERGE) {
+            List<File> group = new ArrayList<>(_runs.subList(0, MAX_MERGE));
+            File file = File.createTempFile("eqs", ".tmp", _tmpDir);
+            if (_verbose) {
+                System.out.println(
+                        String.format(
+                                "MERGE %d FILES INTO %s",
+                                group.size(),
+                                file.getAbsolutePath()
+                        )
+                );
+            }
+            _runs.add(file);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(FileSystem.openOutputFile(file))
+            )) {
+                this.merge(group, out);
+            }
+            for (File run : group) {
+                run.delete();
+            }
+            _runs.removeAll(group);
+        }
+        
+        if (_verbose) {
+            System.out.println(String.format("MERGE %d FILES.", _runs.size()));
+        }
+        
+        this.merge(_runs, null);
+    }
+    
+    /**
+     * Merge the given run files. Records are written to the given run output
+     * stream. If the output stream is null, records are added to the
+     * equivalence classes.
+     * 
+     * @param files
+     * @param out
+     * @throws java.io.IOException 
+     */
+    private void merge(List<File> files, DataOutputStream out) throws java.io.IOException {
+        
+        List<RunReader> readers = new ArrayList<>();
+        PriorityQueue<RunReader> queue = new PriorityQueue<>();
+        try {
+            int count = 0;
+            for (File file : files) {
+                RunReader reader = new RunReader(file);
+                count += reader.remaining();
+                readers.add(reader);
+            }
+            if (out != null) {
+                out.writeInt(count);
+            }
+            for (RunReader reader : readers) {
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                if (out != null) {
+                    reader.current().write(out);
+                } else {
+                    this.add(reader.current());
+                }
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    @Override
+    public void open() {
+
+        _buffer = new ArrayList<>();
+        _memory = 0;
+    }
+    
+    /**
+     * Sort the buffered records and write them to a temporary run file.
+     * 
+     * @throws java.io.IOException 
+     */
+    private void write() throws java.io.IOException {
+        
+        File file = File.createTempFile("eqs", ".tmp", _tmpDir);
+        if (_verbose) {
+            System.out.println("WRITE BUFFER TO " + file.getAbsolutePath());
+        }
+        _runs.add(file);
+        
+        Collections.sort(_buffer);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(FileSystem.openOutputFile(file))
+        )) {
+            out.writeInt(_buffer.size());
+            for (Record record : _buffer) {
+                record.write(out);
+            }
+        }
+        
+        _buffer = new ArrayList<>();
+        _memory = 0;
+    }
+}
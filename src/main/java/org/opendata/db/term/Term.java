@@ -20,7 +20,7 @@ package org.opendata.db.term;
 import org.opendata.core.object.Entity;
 import org.opendata.core.object.IdentifiableInteger;
 import org.opendata.profiling.datatype.DataType;
-import org.opendata.profiling.datatype.DefaultDataTypeAnnotator;
+import org.opendata.profiling.datatype.FastDataTypeAnnotator;
 import org.opendata.core.set.SortedObjectSet;
 
 /**
@@ -32,6 +32,8 @@ import org.opendata.core.set.SortedObjectSet;
  */
 public class Term extends Entity {
     
+    private static final FastDataTypeAnnotator ANNOTATOR = new FastDataTypeAnnotator();
+    
     private final SortedObjectSet<IdentifiableInteger> _columns;
     
     public Term(int id, String value, SortedObjectSet<IdentifiableInteger> columns) {
@@ -59,6 +61,6 @@ public class Term extends Entity {
      */
     public DataType type() {
         
-        return new DefaultDataTypeAnnotator().getType(this.name());
+        return ANNOTATOR.getType(this.name());
     }
 }
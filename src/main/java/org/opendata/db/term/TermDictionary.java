@@ -0,0 +1,116 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.term;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opendata.core.io.FileSystem;
+
+/**
+ * Concurrent dictionary that assigns unique identifiers to terms. Identifiers
+ * are assigned in the order in which terms are first seen. They are not
+ * related to the order of terms.
+ * 
+ * The dictionary file is tab-delimited and contains the term identifier and
+ * the term. Lines are sorted by term identifier.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class TermDictionary {
+    
+    private final AtomicInteger _counter;
+    private final ConcurrentHashMap<String, Integer> _terms;
+    
+    public TermDictionary() {
+        
+        _counter = new AtomicInteger();
+        _terms = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Get the identifier for the given term. Assigns a new identifier if the
+     * term is not in the dictionary.
+     * 
+     * @param term
+     * @return 
+     */
+    public int id(String term) {
+        
+        Integer id = _terms.get(term);
+        if (id == null) {
+            id = _terms.computeIfAbsent(term, (key) -> _counter.getAndIncrement());
+        }
+        return id;
+    }
+    
+    /**
+     * Read the terms in the given dictionary file. The result is indexed by
+     * the term identifier.
+     * 
+     * @param file
+     * @return
+     * @throws java.io.IOException 
+     */
+    public static String[] read(File file) throws java.io.IOException {
+        
+        String[] terms;
+        try (BufferedReader in = FileSystem.openReader(file)) {
+            terms = new String[Integer.parseInt(in.readLine())];
+            String line;
+            while ((line = in.readLine()) != null) {
+                int pos = line.indexOf('\t');
+                terms[Integer.parseInt(line.substring(0, pos))] = line.substring(pos + 1);
+            }
+        }
+        return terms;
+    }
+    
+    public int size() {
+        
+        return _counter.get();
+    }
+    
+    /**
+     * Write the dictionary to file. The first line contains the number of
+     * terms.
+     * 
+     * @param file
+     * @throws java.io.IOException 
+     */
+    public void write(File file) throws java.io.IOException {
+        
+        String[] terms = new String[_counter.get()];
+        for (Map.Entry<String, Integer> entry : _terms.entrySet()) {
+            terms[entry.getValue()] = entry.getKey();
+        }
+        
+        FileSystem.createParentFolder(file);
+        try (PrintWriter out = FileSystem.openPrintWriter(file)) {
+            out.println(terms.length);
+            for (int iTerm = 0; iTerm < terms.length; iTerm++) {
+                out.print(iTerm);
+                out.print('\t');
+                out.println(terms[iTerm]);
+            }
+        }
+    }
+}
@@ -0,0 +1,703 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.term;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opendata.core.constraint.Threshold;
+import org.opendata.core.io.FileListReader;
+import org.opendata.core.io.FileSystem;
+import org.opendata.core.metric.Support;
+import org.opendata.core.util.FormatedBigDecimal;
+import org.opendata.curation.d4.Constants;
+import org.opendata.db.column.ColumnHelper;
+import org.opendata.db.column.TermIdColumnFile;
+import org.opendata.profiling.datatype.FastDataTypeAnnotator;
+
+/**
+ * Create a term index file from columns of term identifiers. The output file
+ * has the same format as the output of the term index generator.
+ * 
+ * The columns reference a shared term dictionary. The data type of each term
+ * is determined only once. Terms are sorted only once and each term
+ * identifier is mapped to the position (rank) of the term in the sorted
+ * list. Columns that satisfy the text threshold are added to the index as
+ * (rank, column identifier, count) triples. Each thread collects triples in
+ * its own buffer. If a buffer exceeds the given size, its triples are sorted
+ * by rank and written to a temporary file. All files and remaining buffers
+ * are merged into the term index at the end.
+ * 
+ * Column files are streamed. The pairs of a column are buffered while the
+ * column is classified. Columns with more than the given number of pairs are
+ * read a second time if they are included in the index.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class TermIdIndexGenerator {
+
+    /**
+     * Consumer for a list of (rank, posting) pairs that is sorted by rank.
+     * Postings contain the column identifier and the term count.
+     */
+    private interface PostingConsumer {
+        
+        public void consume(int rank, long posting) throws java.io.IOException;
+    }
+    
+    /**
+     * Cursor over a list of (rank, posting) pairs that is sorted by rank.
+     */
+    private abstract static class PostingRun implements Comparable<PostingRun> {
+        
+        protected long posting;
+        protected int rank;
+        
+        public abstract void close() throws java.io.IOException;
+        
+        @Override
+        public int compareTo(PostingRun run) {
+            
+            return Integer.compare(rank, run.rank);
+        }
+        
+        public abstract boolean next() throws java.io.IOException;
+    }
+    
+    /**
+     * Sorted run that was written to a temporary file.
+     */
+    private static class FileRun extends PostingRun {
+        
+        private final DataInputStream _in;
+        
+        public FileRun(File file) throws java.io.IOException {
+            
+            _in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), 65536)
+            );
+        }
+
+        @Override
+        public void close() throws java.io.IOException {
+            
+            _in.close();
+        }
+        
+        @Override
+        public boolean next() throws java.io.IOException {
+            
+            try {
+                rank = _in.readInt();
+            } catch (EOFException ex) {
+                return false;
+            }
+            posting = _in.readLong();
+            return true;
+        }
+    }
+    
+    /**
+     * Sorted run for the triples that remain in a buffer.
+     */
+    private static class MemoryRun extends PostingRun {
+        
+        private int _index = 0;
+        private final long[] _keys;
+        private final long[] _postings;
+        private final int _size;
+        
+        public MemoryRun(long[] keys, long[] postings, int size) {
+            
+            _keys = keys;
+            _postings = postings;
+            _size = size;
+            
+            Arrays.sort(_keys, 0, _size);
+        }
+
+        @Override
+        public void close() {
+            
+        }
+        
+        @Override
+        public boolean next() {
+            
+            if (_index < _size) {
+                long key = _keys[_index++];
+                rank = (int)(key >>> 32);
+                posting = _postings[(int)key];
+                return true;
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Write the merged postings to the term index file. Postings for the
+     * same term are sorted by column identifier.
+     */
+    private static class TermIndexWriter implements PostingConsumer {
+        
+        private int _rank = -1;
+        private final PrintWriter _out;
+        private long[] _postings;
+        private int _size;
+        private int _termCount = 0;
+        private final int[] _termIds;
+        private final String[] _terms;
+        
+        public TermIndexWriter(String[] terms, int[] termIds, PrintWriter out) {
+            
+            _terms = terms;
+            _termIds = termIds;
+            _out = out;
+            
+            _postings = new long[16];
+            _size = 0;
+        }
+        
+        @Override
+        public void consume(int rank, long posting) {
+            
+            if (rank != _rank) {
+                this.flush();
+                _rank = rank;
+            }
+            if (_size == _postings.length) {
+                _postings = Arrays.copyOf(_postings, _postings.length * 2);
+            }
+            _postings[_size++] = posting;
+        }
+        
+        public void flush() {
+            
+            if (_size == 0) {
+                return;
+            }
+            Arrays.sort(_postings, 0, _size);
+            StringBuilder cols = new StringBuilder();
+            for (int iEntry = 0; iEntry < _size; iEntry++) {
+                if (iEntry > 0) {
+                    cols.append(",");
+                }
+                cols.append((int)(_postings[iEntry] >>> 32))
+                        .append(":")
+                        .append((int)_postings[iEntry]);
+            }
+            String term = _terms[_termIds[_rank]];
+            _out.println(String.format("%d\t%s\t%s", _termCount++, term, cols));
+            _size = 0;
+        }
+        
+        public int termCount() {
+            
+            return _termCount;
+        }
+    }
+    
+    // Data type of terms in the dictionary.
+    private static final byte TYPE_UNKNOWN = 0;
+    private static final byte TYPE_TEXT = 1;
+    private static final byte TYPE_OTHER = 2;
+    private static final byte TYPE_EMPTY = 3;
+    // Number of bytes for each triple in a buffer.
+    private static final int ENTRY_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Maximum number of run files that are merged at once.
+    private static final int MAX_MERGE = 64;
+    
+    private class TermIdGeneratorTask implements Callable<Void> {
+
+        private long[] _columnBuffer;
+        private final int _columnBufferSize;
+        private final int _capacity;
+        private long[] _keys;
+        private long[] _postings;
+        private final ConcurrentLinkedQueue<File> _queue;
+        private final int[] _ranks;
+        private final List<File> _runs;
+        private int _runSequence = 0;
+        private int _size;
+        private final String[] _terms;
+        private final Threshold _textThreshold;
+        private final String _tmpPrefix;
+        private final byte[] _types;
+        private final boolean _verbose;
+        
+        public TermIdGeneratorTask(
+                ConcurrentLinkedQueue<File> queue,
+                String[] terms,
+                int[] ranks,
+                byte[] types,
+                Threshold textThreshold,
+                long bufferSize,
+                int columnBufferSize,
+                String tmpPrefix,
+                boolean verbose
+        ) {
+            _queue = queue;
+            _terms = terms;
+            _ranks = ranks;
+            _types = types;
+            _textThreshold = textThreshold;
+            _columnBufferSize = columnBufferSize;
+            _tmpPrefix = tmpPrefix;
+            _verbose = verbose;
+            
+            _capacity = (int)Math.max(
+                    1,
+                    Math.min(bufferSize / ENTRY_SIZE, Integer.MAX_VALUE - 8)
+            );
+            _keys = new long[Math.min(INITIAL_CAPACITY, _capacity)];
+            _postings = new long[_keys.length];
+            _size = 0;
+            _runs = new ArrayList<>();
+            _columnBuffer = new long[Math.max(1, Math.min(INITIAL_CAPACITY, columnBufferSize))];
+        }
+        
+        /**
+         * Add a (term identifier, column identifier, count) triple. The term
+         * identifier is replaced by the rank of the term. Keys contain the
+         * rank and the position of the posting in the buffer.
+         * 
+         * @param termId
+         * @param columnId
+         * @param count 
+         * @throws java.io.IOException 
+         */
+        private void add(
+                int termId,
+                int columnId,
+                int count
+        ) throws java.io.IOException {
+            
+            if (_size == _keys.length) {
+                if (_keys.length >= _capacity) {
+                    this.spill();
+                } else {
+                    int capacity = (int)Math.min(_keys.length * 2L, _capacity);
+                    _keys = Arrays.copyOf(_keys, capacity);
+                    _postings = Arrays.copyOf(_postings, capacity);
+                }
+            }
+            _keys[_size] = ((long)_ranks[termId] << 32) | _size;
+            _postings[_size] = ((long)columnId << 32) | (count & 0xFFFFFFFFL);
+            _size++;
+        }
+        
+        /**
+         * Get the data type of the given term. Types are shared between all
+         * threads. Concurrent updates for the same term write the same value.
+         * 
+         * @param termId
+         * @param annotator
+         * @return 
+         */
+        private byte getType(int termId, FastDataTypeAnnotator annotator) {
+            
+            byte type = _types[termId];
+            if (type == TYPE_UNKNOWN) {
+                String term = _terms[termId];
+                if (term.trim().equals("")) {
+                    type = TYPE_EMPTY;
+                } else if (annotator.getType(term).isText()) {
+                    type = TYPE_TEXT;
+                } else {
+                    type = TYPE_OTHER;
+                }
+                _types[termId] = type;
+            }
+            return type;
+        }
+        
+        @Override
+        public Void call() throws java.io.IOException {
+            
+            FastDataTypeAnnotator annotator = new FastDataTypeAnnotator();
+
+            File file = null;
+            while ((file = _queue.poll()) != null) {
+                Date start = new Date();
+                final int columnId = ColumnHelper.getColumnId(file);
+                int textCount = 0;
+                int valueCount = 0;
+                int bufferedCount = 0;
+                boolean isComplete = true;
+                try (TermIdColumnFile.Reader column = new TermIdColumnFile.Reader(file)) {
+                    while (column.next()) {
+                        int termId = column.termId();
+                        byte type = this.getType(termId, annotator);
+                        if (type != TYPE_EMPTY) {
+                            if (type == TYPE_TEXT) {
+                                textCount++;
+                            }
+                            valueCount++;
+                        }
+                        if (bufferedCount < _columnBufferSize) {
+                            if (bufferedCount == _columnBuffer.length) {
+                                int capacity = (int)Math.min(
+                                        _columnBuffer.length * 2L,
+                                        _columnBufferSize
+                                );
+                                _columnBuffer = Arrays.copyOf(_columnBuffer, capacity);
+                            }
+                            _columnBuffer[bufferedCount++] = ((long)termId << 32)
+                                    | (column.count() & 0xFFFFFFFFL);
+                        } else {
+                            isComplete = false;
+                        }
+                    }
+                }
+                if (valueCount == 0) {
+                    continue;
+                }
+                Date end = new Date();
+                BigDecimal textFrac;
+                textFrac = new Support(textCount, valueCount).value();
+                if (_verbose) {
+                    System.out.println(
+                            String.format(
+                                    "%s (%d ms) [%s]",
+                                    file.getName(),
+                                    (end.getTime() - start.getTime()),
+                                    new FormatedBigDecimal(textFrac).toString()
+                            )
+                    );
+                }
+                if (!_textThreshold.isSatisfied(textFrac)) {
+                    continue;
+                }
+                if (isComplete) {
+                    for (int iEntry = 0; iEntry < bufferedCount; iEntry++) {
+                        long entry = _columnBuffer[iEntry];
+                        this.add((int)(entry >>> 32), columnId, (int)entry);
+                    }
+                } else {
+                    // Read the column a second time.
+                    try (TermIdColumnFile.Reader column = new TermIdColumnFile.Reader(file)) {
+                        while (column.next()) {
+                            this.add(column.termId(), columnId, column.count());
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+        
+        /**
+         * Sort the triples in the buffer by rank and write them to a new run
+         * file. The buffer is cleared.
+         * 
+         * @throws java.io.IOException 
+         */
+        private void spill() throws java.io.IOException {
+            
+            File file;
+            do {
+                file = new File(_tmpPrefix + ".run" + (_runSequence++) + ".tmp");
+            } while (file.exists());
+            _runs.add(file);
+            try (DataOutputStream out = openRun(file)) {
+                MemoryRun run = new MemoryRun(_keys, _postings, _size);
+                while (run.next()) {
+                    out.writeInt(run.rank);
+                    out.writeLong(run.posting);
+                }
+            }
+            _size = 0;
+        }
+    }
+    
+    /**
+     * Merge the given runs and pass the result to the given consumer. All
+     * runs are closed when the merge is done.
+     * 
+     * @param runs
+     * @param consumer
+     * @throws java.io.IOException 
+     */
+    private void merge(
+            List<PostingRun> runs,
+            PostingConsumer consumer
+    ) throws java.io.IOException {
+        
+        try {
+            PriorityQueue<PostingRun> queue = new PriorityQueue<>();
+            for (PostingRun run : runs) {
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                PostingRun run = queue.poll();
+                consumer.consume(run.rank, run.posting);
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+        } finally {
+            for (PostingRun run : runs) {
+                run.close();
+            }
+        }
+    }
+    
+    private static DataOutputStream openRun(File file) throws java.io.IOException {
+        
+        return new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 65536)
+        );
+    }
+    
+    /**
+     * Sort the given term identifiers by their term. Uses a bottom-up merge
+     * sort on primitive arrays to avoid boxing all identifiers in the
+     * dictionary.
+     * 
+     * @param termIds
+     * @param terms 
+     */
+    private static void sortByTerm(int[] termIds, String[] terms) {
+        
+        int[] source = termIds;
+        int[] target = new int[termIds.length];
+        for (int width = 1; width < termIds.length; width *= 2) {
+            for (int low = 0; low < termIds.length; low += 2 * width) {
+                int mid = Math.min(low + width, termIds.length);
+                int high = (int)Math.min((long)low + 2L * width, termIds.length);
+                int i = low;
+                int j = mid;
+                for (int k = low; k < high; k++) {
+                    boolean takeLeft = (i < mid)
+                            && ((j >= high) || (terms[source[i]].compareTo(terms[source[j]]) <= 0));
+                    if (takeLeft) {
+                        target[k] = source[i++];
+                    } else {
+                        target[k] = source[j++];
+                    }
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != termIds) {
+            System.arraycopy(source, 0, termIds, 0, termIds.length);
+        }
+    }
+    
+    public void run(
+            List<File> files,
+            File dictionaryFile,
+            Threshold textThreshold,
+            long bufferSize,
+            int columnBufferSize,
+            int threads,
+            boolean verbose,
+            File outputFile
+    ) throws java.lang.InterruptedException, java.io.IOException {
+        
+        // Create the directory for the output file if it does not exist.
+        FileSystem.createParentFolder(outputFile);
+        if (outputFile.exists()) {
+            outputFile.delete();
+        }
+        
+        String[] terms = TermDictionary.read(dictionaryFile);
+        byte[] types = new byte[terms.length];
+        
+        // Sort all terms in the dictionary. The termIds array contains the
+        // term identifier for each rank.
+        int[] termIds = new int[terms.length];
+        for (int iTerm = 0; iTerm < terms.length; iTerm++) {
+            termIds[iTerm] = iTerm;
+        }
+        sortByTerm(termIds, terms);
+        int[] ranks = new int[terms.length];
+        for (int iRank = 0; iRank < terms.length; iRank++) {
+            ranks[termIds[iRank]] = iRank;
+        }
+        
+        ConcurrentLinkedQueue<File> queue;
+        queue = new ConcurrentLinkedQueue<>(files);
+        
+        List<TermIdGeneratorTask> tasks = new ArrayList<>();
+        List<Future<Void>> results = new ArrayList<>();
+        ExecutorService es = Executors.newCachedThreadPool();
+        for (int iThread = 0; iThread < threads; iThread++) {
+            TermIdGeneratorTask task = new TermIdGeneratorTask(
+                    queue,
+                    terms,
+                    ranks,
+                    types,
+                    textThreshold,
+                    bufferSize,
+                    columnBufferSize,
+                    outputFile.getAbsolutePath() + "." + iThread,
+                    verbose
+            );
+            tasks.add(task);
+            results.add(es.submit(task));
+        }
+        es.shutdown();
+        es.awaitTermination(threads, TimeUnit.DAYS);
+        
+        List<File> runFiles = new ArrayList<>();
+        for (TermIdGeneratorTask task : tasks) {
+            runFiles.addAll(task._runs);
+        }
+        try {
+            // Do not write an index if any of the tasks failed. The buffers
+            // of a failed task are incomplete.
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof java.io.IOException) {
+                        throw (java.io.IOException)ex.getCause();
+                    }
+                    throw new RuntimeException(ex.getCause());
+                }
+            }
+            // Reduce the number of run files to the maximum number of files
+            // that are merged at once.
+            int mergeSequence = 0;
+            while (runFiles.size() >= MAX_MERGE) {
+                List<File> group = new ArrayList<>(runFiles.subList(0, MAX_MERGE));
+                File file;
+                do {
+                    String name = outputFile.getAbsolutePath() + ".merge" + (mergeSequence++) + ".tmp";
+                    file = new File(name);
+                } while (file.exists());
+                runFiles.add(file);
+                try (DataOutputStream runOut = openRun(file)) {
+                    List<PostingRun> runs = new ArrayList<>();
+                    for (File run : group) {
+                        runs.add(new FileRun(run));
+                    }
+                    this.merge(runs, (rank, posting) -> {
+                        runOut.writeInt(rank);
+                        runOut.writeLong(posting);
+                    });
+                }
+                for (File run : group) {
+                    run.delete();
+                }
+                runFiles.removeAll(group);
+            }
+            List<PostingRun> runs = new ArrayList<>();
+            for (File file : runFiles) {
+                runs.add(new FileRun(file));
+            }
+            for (TermIdGeneratorTask task : tasks) {
+                runs.add(new MemoryRun(task._keys, task._postings, task._size));
+            }
+            try (PrintWriter out = FileSystem.openPrintWriter(outputFile)) {
+                TermIndexWriter writer = new TermIndexWriter(terms, termIds, out);
+                this.merge(runs, writer);
+                writer.flush();
+                if (verbose) {
+                    System.out.println(
+                            String.format(
+                                    "RESULTING FILE HAS %d TERMS.",
+                                    writer.termCount()
+                            )
+                    );
+                }
+            }
+        } finally {
+            for (File file : runFiles) {
+                file.delete();
+            }
+        }
+    }
+    
+    private final static String COMMAND =
+	    "Usage:\n" +
+	    "  <column-file-or-dir>\n" +
+	    "  <dictionary-file>\n" +
+            "  <text-threshold>\n" +
+            "  <threads>\n" +
+	    "  <output-file>\n" +
+            "  [<buffer-size> (MB per thread) default 256]\n" +
+            "  [<column-buffer-size> (pairs per column) default 100000]";
+    
+    public static void main(String[] args) {
+        
+	System.out.println(Constants.NAME + " - Term Index Generator (Term Identifiers) - Version (" + Constants.VERSION + ")\n");
+
+        if ((args.length < 5) || (args.length > 7)) {
+            System.out.println(COMMAND);
+            System.exit(-1);
+        }
+
+        File inputDirectory = new File(args[0]);
+        File dictionaryFile = new File(args[1]);
+        Threshold textThreshold = Threshold.getConstraint(args[2]);
+        int threads = Integer.parseInt(args[3]);
+        File outputFile = new File(args[4]);
+        int bufferSize = 256;
+        if (args.length >= 6) {
+            bufferSize = Integer.parseInt(args[5]);
+        }
+        int columnBufferSize = 100000;
+        if (args.length == 7) {
+            columnBufferSize = Integer.parseInt(args[6]);
+        }
+        
+        try {
+            new TermIdIndexGenerator().run(
+                    new FileListReader(TermIdColumnFile.SUFFIX)
+                            .listFiles(inputDirectory),
+                    dictionaryFile,
+                    textThreshold,
+                    bufferSize * 1024L * 1024L,
+                    columnBufferSize,
+                    threads,
+                    true,
+                    outputFile
+            );
+        } catch (java.lang.InterruptedException | java.io.IOException ex) {
+            Logger.getGlobal().log(Level.SEVERE, "CREATE TERM INDEX", ex);
+            System.exit(-1);
+        }
+    }
+}
@@ -23,27 +23,101 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.PriorityQueue;
 import org.opendata.core.io.FileSystem;
 import org.opendata.core.object.IdentifiableInteger;
 import org.opendata.core.sort.IdentifiableObjectSort;
-import org.opendata.core.util.OrderedLinkedList;
 import org.opendata.core.util.IdentifiableCount;
 import org.opendata.core.value.ValueCounter;
 import org.opendata.db.column.ColumnHelper;
 
 /**
- * Generator for a unique index of database terms. Creates the unique term index
- * in a memory buffer. If the buffer is full it will be written to disk. At the
- * end of index generation all files that were written to disk are merged (in a
- * single scan) to generate the final term index output file.
+ * Generator for a unique index of database terms. Each thread that adds terms
+ * to the index uses its own buffer. If the estimated memory usage of a buffer
+ * exceeds the buffer size the buffer is sorted and written to disk by the
+ * thread that owns the buffer. At the end of index generation all files that
+ * were written to disk and the remaining buffer contents are merged (in a
+ * single scan) to generate the final term index output file. If there are
+ * too many files to merge at once, groups of files are first merged into
+ * larger temporary files. The order of
+ * terms in the output file is validated while the file is written.
  * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class TermIndexFile {
     
+    /**
+     * Term buffer for a single thread.
+     */
+    public class Buffer {
+        
+        private HashMap<String, List<IdentifiableInteger>> _terms;
+        private long _memory;
+        
+        public Buffer() {
+            
+            this.clear();
+        }
+        
+        public void add(int columnId, ValueCounter term) {
+
+            String key = term.getText();
+            IdentifiableInteger colCount;
+            colCount = new IdentifiableCount(columnId, term.getCount());
+            List<IdentifiableInteger> columns = _terms.get(key);
+            if (columns == null) {
+                columns = new ArrayList<>();
+                _terms.put(key, columns);
+                _memory += TERM_SIZE + (2L * key.length());
+            }
+            columns.add(colCount);
+            _memory += COLUMN_SIZE;
+            if (_memory > _bufferSize) {
+                try {
+                    this.write();
+                } catch (java.io.IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+        
+        private void clear() {
+            
+            _terms = new HashMap<>();
+            _memory = 0;
+        }
+        
+        /**
+         * Sort the buffer content and write it to a temporary file.
+         * 
+         * @throws java.io.IOException 
+         */
+        private void write() throws java.io.IOException {
+
+            File file = File.createTempFile("buf", ".tmp", new File("."));
+            if (_verbose) {
+                System.out.println("WRITE BUFFER TO " + file.getAbsolutePath());
+            }
+
+            ArrayList<String> terms = new ArrayList<>(_terms.keySet());
+            Collections.sort(terms);
+
+            try (PrintWriter out = FileSystem.openPrintWriter(file)) {
+                for (String term : terms) {
+                    String cols = ColumnHelper.toArrayString(_terms.get(term).iterator());
+                    out.println(String.format("%s\t%s", term, cols));
+                }
+            }
+
+            this.clear();
+            synchronized (_files) {
+                _files.add(file);
+            }
+        }
+    }
+    
     private class IOTerm implements Comparable<IOTerm> {
 
         private final List<IdentifiableInteger> _columns;
@@ -75,79 +149,76 @@ public class TermIndexFile {
     private class TermFileMerger {
     
         private final PrintWriter _out;
+        private String _prevTerm = null;
+        private final boolean _runOutput;
         private int _termId = 0;
+        private final boolean _validate;
         
-        public TermFileMerger(PrintWriter out) {
+        public TermFileMerger(PrintWriter out, boolean validate, boolean runOutput) {
             
             _out = out;
+            _validate = validate;
+            _runOutput = runOutput;
+        }
+        
+        public TermFileMerger(PrintWriter out, boolean validate) {
+            
+            this(out, validate, false);
         }
         
         public int merge(List<TermSetIterator> readers) throws java.io.IOException {
 
-            OrderedLinkedList<TermSetIterator> activeReaders;
-            activeReaders = new OrderedLinkedList<>();
+            PriorityQueue<TermSetIterator> activeReaders;
+            activeReaders = new PriorityQueue<>(Math.max(readers.size(), 1));
             for (TermSetIterator reader : readers) {
                 if (reader.term() != null) {
                     activeReaders.add(reader);
                 }
             }
-            Collections.sort(activeReaders);
             
-            while (activeReaders.size() > 1) {
-                // The list of active readers is always sorted in decreasing
-                // order of thier terms.
-                // Start by outputting the term for the first reader (and all
-                // following readers with the same term. Keep track of the
-                // readers that need to be advanced.
-                List<TermSetIterator> advanceReaders = new ArrayList<>();
-                TermSetIterator reader = activeReaders.pop();
-                advanceReaders.add(reader);
+            while (!activeReaders.isEmpty()) {
+                // Output the term of the reader at the head of the queue.
+                // Merge the column lists of all readers with the same term.
+                TermSetIterator reader = activeReaders.poll();
                 String name = reader.term().name();
                 List<IdentifiableInteger> columns = reader.term().columns();
-                while (!activeReaders.isEmpty()) {
-                    if (activeReaders.peek().compareTo(reader) == 0) {
-                        advanceReaders.add(activeReaders.pop());
-                    } else {
-                        break;
-                    }
+                if (reader.next()) {
+                    activeReaders.add(reader);
                 }
-                if (advanceReaders.size() > 1) {
-                    // Merge the column lists from all terms at the top.
-                    columns = new ArrayList<>();
-                    for (TermSetIterator r : advanceReaders) {
-                        columns.addAll(r.term().columns());
-                        if (r.next()) {
-                            activeReaders.insert(r);
-                        }
+                boolean merged = false;
+                while ((!activeReaders.isEmpty()) && (activeReaders.peek().term().name().equals(name))) {
+                    if (!merged) {
+                        columns = new ArrayList<>(columns);
+                        merged = true;
                     }
-                } else {
-                    // No need to merge anything. Write the term for the first
-                    // reader.
-                    if (reader.next()) {
-                        activeReaders.insert(reader);
+                    TermSetIterator r = activeReaders.poll();
+                    columns.addAll(r.term().columns());
+                    if (r.next()) {
+                        activeReaders.add(r);
                     }
                 }
                 this.write(name, columns);
             }
-            if (activeReaders.size() == 1) {
-                // Write terms for the remaining reader.
-                TermSetIterator reader = activeReaders.pop();
-                while (reader.term() != null) {
-                    this.write(reader.term());
-                    reader.next();
-                }
-            }
             
             return _termId;
         }
         
-        private void write(IOTerm term) {
-            
-            this.write(term.name(), term.columns());
-        }
-        
         private void write(String term, List<IdentifiableInteger> columns) {
             
+            if (_runOutput) {
+                // Intermediate files use the same format as buffer files.
+                String cols = ColumnHelper.toArrayString(columns.iterator());
+                _out.println(String.format("%s\t%s", term, cols));
+                _termId++;
+                return;
+            }
+            if (_validate) {
+                if ((_prevTerm != null) && (_prevTerm.compareTo(term) >= 0)) {
+                    throw new RuntimeException(String.format("%s before %s", _prevTerm, term));
+                }
+                _prevTerm = term;
+            }
+            
             Collections.sort(columns, new IdentifiableObjectSort());
 
             String cols = ColumnHelper.toArrayString(columns.iterator());
@@ -263,48 +334,84 @@ public class TermIndexFile {
         }
     }
 
-    private HashMap<String, List<IdentifiableInteger>> _buffer;
+    // Estimated memory usage (in bytes) for a new term and for a column
+    // entry of a term in the buffer.
+    private static final int COLUMN_SIZE = 40;
+    private static final int TERM_SIZE = 160;
+    // Maximum number of files that are merged at once.
+    private static final int MAX_MERGE = 64;
+    
+    private final List<Buffer> _buffers;
+    private final long _bufferSize;
     private final List<File> _files;
-    private final int _maxBufferSize;
     private final boolean _verbose;
     
-    public TermIndexFile(int maxBufferSize, boolean verbose) {
+    /**
+     * Initialize the memory size (in bytes) for each buffer and the verbose
+     * flag.
+     * 
+     * @param bufferSize
+     * @param verbose 
+     */
+    public TermIndexFile(long bufferSize, boolean verbose) {
         
-        _maxBufferSize = maxBufferSize;
+        _bufferSize = bufferSize;
+        _verbose = verbose;
         
-        _buffer = new HashMap<>();
+        _buffers = new ArrayList<>();
         _files = new ArrayList<>();
-        _verbose = verbose;
     }
     
-    public synchronized void add(int columnId, ValueCounter term) {
+    /**
+     * Get a new buffer for adding terms to the index. Buffers are not
+     * thread-safe. Each thread should use its own buffer.
+     * 
+     * @return 
+     */
+    public synchronized Buffer buffer() {
         
-        String key = term.getText();
-        IdentifiableInteger colCount;
-        colCount = new IdentifiableCount(columnId, term.getCount());
-        if (!_buffer.containsKey(key)) {
-            ArrayList<IdentifiableInteger> columns = new ArrayList<>();
-            columns.add(colCount);
-            _buffer.put(key, columns);
-        } else {
-            _buffer.get(key).add(colCount);
-        }
-        if (_buffer.size() > _maxBufferSize) {
-            try {
-                this.writeBuffer();
-            } catch (java.io.IOException ex) {
-                throw new RuntimeException(ex);
-            }
-        }
+        Buffer buffer = new Buffer();
+        _buffers.add(buffer);
+        return buffer;
     }
     
     public void write(File outputFile, boolean validate) throws java.io.IOException {
         
+        // Reduce the number of files to the maximum number of files that are
+        // merged at once (leaving room for the remaining buffers).
+        while ((_files.size() > 1) && (_files.size() + _buffers.size() > MAX_MERGE)) {
+            int groupSize = Math.min(_files.size(), MAX_MERGE);
+            List<File> group = new ArrayList<>(_files.subList(0, groupSize));
+            File file = File.createTempFile("buf", ".tmp", new File("."));
+            if (_verbose) {
+                System.out.println(
+                        String.format(
+                                "MERGE %d FILES INTO %s",
+                                group.size(),
+                                file.getAbsolutePath()
+                        )
+                );
+            }
+            List<TermSetIterator> readers = new ArrayList<>();
+            for (File run : group) {
+                readers.add(new TermFileReader(run));
+            }
+            try (PrintWriter out = FileSystem.openPrintWriter(file)) {
+                new TermFileMerger(out, false, true).merge(readers);
+            }
+            for (File run : group) {
+                run.delete();
+            }
+            _files.removeAll(group);
+            _files.add(file);
+        }
+        
         List<TermSetIterator> readers = new ArrayList<>();
-        if (!_buffer.isEmpty()) {
-            readers.add(new TermSetReader(_buffer));
+        for (Buffer buffer : _buffers) {
+            if (!buffer._terms.isEmpty()) {
+                readers.add(new TermSetReader(buffer._terms));
+            }
         }
-
         for (File file : _files) {
             readers.add(new TermFileReader(file));
         }
@@ -314,69 +421,17 @@ public class TermIndexFile {
         }
         
         try (PrintWriter out = FileSystem.openPrintWriter(outputFile)) {
-            int count = new TermFileMerger(out).merge(readers);
+            int count = new TermFileMerger(out, validate).merge(readers);
             if (_verbose) {
                 System.out.println(String.format("RESULTING FILE HAS %d TERMS.", count));
             }
-        }
-        
-        for (File file : _files) {
-            file.delete();
-        }
-        
-        if (validate) {
-            if (_verbose) {
-                System.out.println("VALIDATE @ " + new Date());
-            }
-            try (BufferedReader in = FileSystem.openReader(outputFile)) {
-                String line = in.readLine();
-                if (line == null) {
-                    return;
-                }
-                String prevTerm = line.split("\t")[1];
-                while ((line = in.readLine()) != null) {
-                    String term = line.split("\t")[1];
-                    if (prevTerm.compareTo(term) >= 0) {
-                        throw new RuntimeException(String.format("%s before %s", prevTerm, term));
-                    }
-                    prevTerm = term;
-                }
+        } finally {
+            for (File file : _files) {
+                file.delete();
             }
-            if (_verbose) {
-                System.out.println("DONE @ " + new Date());
-            }
-        }
-    }
-    
-    private void writeBuffer() throws java.io.IOException {
-        
-        File file = File.createTempFile("buf", ".tmp", new File("."));
-        if (_verbose) {
-            System.out.println();
-            System.out.println("WRITE BUFFER TO " + file.getAbsolutePath());
-            System.out.println("START @ " + new Date());
-        }
-
-        ArrayList<String> terms = new ArrayList<>(_buffer.keySet());
-        Collections.sort(terms);
-
-        if (_verbose) {
-            System.out.println("SORTED @ " + new Date());
         }
         
-        try (PrintWriter out = FileSystem.openPrintWriter(file)) {
-            for (String term : terms) {
-                String cols = ColumnHelper.toArrayString(_buffer.get(term).iterator());
-                out.println(String.format("%s\t%s", term, cols));
-            }
-        }
-
-        if (_verbose) {
-            System.out.println("DONE @ " + new Date());
-            System.out.println();
-        }
-
-        _buffer = new HashMap<>();
-        _files.add(file);
+        _buffers.clear();
+        _files.clear();
     }
 }
@@ -19,105 +19,321 @@ package org.opendata.db.term;
 
 import java.io.File;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.opendata.core.constraint.Threshold;
 import org.opendata.core.io.FileListReader;
 import org.opendata.core.value.ValueCounter;
-import org.opendata.profiling.datatype.DefaultDataTypeAnnotator;
+import org.opendata.profiling.datatype.DataType;
+import org.opendata.profiling.datatype.FastDataTypeAnnotator;
+import org.opendata.profiling.datatype.SequentialTextClassifier;
 import org.opendata.core.io.FileSystem;
 import org.opendata.core.metric.Support;
 import org.opendata.core.util.FormatedBigDecimal;
 import org.opendata.curation.d4.Constants;
+import org.opendata.db.column.ColumnHelper;
+import org.opendata.db.column.ColumnProfile;
+import org.opendata.db.column.ColumnProfileFile;
 import org.opendata.db.column.ColumnReader;
 import org.opendata.db.column.FlexibleColumnReader;
+import org.opendata.db.column.PackedColumnFile;
 
 /**
  * Create a term index file. The output file is tab-delimited and contains three
  * columns: (1) the term identifier, (2) the term, and (3) a comma-separated
  * list of column identifier.
  * 
+ * Input files are either individual column files or column container files
+ * that contain all columns of a dataset.
+ * 
+ * Columns are read once. The values of a column are buffered while the
+ * column is classified. The buffered values are added to the index if the
+ * column satisfies the text threshold. Columns with more values than the
+ * column buffer size are read a second time instead. A buffer size of zero
+ * always reads qualifying columns twice.
+ * 
+ * If a sample error rate is given, columns are classified using a random
+ * sample of their values. Only columns where the sample does not settle the
+ * threshold decision are classified using all values.
+ * 
+ * If a profile file is given, columns that have a valid profile are not
+ * classified again. Columns that do not satisfy the text threshold are not
+ * read at all in this case. Profiles are created for all other columns by
+ * classifying all of their values (the sample error rate is ignored).
+ * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class TermIndexGenerator {
 
     private class TermGeneratorTask implements Runnable {
 
+        private final SequentialTextClassifier _classifier;
+        private final int _columnBufferSize;
+        private final ColumnProfileFile _profiles;
         private final ConcurrentLinkedQueue<File> _queue;
-        private final TermIndexFile _termIndex;
+        private final TermIndexFile.Buffer _termIndex;
         private final Threshold _textThreshold;
         private final boolean _verbose;
         
         public TermGeneratorTask(
                 ConcurrentLinkedQueue<File> queue,
                 Threshold textThreshold,
+                int columnBufferSize,
+                double sampleError,
+                ColumnProfileFile profiles,
                 boolean verbose,
-                TermIndexFile termIndex
+                TermIndexFile.Buffer termIndex
         ) {
             _queue = queue;
+            _profiles = profiles;
+            _columnBufferSize = columnBufferSize;
             _textThreshold = textThreshold;
+            if ((sampleError > 0) && (profiles == null)) {
+                _classifier = new SequentialTextClassifier(textThreshold, sampleError);
+            } else {
+                _classifier = null;
+            }
             _verbose = verbose;
             _termIndex = termIndex;
         }
         
-        @Override
-        public void run() {
+        /**
+         * Add the terms of a column to the index if the fraction of text
+         * values in the column satisfies the text threshold.
+         * 
+         * @param columnId
+         * @param columnReader
+         * @param file
+         * @param name
+         * @param annotator 
+         */
+        private void index(
+                int columnId,
+                Supplier<ColumnReader<ValueCounter>> columnReader,
+                File file,
+                String name,
+                FastDataTypeAnnotator annotator
+        ) {
             
-            DefaultDataTypeAnnotator annotator = new DefaultDataTypeAnnotator();
-
-            File file = null;
-            while ((file = _queue.poll()) != null) {
-                ColumnReader reader = new FlexibleColumnReader(file);
-                Date start = new Date();
-                int textCount = 0;
-                int valueCount = 0;
-                while (reader.hasNext()) {
-                    ValueCounter colVal = reader.next();
-                    if (!colVal.isEmpty()) {
-                        if (annotator.getType(colVal.getText()).isText()) {
+            Date start = new Date();
+            ColumnProfile profile = null;
+            if (_profiles != null) {
+                profile = _profiles.get(columnId, file);
+                if (profile != null) {
+                    this.index(columnId, columnReader, profile, name, start);
+                    return;
+                }
+                profile = new ColumnProfile(columnId, file);
+            }
+            ColumnReader<ValueCounter> reader = columnReader.get();
+            int textCount = 0;
+            int valueCount = 0;
+            List<ValueCounter> values = null;
+            if (_columnBufferSize > 0) {
+                values = new ArrayList<>();
+            }
+            List<String> sample = null;
+            Random random = null;
+            if (_classifier != null) {
+                sample = new ArrayList<>();
+                random = new Random(reader.columnId());
+            }
+            while (reader.hasNext()) {
+                ValueCounter colVal = reader.next();
+                if (values != null) {
+                    if (values.size() < _columnBufferSize) {
+                        values.add(colVal);
+                    } else {
+                        // The column is read a second time if it is added
+                        // to the index.
+                        values = null;
+                    }
+                }
+                if (!colVal.isEmpty()) {
+                    if (sample != null) {
+                        _classifier.add(sample, colVal.getText(), valueCount, random);
+                    } else {
+                        DataType type = annotator.getType(colVal.getText());
+                        if (profile != null) {
+                            profile.add(type);
+                        }
+                        if (type.isText()) {
                             textCount++;
                         }
-                        valueCount++;
                     }
+                    valueCount++;
+                } else if (profile != null) {
+                    profile.addEmpty();
                 }
-                if (valueCount == 0) {
-                    continue;
+            }
+            if (profile != null) {
+                _profiles.put(profile);
+            }
+            if (valueCount == 0) {
+                return;
+            }
+            BigDecimal textFrac = null;
+            boolean isTextColumn = false;
+            if (sample != null) {
+                SequentialTextClassifier.Result result;
+                result = _classifier.classify(sample, valueCount, random);
+                if (result != null) {
+                    textFrac = result.fraction();
+                    isTextColumn = result.isSatisfied();
+                } else {
+                    // Classify all values if the decision is not settled.
+                    if (values != null) {
+                        for (ValueCounter colVal : values) {
+                            if (this.isText(colVal, annotator)) {
+                                textCount++;
+                            }
+                        }
+                    } else {
+                        reader.reset();
+                        while (reader.hasNext()) {
+                            if (this.isText(reader.next(), annotator)) {
+                                textCount++;
+                            }
+                        }
+                    }
                 }
-                Date end = new Date();
-                BigDecimal textFrac;
+            }
+            if (textFrac == null) {
                 textFrac = new Support(textCount, valueCount).value();
-                if (_verbose) {
-                    System.out.println(
-                            String.format(
-                                    "%s (%d ms) [%s]",
-                                    file.getName(),
-                                    (end.getTime() - start.getTime()),
-                                    new FormatedBigDecimal(textFrac).toString()
-                            )
-                    );
-                }
-                if (!_textThreshold.isSatisfied(textFrac)) {
-                    continue;
+                isTextColumn = _textThreshold.isSatisfied(textFrac);
+            }
+            this.print(name, start, textFrac);
+            if (!isTextColumn) {
+                return;
+            }
+            if (values != null) {
+                for (ValueCounter value : values) {
+                    _termIndex.add(columnId, value);
                 }
-                final int columnId = reader.columnId();
-                reader = new FlexibleColumnReader(file);
+            } else {
+                reader.reset();
                 while (reader.hasNext()) {
                     _termIndex.add(columnId, reader.next());
                 }
             }
+        }
+        
+        /**
+         * Add the terms of a column to the index if the column profile
+         * satisfies the text threshold. The column is only read if it is
+         * added to the index.
+         * 
+         * @param columnId
+         * @param columnReader
+         * @param profile
+         * @param name
+         * @param start 
+         */
+        private void index(
+                int columnId,
+                Supplier<ColumnReader<ValueCounter>> columnReader,
+                ColumnProfile profile,
+                String name,
+                Date start
+        ) {
+            
+            if (profile.valueCount() == 0) {
+                return;
+            }
+            BigDecimal textFrac = new Support(
+                    profile.textCount(),
+                    profile.valueCount()
+            ).value();
+            this.print(name, start, textFrac);
+            if (!_textThreshold.isSatisfied(textFrac)) {
+                return;
+            }
+            ColumnReader<ValueCounter> reader = columnReader.get();
+            while (reader.hasNext()) {
+                _termIndex.add(columnId, reader.next());
+            }
+        }
+        
+        private void print(String name, Date start, BigDecimal textFrac) {
+            
+            if (_verbose) {
+                Date end = new Date();
+                System.out.println(
+                        String.format(
+                                "%s (%d ms) [%s]",
+                                name,
+                                (end.getTime() - start.getTime()),
+                                new FormatedBigDecimal(textFrac).toString()
+                        )
+                );
+            }
+        }
+        
+        private boolean isText(
+                ValueCounter colVal,
+                FastDataTypeAnnotator annotator
+        ) {
+            
+            if (!colVal.isEmpty()) {
+                return annotator.getType(colVal.getText()).isText();
+            }
+            return false;
+        }
+        
+        @Override
+        public void run() {
+            
+            FastDataTypeAnnotator annotator = new FastDataTypeAnnotator();
+
+            File file = null;
+            while ((file = _queue.poll()) != null) {
+                if (PackedColumnFile.isPackedFile(file)) {
+                    // Container files are read one column at a time.
+                    PackedColumnFile columns;
+                    try {
+                        columns = new PackedColumnFile(file);
+                    } catch (java.io.IOException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                    for (PackedColumnFile.Entry column : columns.columns()) {
+                        this.index(
+                                column.columnId(),
+                                column::reader,
+                                file,
+                                file.getName() + ":" + column.columnId(),
+                                annotator
+                        );
+                    }
+                } else {
+                    final File columnFile = file;
+                    this.index(
+                            ColumnHelper.getColumnId(file),
+                            () -> new FlexibleColumnReader(columnFile),
+                            file,
+                            file.getName(),
+                            annotator
+                    );
+                }
+            }
         }        
     }
     
     public void run(
             List<File> files,
             Threshold textThreshold,
-            int bufferSize,
+            long bufferSize,
+            int columnBufferSize,
+            double sampleError,
+            File profileFile,
             boolean validate,
             int threads,
             boolean verbose,
@@ -133,6 +349,11 @@ public class TermIndexGenerator {
         ConcurrentLinkedQueue<File> queue;
         queue = new ConcurrentLinkedQueue<>(files);
         
+        ColumnProfileFile profiles = null;
+        if (profileFile != null) {
+            profiles = new ColumnProfileFile(profileFile);
+        }
+        
         TermIndexFile termIndex;
         termIndex = new TermIndexFile(bufferSize, verbose);
         
@@ -142,14 +363,21 @@ public class TermIndexGenerator {
                     new TermGeneratorTask(
                             queue,
                             textThreshold,
+                            columnBufferSize,
+                            sampleError,
+                            profiles,
                             verbose,
-                            termIndex
+                            termIndex.buffer()
                     )
             );
         }
         es.shutdown();
         es.awaitTermination(threads, TimeUnit.DAYS);
         
+        if (profiles != null) {
+            profiles.write();
+        }
+        
         termIndex.write(outputFile, validate);
     }
     
@@ -157,32 +385,51 @@ public class TermIndexGenerator {
 	    "Usage:\n" +
 	    "  <column-file-or-dir>\n" +
             "  <text-threshold>\n" +
-	    "  <mem-buffer-size>\n" +
+	    "  <buffer-size-per-thread-mb>\n" +
             "  <validate>\n" +
             "  <threads>\n" +
-	    "  <output-file>";
+	    "  <output-file>\n" +
+	    "  [<column-buffer-size>] [default: 100000]\n" +
+	    "  [<sample-error-rate>] [default: 0]\n" +
+	    "  [<profile-file>] [default: none]";
     
     public static void main(String[] args) {
         
 	System.out.println(Constants.NAME + " - Term Index Generator - Version (" + Constants.VERSION + ")\n");
 
-        if (args.length != 6) {
+        if ((args.length < 6) || (args.length > 9)) {
             System.out.println(COMMAND);
             System.exit(-1);
         }
 
         File inputDirectory = new File(args[0]);
         Threshold textThreshold = Threshold.getConstraint(args[1]);
-        int bufferSize = Integer.parseInt(args[2]);
+        long bufferSize = Long.parseLong(args[2]) * 1024L * 1024L;
         boolean validate = Boolean.parseBoolean(args[3]);
         int threads = Integer.parseInt(args[4]);
         File outputFile = new File(args[5]);
+        int columnBufferSize = 100000;
+        if (args.length > 6) {
+            columnBufferSize = Integer.parseInt(args[6]);
+        }
+        double sampleError = 0;
+        if (args.length > 7) {
+            sampleError = Double.parseDouble(args[7]);
+        }
+        File profileFile = null;
+        if (args.length > 8) {
+            profileFile = new File(args[8]);
+        }
         
         try {
             new TermIndexGenerator().run(
-                    new FileListReader(".txt").listFiles(inputDirectory),
+                    new FileListReader(new String[]{".txt", PackedColumnFile.SUFFIX})
+                            .listFiles(inputDirectory),
                     textThreshold,
                     bufferSize,
+                    columnBufferSize,
+                    sampleError,
+                    profileFile,
                     validate,
                     threads,
                     true,
@@ -0,0 +1,296 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.tools;
+
+import java.io.Closeable;
+import java.io.Reader;
+
+/**
+ * Tokenizer for CSV and TSV files that returns values as slices of an
+ * internal character buffer. The tokenizer does not create any objects for
+ * individual values. Slices are only valid until the next call to next().
+ * 
+ * The tokenizer follows the parsing rules of the CSV parser for formats
+ * without escape character, that do not ignore surrounding spaces, and that
+ * ignore empty lines. A quote character only starts a quoted value at the
+ * beginning of a field. Two quote characters within a quoted value are an
+ * escaped quote. White space between a closing quote and the next delimiter
+ * is ignored. Records end at '\n', '\r', or "\r\n".
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class CSVTokenizer implements Closeable {
+    
+    private static final int READ_SIZE = 65536;
+    
+    private boolean _afterDelimiter = false;
+    private boolean _atRecordStart = true;
+    private char[] _buffer;
+    private int _column = -1;
+    private final char _delimiter;
+    private boolean _done = false;
+    private boolean _endOfRecord = false;
+    private final boolean _hasQuote;
+    private int _limit = 0;
+    private int _mark = 0;
+    private int _pos = 0;
+    private final char _quote;
+    private final Reader _reader;
+    private int _valueLength = 0;
+    private int _valueOffset = 0;
+    private int _write = 0;
+    
+    /**
+     * Initialize the input reader, the field delimiter, and the quote
+     * character. The quote character may be null.
+     * 
+     * @param reader
+     * @param delimiter
+     * @param quote 
+     */
+    public CSVTokenizer(Reader reader, char delimiter, Character quote) {
+        
+        _reader = reader;
+        _delimiter = delimiter;
+        _hasQuote = (quote != null);
+        _quote = (_hasQuote) ? quote : '\n';
+        
+        _buffer = new char[READ_SIZE * 2];
+    }
+    
+    /**
+     * Character buffer that contains the current value.
+     * 
+     * @return 
+     */
+    public char[] buffer() {
+        
+        return _buffer;
+    }
+    
+    @Override
+    public void close() throws java.io.IOException {
+        
+        _reader.close();
+    }
+    
+    /**
+     * Index of the current value in its record.
+     * 
+     * @return 
+     */
+    public int column() {
+        
+        return _column;
+    }
+    
+    /**
+     * Read the next block of characters into the buffer. Characters before
+     * the start of the current token are discarded. Returns false if the end
+     * of the input stream has been reached.
+     * 
+     * @return
+     * @throws java.io.IOException 
+     */
+    private boolean fill() throws java.io.IOException {
+        
+        if (_mark > 0) {
+            System.arraycopy(_buffer, _mark, _buffer, 0, _limit - _mark);
+            _pos -= _mark;
+            _write -= _mark;
+            _limit -= _mark;
+            _mark = 0;
+        }
+        if (_buffer.length - _limit < READ_SIZE) {
+            char[] buffer = new char[Math.max(_buffer.length * 2, _limit + READ_SIZE)];
+            System.arraycopy(_buffer, 0, buffer, 0, _limit);
+            _buffer = buffer;
+        }
+        int n = _reader.read(_buffer, _limit, _buffer.length - _limit);
+        if (n < 0) {
+            return false;
+        }
+        _limit += n;
+        return true;
+    }
+    
+    /**
+     * True if the current value is the last value in its record.
+     * 
+     * @return 
+     */
+    public boolean isEndOfRecord() {
+        
+        return _endOfRecord;
+    }
+    
+    /**
+     * Length of the current value.
+     * 
+     * @return 
+     */
+    public int length() {
+        
+        return _valueLength;
+    }
+    
+    /**
+     * Advance to the next value. Returns false if the end of the input has
+     * been reached.
+     * 
+     * @return
+     * @throws java.io.IOException 
+     */
+    public boolean next() throws java.io.IOException {
+        
+        if (_done) {
+            return false;
+        }
+        
+        _mark = _pos;
+        int c = this.read();
+        if (_atRecordStart) {
+            // Skip empty lines.
+            while ((c == '\n') || (c == '\r')) {
+                if ((c == '\r') && (this.peek() == '\n')) {
+                    _pos++;
+                }
+                _mark = _pos;
+                c = this.read();
+            }
+            _column = 0;
+        } else {
+            _column++;
+        }
+        if ((c == -1) && (!_afterDelimiter)) {
+            _done = true;
+            return false;
+        }
+        
+        _atRecordStart = false;
+        _afterDelimiter = false;
+        _endOfRecord = false;
+        
+        if ((_hasQuote) && (c == _quote)) {
+            this.readQuoted();
+            _valueOffset = _mark + 1;
+        } else {
+            this.readSimple(c);
+            _valueOffset = _mark;
+        }
+        return true;
+    }
+    
+    /**
+     * Offset of the current value in the character buffer.
+     * 
+     * @return 
+     */
+    public int offset() {
+        
+        return _valueOffset;
+    }
+    
+    private int peek() throws java.io.IOException {
+        
+        if ((_pos == _limit) && (!this.fill())) {
+            return -1;
+        }
+        return _buffer[_pos];
+    }
+    
+    private int read() throws java.io.IOException {
+        
+        if ((_pos == _limit) && (!this.fill())) {
+            return -1;
+        }
+        return _buffer[_pos++];
+    }
+    
+    /**
+     * Handle the character that terminates a value. Returns false if the
+     * character does not terminate a value.
+     * 
+     * @param c
+     * @return
+     * @throws java.io.IOException 
+     */
+    private boolean readEnd(int c) throws java.io.IOException {
+        
+        if (c == _delimiter) {
+            _afterDelimiter = true;
+        } else if ((c == '\n') || (c == -1)) {
+            _atRecordStart = true;
+            _endOfRecord = true;
+        } else if (c == '\r') {
+            if (this.peek() == '\n') {
+                _pos++;
+            }
+            _atRecordStart = true;
+            _endOfRecord = true;
+        } else {
+            return false;
+        }
+        return true;
+    }
+    
+    private void readQuoted() throws java.io.IOException {
+        
+        _write = _mark + 1;
+        while (true) {
+            int c = this.read();
+            if (c == -1) {
+                throw new java.io.IOException(
+                        "EOF reached before encapsulated token finished"
+                );
+            } else if (c == _quote) {
+                if (this.peek() == _quote) {
+                    _pos++;
+                } else {
+                    break;
+                }
+            }
+            _buffer[_write++] = (char)c;
+        }
+        _valueLength = _write - (_mark + 1);
+        while (true) {
+            int c = this.read();
+            if (this.readEnd(c)) {
+                return;
+            } else if (!Character.isWhitespace(c)) {
+                throw new java.io.IOException(
+                        "Invalid char between encapsulated token and delimiter"
+                );
+            }
+        }
+    }
+    
+    private void readSimple(int c) throws java.io.IOException {
+        
+        while (true) {
+            if ((c == _delimiter) || (c == '\n') || (c == '\r') || (c == -1)) {
+                // The position is after the terminating character unless
+                // the end of the input was reached.
+                _valueLength = ((c == -1) ? _pos : _pos - 1) - _mark;
+                this.readEnd(c);
+                return;
+            }
+            c = this.read();
+        }
+    }
+}
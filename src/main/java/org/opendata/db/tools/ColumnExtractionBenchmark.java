@@ -0,0 +1,242 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.opendata.core.io.FileSystem;
+import org.opendata.core.value.DefaultValueTransformer;
+import org.opendata.core.value.ValueTransformer;
+
+/**
+ * Measure the throughput of the column extraction hot path for a single
+ * CSV or TSV file. Compares parsing with the CSV parser and string-based
+ * value transformation against the character buffer tokenizer with in-place
+ * value transformation. The file content is read into memory first. Each
+ * thread then parses the full content and counts the terms for all columns.
+ * Results are reported in MB (of decoded characters) per second and core.
+ *
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class ColumnExtractionBenchmark {
+
+    private static final long NO_SPILL = Long.MAX_VALUE;
+
+    /**
+     * Parse the content with the CSV parser and transform values as strings.
+     */
+    private class ParserTask implements Callable<Long> {
+
+        private final String _content;
+        private final CSVFormat _format;
+
+        public ParserTask(String content, CSVFormat format) {
+
+            _content = content;
+            _format = format;
+        }
+
+        @Override
+        public Long call() throws Exception {
+
+            ValueTransformer transformer = new DefaultValueTransformer();
+            List<TermCountAggregator> columns = new ArrayList<>();
+            long count = 0;
+            try (CSVParser in = CSVParser.parse(_content, _format)) {
+                for (CSVRecord row : in) {
+                    for (int iColumn = 0; iColumn < row.size(); iColumn++) {
+                        String value = row.get(iColumn);
+                        if (!value.equals("")) {
+                            String term = transformer.transform(value);
+                            if (!term.equals("")) {
+                                column(columns, iColumn).add(term);
+                                count++;
+                            }
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Parse the content with the tokenizer and transform values in place.
+     */
+    private class TokenizerTask implements Callable<Long> {
+
+        private final String _content;
+        private final CSVFormat _format;
+
+        public TokenizerTask(String content, CSVFormat format) {
+
+            _content = content;
+            _format = format;
+        }
+
+        @Override
+        public Long call() throws Exception {
+
+            ValueTransformer transformer = new DefaultValueTransformer();
+            List<TermCountAggregator> columns = new ArrayList<>();
+            long count = 0;
+            try (CSVTokenizer in = new CSVTokenizer(
+                    new StringReader(_content),
+                    _format.getDelimiter(),
+                    _format.getQuoteCharacter()
+            )) {
+                while (in.next()) {
+                    if (in.length() > 0) {
+                        char[] buf = in.buffer();
+                        int length = transformer.transform(buf, in.offset(), in.length());
+                        if (length < 0) {
+                            String term = transformer.transform(
+                                    new String(buf, in.offset(), in.length())
+                            );
+                            if (!term.equals("")) {
+                                column(columns, in.column()).add(term);
+                                count++;
+                            }
+                        } else if (length > 0) {
+                            column(columns, in.column()).add(buf, in.offset(), length);
+                            count++;
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+    }
+
+    private static TermCountAggregator column(
+            List<TermCountAggregator> columns,
+            int index
+    ) {
+
+        while (columns.size() <= index) {
+            columns.add(new TermCountAggregator(null, NO_SPILL));
+        }
+        return columns.get(index);
+    }
+
+    /**
+     * Run all tasks in parallel and return the elapsed time in milliseconds.
+     *
+     * @param tasks
+     * @return
+     * @throws java.lang.Exception
+     */
+    private long execute(List<Callable<Long>> tasks) throws java.lang.Exception {
+
+        ExecutorService es = Executors.newFixedThreadPool(tasks.size());
+        try {
+            long start = System.currentTimeMillis();
+            List<Future<Long>> results = es.invokeAll(tasks);
+            for (Future<Long> result : results) {
+                result.get();
+            }
+            return Math.max(System.currentTimeMillis() - start, 1);
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    public void run(File file, int threads, int rounds) throws java.lang.Exception {
+
+        StringBuilder buf = new StringBuilder();
+        try (BufferedReader in = FileSystem.openReader(file)) {
+            char[] block = new char[65536];
+            int n;
+            while ((n = in.read(block)) != -1) {
+                buf.append(block, 0, n);
+            }
+        }
+        String content = buf.toString();
+        CSVFormat format;
+        if ((file.getName().endsWith(".csv")) || file.getName().endsWith(".csv.gz")) {
+            format = CSVFormat.DEFAULT;
+        } else {
+            format = CSVFormat.TDF;
+        }
+        format = format.withIgnoreSurroundingSpaces(false);
+
+        double size = (double)content.length() / (1024.0 * 1024.0);
+        System.out.println(
+                String.format("%s (%.2f MB) WITH %d THREAD(S)", file.getName(), size, threads)
+        );
+
+        for (int iRound = 0; iRound < rounds; iRound++) {
+            List<Callable<Long>> parserTasks = new ArrayList<>();
+            List<Callable<Long>> tokenizerTasks = new ArrayList<>();
+            for (int iThread = 0; iThread < threads; iThread++) {
+                parserTasks.add(new ParserTask(content, format));
+                tokenizerTasks.add(new TokenizerTask(content, format));
+            }
+            long parserTime = this.execute(parserTasks);
+            long tokenizerTime = this.execute(tokenizerTasks);
+            System.out.println(
+                    String.format(
+                            "ROUND %d: PARSER %.2f MB/s PER CORE, TOKENIZER %.2f MB/s PER CORE",
+                            (iRound + 1),
+                            size * 1000.0 / parserTime,
+                            size * 1000.0 / tokenizerTime
+                    )
+            );
+        }
+    }
+
+    private static final String COMMAND =
+            "Usage:\n" +
+            "  <input-file>\n" +
+            "  <threads>\n" +
+            "  <rounds>";
+
+    private static final Logger LOGGER = Logger
+            .getLogger(ColumnExtractionBenchmark.class.getName());
+
+    public static void main(String[] args) {
+
+        if (args.length != 3) {
+            System.out.println(COMMAND);
+            System.exit(-1);
+        }
+
+        File inputFile = new File(args[0]);
+        int threads = Integer.parseInt(args[1]);
+        int rounds = Integer.parseInt(args[2]);
+
+        try {
+            new ColumnExtractionBenchmark().run(inputFile, threads, rounds);
+        } catch (java.lang.Exception ex) {
+            LOGGER.log(Level.SEVERE, "RUN", ex);
+            System.exit(-1);
+        }
+    }
+}
@@ -25,10 +25,19 @@ import org.opendata.core.io.FileSystem;
 import org.opendata.core.util.Counter;
 import org.opendata.core.util.SimpleCounter;
 import org.opendata.core.value.DefaultValueTransformer;
+import org.opendata.db.column.PackedColumnFile;
+import org.opendata.db.column.TermIdColumnFile;
+import org.opendata.db.term.TermDictionary;
 
 /**
  * Factory for column files. Writes column information to given output file.
  * 
+ * If the packed flag is set, all columns of a dataset are written to a single
+ * column container file instead of one file per column.
+ * 
+ * If a term dictionary is given, each column is written as a file of term
+ * identifiers. Columns are never packed in this case.
+ * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class ColumnFactory {
@@ -36,27 +45,85 @@ public class ColumnFactory {
     private static final Logger LOGGER = Logger
             .getLogger(ColumnFactory.class.getName());
     
-    private final int _cacheSize;
+    private final long _bufferSize;
     private final Counter _counter;
+    private final TermDictionary _dictionary;
     private final PrintWriter _out;
     private final File _outputDir;
+    private final boolean _packed;
+    private final Counter _segmentCounter;
     
-    public ColumnFactory(File outputDir, int cacheSize, PrintWriter out) {
+    public ColumnFactory(
+            File outputDir,
+            long bufferSize,
+            boolean packed,
+            TermDictionary dictionary,
+            PrintWriter out
+    ) {
         
         _outputDir = outputDir;
-        _cacheSize = cacheSize;
+        _bufferSize = bufferSize;
+        _packed = packed && (dictionary == null);
+        _dictionary = dictionary;
         _out = out;
 
         _counter = new SimpleCounter();
+        _segmentCounter = new SimpleCounter();
 
         // Create output directory if it does not exist
         FileSystem.createFolder(outputDir);
     }
     
-    public synchronized ColumnHandler getHandler(String dataset, String columnName) {
+    public ColumnFactory(File outputDir, long bufferSize, PrintWriter out) {
+        
+        this(outputDir, bufferSize, false, null, out);
+    }
+    
+    public ColumnHandler getHandler(String dataset, String columnName) {
+        
+        return this.getHandler(null, dataset, columnName);
+    }
+    
+    /**
+     * Get handler for a column in the given dataset. If the container file
+     * is not null the column is written to the container file.
+     * 
+     * @param segment
+     * @param dataset
+     * @param columnName
+     * @return 
+     */
+    public synchronized ColumnHandler getHandler(
+            PackedColumnWriter segment,
+            String dataset,
+            String columnName
+    ) {
 
         int columnId = _counter.inc();
         String name = columnName.replaceAll("[^\\dA-Za-z]", "_");
+        if (segment != null) {
+            _out.println(columnId + "\t" + name + "\t" + dataset);
+            return new ColumnHandler(
+                    segment,
+                    columnId,
+                    name,
+                    FileSystem.joinPath(_outputDir, columnId + "." + name),
+                    new DefaultValueTransformer(),
+                    _bufferSize
+            );
+        }
+        if (_dictionary != null) {
+            _out.println(columnId + "\t" + name + "\t" + dataset);
+            return new ColumnHandler(
+                    FileSystem.joinPath(
+                            _outputDir,
+                            columnId + "." + name + TermIdColumnFile.SUFFIX
+                    ),
+                    _dictionary,
+                    new DefaultValueTransformer(),
+                    _bufferSize
+            );
+        }
         File outputFile = FileSystem.joinPath(
                 _outputDir,
                 columnId + "." + name + ".txt.gz"
@@ -65,7 +132,7 @@ public class ColumnFactory {
             ColumnHandler handler = new ColumnHandler(
                     outputFile,
                     new DefaultValueTransformer(),
-                    _cacheSize
+                    _bufferSize
             );
             _out.println(columnId + "\t" + name + "\t" + dataset);
             return handler;
@@ -74,4 +141,33 @@ public class ColumnFactory {
             return new ColumnHandler();
         }
     }
+    
+    /**
+     * Get the container file writer for the columns of the given dataset.
+     * Returns null if columns are written to individual files.
+     * 
+     * @param dataset
+     * @return 
+     */
+    public PackedColumnWriter getSegment(String dataset) {
+        
+        if (!_packed) {
+            return null;
+        }
+        
+        int segmentId;
+        synchronized (this) {
+            segmentId = _segmentCounter.inc();
+        }
+        String name = dataset.replaceAll("[^\\dA-Za-z]", "_");
+        File file = FileSystem.joinPath(
+                _outputDir,
+                segmentId + "." + name + PackedColumnFile.SUFFIX
+        );
+        try {
+            return new PackedColumnWriter(file);
+        } catch (java.io.IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
 }
@@ -17,15 +17,13 @@
  */
 package org.opendata.db.tools;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Map;
 import org.opendata.core.io.FileSystem;
-import org.opendata.core.util.Counter;
-import org.opendata.core.util.SimpleCounter;
 import org.opendata.core.value.ValueTransformer;
+import org.opendata.db.column.TermIdColumnFile;
+import org.opendata.db.term.TermDictionary;
 
 /**
  * The column handler is responsible for creating a unique set of column values
@@ -33,42 +31,113 @@ import org.opendata.core.value.ValueTransformer;
  * term. Terms are modified using the given value transformer.
  * 
  * The resulting file is tab-delimited with two columns: the term and the term
- * frequency.
+ * frequency. Terms are sorted in ascending order.
  * 
- * This implementation maintains a cache of terms in memory. If the cache size
- * is exceeded terms are evicted form the cache to the output file. At then end
- * of the stream any term that has been written to file will be merged with the
- * terms that are left in the cache and the result is written to the output
- * file.
+ * Term frequencies are maintained by an external aggregator. If the memory
+ * that is used for the terms of the column exceeds the given buffer size,
+ * the terms are written as sorted runs to temporary files next to the output
+ * file. At the end of the stream all runs are merged into the output file.
+ * 
+ * Instead of a separate output file the column can also be written to a
+ * column container file that contains all columns of a dataset. The column
+ * is appended to the container file when the handler is closed.
+ * 
+ * If a term dictionary is given, the column is written as a binary file of
+ * term identifiers and their counts instead. Terms are mapped to their
+ * identifier when they are added. The frequencies of term identifiers are
+ * maintained by an external aggregator for identifiers. The merged counts
+ * are streamed to the column file when the handler is closed.
  * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class ColumnHandler {
     
-    private final LinkedList<String> _cache;
-    private final int _cacheSize;
+    private TermCountAggregator _aggregator;
+    private final int _columnId;
+    private final TermDictionary _dictionary;
     private final File _file;
-    private boolean _hasOutput;
+    private TermIdCountAggregator _idAggregator;
+    private final String _name;
     private PrintWriter _out;
-    private final HashMap<String, Counter> _terms;
+    private final PackedColumnWriter _segment;
     private final ValueTransformer _transformer;
 
     public ColumnHandler(
             File file,
             ValueTransformer transformer,
-            int cacheSize
+            long bufferSize
     ) throws java.io.IOException {
 
-        _file = file;
-        _terms = new HashMap<>();
         _transformer = transformer;
-        _cacheSize = cacheSize;
         
         _out = FileSystem.openPrintWriter(file);
-        _cache = new LinkedList<>();
-        // Maintain information whether elements were evicted from the cache
-        // and written to file.
-        _hasOutput = false;
+        _aggregator = new TermCountAggregator(file, bufferSize);
+        _idAggregator = null;
+        _segment = null;
+        _columnId = -1;
+        _name = null;
+        _dictionary = null;
+        _file = null;
+    }
+
+    /**
+     * Create a handler for a column that is written as a file of term
+     * identifiers. Identifiers are taken from the given term dictionary.
+     * 
+     * @param file
+     * @param dictionary
+     * @param transformer
+     * @param bufferSize 
+     */
+    public ColumnHandler(
+            File file,
+            TermDictionary dictionary,
+            ValueTransformer transformer,
+            long bufferSize
+    ) {
+
+        _file = file;
+        _dictionary = dictionary;
+        _transformer = transformer;
+        
+        _out = null;
+        _aggregator = null;
+        _idAggregator = new TermIdCountAggregator(file, bufferSize);
+        _segment = null;
+        _columnId = -1;
+        _name = null;
+    }
+
+    /**
+     * Create a handler for a column that is written to the given container
+     * file. Temporary files for sorted runs use the given prefix.
+     * 
+     * @param segment
+     * @param columnId
+     * @param name
+     * @param tmpPrefix
+     * @param transformer
+     * @param bufferSize 
+     */
+    public ColumnHandler(
+            PackedColumnWriter segment,
+            int columnId,
+            String name,
+            File tmpPrefix,
+            ValueTransformer transformer,
+            long bufferSize
+    ) {
+
+        _segment = segment;
+        _columnId = columnId;
+        _name = name;
+        _transformer = transformer;
+        
+        _out = null;
+        _aggregator = new TermCountAggregator(tmpPrefix, bufferSize);
+        _idAggregator = null;
+        _dictionary = null;
+        _file = null;
     }
 
     /**
@@ -77,75 +146,140 @@ public class ColumnHandler {
      */
     public ColumnHandler() {
 
-        _file = null;
+        _aggregator = null;
+        _idAggregator = null;
         _out = null;
-        _terms = null;
+        _segment = null;
+        _columnId = -1;
+        _name = null;
         _transformer = null;
-        _cacheSize = -1;
-        
-        _cache = null;
-        _hasOutput = false;
+        _dictionary = null;
+        _file = null;
     }
     
     public void add(String value) {
 
-        if (_out != null) {
+        if (_aggregator != null) {
             String term = _transformer.transform(value);
             if (!term.equals("")) {
-                if (!_terms.containsKey(term)) {
-                    _terms.put(term, new SimpleCounter(1));
-                    _cache.offer(term);
-                    if (_cache.size() > _cacheSize) {
-                        // Evict a term from the cache if the maximum cache
-                        // size is reached. The term and its current count is
-                        // written to the output file.
-                        String evict = _cache.poll();
-                        this.write(evict, _terms.remove(evict));
-                        _hasOutput = true;
-                    }
-                } else {
-                    _terms.get(term).inc();
-                }
+                _aggregator.add(term);
+            }
+        } else if (_idAggregator != null) {
+            String term = _transformer.transform(value);
+            if (!term.equals("")) {
+                _idAggregator.add(_dictionary.id(term), 1);
+            }
+        }
+    }
+
+    /**
+     * Add the value in the given character array slice. The value is
+     * transformed in place if possible. The array content may be modified.
+     * 
+     * @param value
+     * @param offset
+     * @param length 
+     */
+    public void add(char[] value, int offset, int length) {
+        
+        if (_aggregator != null) {
+            int termLength = _transformer.transform(value, offset, length);
+            if (termLength < 0) {
+                this.add(new String(value, offset, length));
+            } else if (termLength > 0) {
+                _aggregator.add(value, offset, termLength);
+            }
+        } else if (_idAggregator != null) {
+            int termLength = _transformer.transform(value, offset, length);
+            if (termLength < 0) {
+                this.add(new String(value, offset, length));
+            } else if (termLength > 0) {
+                int termId = _dictionary.id(new String(value, offset, termLength));
+                _idAggregator.add(termId, 1);
+            }
+        }
+    }
+
+    /**
+     * Add counts for terms that have already been transformed. The method is
+     * synchronized to allow multiple threads to add counts for different
+     * parts of the same input file.
+     * 
+     * @param terms 
+     */
+    public synchronized void addTerms(Map<String, int[]> terms) {
+        
+        if (_aggregator != null) {
+            for (Map.Entry<String, int[]> entry : terms.entrySet()) {
+                _aggregator.add(entry.getKey(), entry.getValue()[0]);
+            }
+        } else if (_idAggregator != null) {
+            for (Map.Entry<String, int[]> entry : terms.entrySet()) {
+                int termId = _dictionary.id(entry.getKey());
+                _idAggregator.add(termId, entry.getValue()[0]);
             }
         }
     }
 
     public void close() {
 
-        if (_out != null) {
-            // Read evicted terms (if any).
-            if (_hasOutput) {
-                _out.close();
-                try (BufferedReader in = FileSystem.openReader(_file)) {
-                    String line;
-                    while ((line = in.readLine()) != null) {
-                        String[] tokens = line.split("\t");
-                        String term = tokens[0];
-                        int count = Integer.parseInt(tokens[1]);
-                        if (!_terms.containsKey(term)) {
-                            _terms.put(term, new SimpleCounter(count));
-                        } else {
-                            _terms.get(term).inc(count);
-                        }
-                    }
-                } catch (java.io.IOException ex) {
-                    throw new RuntimeException(ex);
-                }
-                try {
-                    _out = FileSystem.openPrintWriter(_file);
-                } catch (java.io.IOException ex) {
-                    throw new RuntimeException(ex);
+        if (_aggregator != null) {
+            try {
+                if (_segment != null) {
+                    _segment.write(_columnId, _name, _aggregator);
+                } else {
+                    _aggregator.close(_out);
+                    _out.close();
+                    _out = null;
                 }
+            } catch (java.io.IOException ex) {
+                throw new RuntimeException(ex);
             }
-            for (String term : _terms.keySet()) {
-                this.write(term, _terms.get(term));
+            _aggregator = null;
+        } else if (_idAggregator != null) {
+            try (TermIdColumnFile.Writer out = new TermIdColumnFile.Writer(_file)) {
+                _idAggregator.close(out::add);
+            } catch (java.io.IOException ex) {
+                throw new RuntimeException(ex);
             }
-            _out.close();
+            _idAggregator = null;
         }
     }
     
-    private void write(String term, Counter count) {
+    /**
+     * Transform a column value into a term. Returns an empty string for the
+     * dummy handler.
+     * 
+     * @param value
+     * @return 
+     */
+    public String transform(String value) {
         
-        _out.println(String.format("%s\t%d", term, count.value()));
+        if (_transformer != null) {
+            return _transformer.transform(value);
+        }
+        return "";
+    }
+    
+    /**
+     * Transform the value in the given character array slice into a term.
+     * The array content may be modified. Returns an empty string for the
+     * dummy handler.
+     * 
+     * @param value
+     * @param offset
+     * @param length
+     * @return 
+     */
+    public String transform(char[] value, int offset, int length) {
+        
+        if (_transformer != null) {
+            int termLength = _transformer.transform(value, offset, length);
+            if (termLength < 0) {
+                return _transformer.transform(new String(value, offset, length));
+            }
+            return new String(value, offset, termLength);
+        }
+        return "";
     }
 }
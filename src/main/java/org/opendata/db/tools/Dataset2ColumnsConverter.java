@@ -20,16 +20,21 @@ package org.opendata.db.tools;
 import java.io.File;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 import org.opendata.core.io.FileSystem;
+import org.opendata.db.term.TermDictionary;
 
 /**
  * Convert a set of Socrata dataset files in column files that contain the set
@@ -41,11 +46,87 @@ import org.opendata.core.io.FileSystem;
  * and the dataset identifier.
  * 
  * Uses multiple threads, each converting different sets of input files.
+ * Files that are larger than a given size are converted one at a time
+ * before all other files. The content of a large file is split into chunks
+ * of complete records that are parsed by multiple threads in parallel. The
+ * file is read and split by a single thread (which also decompresses gzipped
+ * files).
+ * 
+ * Columns are either written to individual files or, if the packed flag is
+ * set, to one column container file per dataset. If a term dictionary is
+ * given, columns are written as files of term identifiers that reference the
+ * shared dictionary.
+ * 
+ * Values are read with a tokenizer that returns slices of a character buffer.
+ * Values are transformed in place and strings are only created for terms
+ * that are new to a column.
  * 
  * @author Heiko Mueller <heiko.mueller@nyu.edu>
  */
 public class Dataset2ColumnsConverter {
     
+    /**
+     * Parse a chunk of records from a large file. Term counts for the chunk
+     * are added to the column handlers at the end.
+     */
+    private class ChunkParser implements Runnable {
+
+        private final String _chunk;
+        private final List<ColumnHandler> _columns;
+        private final CSVFormat _format;
+        private final Semaphore _permits;
+        
+        public ChunkParser(
+                String chunk,
+                CSVFormat format,
+                List<ColumnHandler> columns,
+                Semaphore permits
+        ) {
+            _chunk = chunk;
+            _format = format;
+            _columns = columns;
+            _permits = permits;
+        }
+        
+        @Override
+        public void run() {
+
+            try {
+                List<HashMap<String, int[]>> counts = new ArrayList<>();
+                for (ColumnHandler column : _columns) {
+                    counts.add(new HashMap<>());
+                }
+                try (CSVTokenizer in = tokenizer(new StringReader(_chunk), _format)) {
+                    while (in.next()) {
+                        if (in.length() > 0) {
+                            int iColumn = in.column();
+                            String term = _columns.get(iColumn).transform(
+                                    in.buffer(),
+                                    in.offset(),
+                                    in.length()
+                            );
+                            if (!term.equals("")) {
+                                int[] count = counts.get(iColumn).get(term);
+                                if (count == null) {
+                                    counts.get(iColumn).put(term, new int[]{1});
+                                } else {
+                                    count[0]++;
+                                }
+                            }
+                        }
+                    }
+                } catch (java.io.IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+                for (int iColumn = 0; iColumn < _columns.size(); iColumn++) {
+                    _columns.get(iColumn).addTerms(counts.get(iColumn));
+                }
+            } finally {
+                _permits.release();
+            }
+        }
+    }
+    
     private class DatasetConverter implements Runnable {
 
         private final ColumnFactory _columnFactory;
@@ -62,21 +143,12 @@ public class Dataset2ColumnsConverter {
             _verbose = verbose;
         }
         
-        private CSVParser tsvParser(File file) throws java.io.IOException {
+        private CSVTokenizer tsvParser(File file) throws java.io.IOException {
 
             System.out.println("GET PARSER FOR FILE " + file.getAbsolutePath());
-            CSVFormat format = null;
-            if ((file.getName().endsWith(".csv")) || file.getName().endsWith(".csv.gz")) {
-                format = CSVFormat.DEFAULT;
-            } else {
-                format = CSVFormat.TDF;
-            }
-            return new CSVParser(
+            return tokenizer(
                     new InputStreamReader(FileSystem.openFile(file)),
-                    format
-                            .withFirstRecordAsHeader()
-                            .withIgnoreHeaderCase()
-                            .withIgnoreSurroundingSpaces(false)
+                    recordFormat(file)
             );
         }
 
@@ -85,12 +157,8 @@ public class Dataset2ColumnsConverter {
     
             File file;
             while ((file = _files.poll()) != null) {
-                String dataset;
-                if ((file.getName().endsWith(".csv")) || (file.getName().endsWith(".tsv"))) {
-                    dataset = file.getName().substring(0, file.getName().length() - 4);
-                } else if ((file.getName().endsWith(".csv.gz")) || (file.getName().endsWith(".tsv.gz"))) {
-                    dataset = file.getName().substring(0, file.getName().length() - 7);
-                } else {
+                String dataset = datasetName(file);
+                if (dataset == null) {
                     if (_verbose) {
                         System.out.println(String.format("Ignoring file %s", file.getName()));
                     }
@@ -99,22 +167,24 @@ public class Dataset2ColumnsConverter {
                 if (_verbose) {
                     System.out.println(String.format("Processing file %s", file.getName()));
                 }
-                try (CSVParser in = this.tsvParser(file)) {
+                PackedColumnWriter segment = _columnFactory.getSegment(dataset);
+                try (CSVTokenizer in = this.tsvParser(file)) {
                     List<ColumnHandler> columns = new ArrayList<>();
-                    for (String colName : in.getHeaderNames()) {
-                        columns.add(_columnFactory.getHandler(dataset, colName));
+                    for (String colName : headerNames(in, file)) {
+                        columns.add(
+                                _columnFactory.getHandler(segment, dataset, colName)
+                        );
                     }
-                    for (CSVRecord row : in) {
-                        for (int iColumn = 0; iColumn < row.size(); iColumn++) {
-                            String term = row.get(iColumn);
-                            if (!term.equals("")) {
-                                columns.get(iColumn).add(term);
-                            }
+                    while (in.next()) {
+                        if (in.length() > 0) {
+                            columns.get(in.column()).add(
+                                    in.buffer(),
+                                    in.offset(),
+                                    in.length()
+                            );
                         }
                     }
-                    for (ColumnHandler column : columns) {
-                        column.close();
-                    }
+                    closeColumns(columns, segment);
                 } catch (java.io.IOException ex) {
                     throw new RuntimeException(ex);
                 }
@@ -126,19 +196,211 @@ public class Dataset2ColumnsConverter {
         }        
     }
     
+    // Number of characters in chunks of large files.
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    // Minimum size (in bytes) of files that are split into chunks.
+    public static final long LARGE_FILE_SIZE = 64L * 1024L * 1024L;
+    
     private final ColumnFactory _columnFactory;
+    private final long _largeFileSize;
     private final boolean _verbose;
     
     public Dataset2ColumnsConverter(
             File outputDir,
             PrintWriter out,
-            int cacheSize,
+            long bufferSize,
+            long largeFileSize,
+            boolean packed,
+            TermDictionary dictionary,
             boolean verbose
     ) {
-        _columnFactory = new ColumnFactory(outputDir, cacheSize, out);
+        _columnFactory = new ColumnFactory(
+                outputDir,
+                bufferSize,
+                packed,
+                dictionary,
+                out
+        );
+        _largeFileSize = largeFileSize;
         _verbose = verbose;
     }
     
+    public Dataset2ColumnsConverter(
+            File outputDir,
+            PrintWriter out,
+            long bufferSize,
+            boolean verbose
+    ) {
+        this(outputDir, out, bufferSize, LARGE_FILE_SIZE, false, null, verbose);
+    }
+    
+    /**
+     * Close all column handlers for a dataset. Closes the container file for
+     * the dataset if it is not null.
+     * 
+     * @param columns
+     * @param segment
+     * @throws java.io.IOException 
+     */
+    private static void closeColumns(
+            List<ColumnHandler> columns,
+            PackedColumnWriter segment
+    ) throws java.io.IOException {
+        
+        for (ColumnHandler column : columns) {
+            column.close();
+        }
+        if (segment != null) {
+            segment.close();
+        }
+    }
+    
+    /**
+     * Convert a single file by parsing chunks of records in parallel.
+     * 
+     * @param file
+     * @param dataset
+     * @param threads
+     * @throws java.lang.InterruptedException
+     * @throws java.io.IOException 
+     */
+    private void convertChunks(
+            File file,
+            String dataset,
+            int threads
+    ) throws java.lang.InterruptedException, java.io.IOException {
+        
+        CSVFormat format = recordFormat(file);
+        
+        PackedColumnWriter segment = _columnFactory.getSegment(dataset);
+        List<ColumnHandler> columns = new ArrayList<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        // Limit the number of chunks that are held in memory.
+        Semaphore permits = new Semaphore(threads * 2);
+        
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        try (RecordChunkReader in = new RecordChunkReader(
+                new InputStreamReader(FileSystem.openFile(file)),
+                format.getDelimiter(),
+                format.getQuoteCharacter()
+        )) {
+            // The first chunk contains only the header. Empty lines before
+            // the header are ignored (as by the CSV parser).
+            String header = in.next(1);
+            while ((header != null) && (header.trim().isEmpty())) {
+                header = in.next(1);
+            }
+            if (header != null) {
+                CSVTokenizer parser = tokenizer(new StringReader(header), format);
+                for (String colName : headerNames(parser, file)) {
+                    columns.add(
+                            _columnFactory.getHandler(segment, dataset, colName)
+                    );
+                }
+            }
+            String chunk;
+            while ((chunk = in.next(CHUNK_SIZE)) != null) {
+                permits.acquire();
+                tasks.add(es.submit(new ChunkParser(chunk, format, columns, permits)));
+            }
+        } finally {
+            es.shutdown();
+            es.awaitTermination(threads, TimeUnit.DAYS);
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (java.util.concurrent.ExecutionException ex) {
+                throw new RuntimeException(ex.getCause());
+            }
+        }
+        closeColumns(columns, segment);
+    }
+    
+    /**
+     * Get the dataset name for a given input file. Returns null if the file
+     * is not a CSV or TSV file.
+     * 
+     * @param file
+     * @return 
+     */
+    private static String datasetName(File file) {
+        
+        String name = file.getName();
+        if ((name.endsWith(".csv")) || (name.endsWith(".tsv"))) {
+            return name.substring(0, name.length() - 4);
+        } else if ((name.endsWith(".csv.gz")) || (name.endsWith(".tsv.gz"))) {
+            return name.substring(0, name.length() - 7);
+        }
+        return null;
+    }
+    
+    /**
+     * Read the first record from the given tokenizer and return the list of
+     * column names. Column names are validated by the CSV parser in the
+     * same way as for a header that is read from file.
+     * 
+     * @param in
+     * @param file
+     * @return
+     * @throws java.io.IOException 
+     */
+    private static List<String> headerNames(
+            CSVTokenizer in,
+            File file
+    ) throws java.io.IOException {
+        
+        List<String> header = new ArrayList<>();
+        while (in.next()) {
+            header.add(new String(in.buffer(), in.offset(), in.length()));
+            if (in.isEndOfRecord()) {
+                break;
+            }
+        }
+        if (header.isEmpty()) {
+            return header;
+        }
+        CSVFormat format = recordFormat(file)
+                .withHeader(header.toArray(new String[header.size()]))
+                .withIgnoreHeaderCase();
+        try (CSVParser parser = CSVParser.parse("", format)) {
+            return parser.getHeaderNames();
+        }
+    }
+    
+    /**
+     * Create tokenizer for the given input and format.
+     * 
+     * @param reader
+     * @param format
+     * @return 
+     */
+    private static CSVTokenizer tokenizer(Reader reader, CSVFormat format) {
+        
+        return new CSVTokenizer(
+                reader,
+                format.getDelimiter(),
+                format.getQuoteCharacter()
+        );
+    }
+    
+    /**
+     * Format for parsing data records.
+     * 
+     * @param file
+     * @return 
+     */
+    private static CSVFormat recordFormat(File file) {
+        
+        CSVFormat format;
+        if ((file.getName().endsWith(".csv")) || file.getName().endsWith(".csv.gz")) {
+            format = CSVFormat.DEFAULT;
+        } else {
+            format = CSVFormat.TDF;
+        }
+        return format.withIgnoreSurroundingSpaces(false);
+    }
+    
     /**
      * Convert a list of dataset files into a set of column files.
      * 
@@ -153,7 +415,26 @@ public class Dataset2ColumnsConverter {
             System.out.println(String.format("CONVERT %d DATASETS", files.size()));
         }
 
-        ConcurrentLinkedQueue<File> queue = new ConcurrentLinkedQueue<>(files);
+        // Convert large files one at a time using all threads for each file.
+        List<File> smallFiles = new ArrayList<>();
+        for (File file : files) {
+            String dataset = datasetName(file);
+            if ((threads > 1) && (dataset != null) && (file.length() >= _largeFileSize)) {
+                if (_verbose) {
+                    System.out.println(
+                            String.format(
+                                    "Processing file %s in chunks",
+                                    file.getName()
+                            )
+                    );
+                }
+                this.convertChunks(file, dataset, threads);
+            } else {
+                smallFiles.add(file);
+            }
+        }
+        
+        ConcurrentLinkedQueue<File> queue = new ConcurrentLinkedQueue<>(smallFiles);
         
         ExecutorService es = Executors.newCachedThreadPool();
         for (int iThread = 0; iThread < threads; iThread++) {
@@ -0,0 +1,163 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.opendata.core.io.FileSystem;
+import org.opendata.db.column.PackedColumnFile;
+
+/**
+ * Writer for column container files. Columns are appended to the file as
+ * they are completed. The column directory is written when the writer is
+ * closed. See PackedColumnFile for the file format.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class PackedColumnWriter implements Closeable {
+    
+    /**
+     * Output stream that counts the number of bytes that have been written.
+     * Closing the stream only flushes the underlying stream. This allows to
+     * close the compressed stream for each column.
+     */
+    private static class SegmentOutputStream extends FilterOutputStream {
+        
+        private long _position = 0;
+        
+        public SegmentOutputStream(OutputStream out) {
+            
+            super(out);
+        }
+        
+        @Override
+        public void close() throws java.io.IOException {
+            
+            this.flush();
+        }
+        
+        public long position() {
+            
+            return _position;
+        }
+        
+        @Override
+        public void write(int b) throws java.io.IOException {
+            
+            out.write(b);
+            _position++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws java.io.IOException {
+            
+            out.write(b, off, len);
+            _position += len;
+        }
+    }
+    
+    private final List<PackedColumnFile.Entry> _columns;
+    private final File _file;
+    private OutputStream _fileOut;
+    private SegmentOutputStream _out;
+    
+    public PackedColumnWriter(File file) throws java.io.IOException {
+        
+        _file = file;
+        
+        FileSystem.createParentFolder(file);
+        _fileOut = new BufferedOutputStream(new FileOutputStream(file));
+        _out = new SegmentOutputStream(_fileOut);
+        _columns = new ArrayList<>();
+    }
+    
+    /**
+     * Write the column directory and close the file.
+     * 
+     * @throws java.io.IOException 
+     */
+    @Override
+    public synchronized void close() throws java.io.IOException {
+        
+        if (_out == null) {
+            return;
+        }
+        
+        long directory = _out.position();
+        try (DataOutputStream out = new DataOutputStream(_out)) {
+            out.writeInt(_columns.size());
+            for (PackedColumnFile.Entry column : _columns) {
+                out.writeInt(column.columnId());
+                out.writeUTF(column.name());
+                out.writeLong(column.offset());
+                out.writeLong(column.length());
+            }
+            out.writeLong(directory);
+            out.writeInt(PackedColumnFile.MAGIC);
+        }
+        _fileOut.close();
+        _fileOut = null;
+        _out = null;
+    }
+    
+    public File file() {
+        
+        return _file;
+    }
+    
+    /**
+     * Append the terms and counts of a completed column to the file.
+     * 
+     * @param columnId
+     * @param name
+     * @param terms
+     * @throws java.io.IOException 
+     */
+    public synchronized void write(
+            int columnId,
+            String name,
+            TermCountAggregator terms
+    ) throws java.io.IOException {
+        
+        long offset = _out.position();
+        try (PrintWriter out = new PrintWriter(
+                new OutputStreamWriter(new GZIPOutputStream(_out))
+        )) {
+            terms.close(out);
+        }
+        _columns.add(
+                new PackedColumnFile.Entry(
+                        _file,
+                        columnId,
+                        name,
+                        offset,
+                        _out.position() - offset
+                )
+        );
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.tools;
+
+import java.io.Closeable;
+import java.io.Reader;
+
+/**
+ * Split a stream of CSV or TSV text into chunks that end at record
+ * boundaries. Each chunk contains one or more complete records and can be
+ * parsed independently of all other chunks.
+ * 
+ * Record boundaries are detected by a scan that follows the quoting rules
+ * of the CSV parser: a quote character only starts a quoted value at the
+ * beginning of a field, two quote characters within a quoted value are an
+ * escaped quote, and line breaks within quoted values do not end a record.
+ * Chunks are only split after a new line character.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class RecordChunkReader implements Closeable {
+    
+    private static final int FIELD_START = 0;
+    private static final int QUOTED = 1;
+    private static final int QUOTE_SEEN = 2;
+    private static final int UNQUOTED = 3;
+    
+    private static final int READ_SIZE = 65536;
+    
+    private int _boundary = 0;
+    private char[] _buffer;
+    private final char _delimiter;
+    private boolean _eof = false;
+    private int _length = 0;
+    private final Character _quote;
+    private final Reader _reader;
+    private int _scanned = 0;
+    private int _state = FIELD_START;
+    
+    /**
+     * Initialize the input reader, the field delimiter, and the quote
+     * character. The quote character may be null.
+     * 
+     * @param reader
+     * @param delimiter
+     * @param quote 
+     */
+    public RecordChunkReader(Reader reader, char delimiter, Character quote) {
+        
+        _reader = reader;
+        _delimiter = delimiter;
+        _quote = quote;
+        
+        _buffer = new char[READ_SIZE * 2];
+    }
+    
+    @Override
+    public void close() throws java.io.IOException {
+        
+        _reader.close();
+    }
+    
+    private String emit() {
+        
+        String chunk = new String(_buffer, 0, _boundary);
+        System.arraycopy(_buffer, _boundary, _buffer, 0, _length - _boundary);
+        _length -= _boundary;
+        _scanned -= _boundary;
+        _boundary = 0;
+        return chunk;
+    }
+    
+    /**
+     * Get the next chunk. The chunk contains all complete records up to the
+     * first record boundary at or after the given number of characters. The
+     * last chunk in the stream contains all remaining characters. Returns
+     * null if the end of the stream has been reached.
+     * 
+     * @param minSize
+     * @return
+     * @throws java.io.IOException 
+     */
+    public String next(int minSize) throws java.io.IOException {
+        
+        final char quote = (_quote != null) ? _quote : '\n';
+        final boolean hasQuote = (_quote != null);
+        
+        while (true) {
+            while (_scanned < _length) {
+                final char c = _buffer[_scanned++];
+                switch (_state) {
+                    case QUOTED:
+                        if (c == quote) {
+                            _state = QUOTE_SEEN;
+                        }
+                        continue;
+                    case QUOTE_SEEN:
+                        if (c == quote) {
+                            _state = QUOTED;
+                            continue;
+                        }
+                        break;
+                    case FIELD_START:
+                        if ((hasQuote) && (c == quote)) {
+                            _state = QUOTED;
+                            continue;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                if (c == _delimiter) {
+                    _state = FIELD_START;
+                } else if (c == '\n') {
+                    _state = FIELD_START;
+                    _boundary = _scanned;
+                    if (_boundary >= minSize) {
+                        return this.emit();
+                    }
+                } else if (c == '\r') {
+                    _state = FIELD_START;
+                } else {
+                    _state = UNQUOTED;
+                }
+            }
+            if (_eof) {
+                if (_length > 0) {
+                    _boundary = _length;
+                    return this.emit();
+                }
+                return null;
+            }
+            if (_buffer.length - _length < READ_SIZE) {
+                char[] buffer = new char[Math.max(_buffer.length * 2, _length + READ_SIZE)];
+                System.arraycopy(_buffer, 0, buffer, 0, _length);
+                _buffer = buffer;
+            }
+            int n = _reader.read(_buffer, _length, _buffer.length - _length);
+            if (n < 0) {
+                _eof = true;
+            } else {
+                _length += n;
+            }
+        }
+    }
+}
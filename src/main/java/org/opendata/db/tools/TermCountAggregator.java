@@ -0,0 +1,485 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External aggregation of term frequencies. Terms are counted in an
+ * open-addressing hash table. If the estimated memory usage of the table
+ * exceeds the given buffer size, the terms in the table are sorted and
+ * written as a run to a temporary file and the table is cleared.
+ * 
+ * When the aggregator is closed, all runs and the sorted terms that remain
+ * in the table are merged (k-way merge). The counts for equal terms in
+ * different runs are added up. The result is written as a tab-delimited list
+ * of term and count, sorted by term. If there are more runs than can be
+ * merged at once, groups of runs are first merged into larger runs.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class TermCountAggregator {
+    
+    /**
+     * Consumer for the merged list of terms and their counts.
+     */
+    public interface Consumer {
+        
+        public void consume(String term, long count) throws java.io.IOException;
+    }
+    
+    /**
+     * Cursor over a sorted list of terms and their counts.
+     */
+    private abstract static class TermRun implements Comparable<TermRun> {
+        
+        protected long count;
+        protected String term;
+        
+        public abstract void close() throws java.io.IOException;
+        
+        @Override
+        public int compareTo(TermRun run) {
+            
+            return term.compareTo(run.term);
+        }
+        
+        public abstract boolean next() throws java.io.IOException;
+    }
+    
+    /**
+     * Sorted run that was written to a temporary file.
+     */
+    private static class FileRun extends TermRun {
+        
+        private final DataInputStream _in;
+        
+        public FileRun(File file) throws java.io.IOException {
+            
+            _in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), 65536)
+            );
+        }
+
+        @Override
+        public void close() throws java.io.IOException {
+            
+            _in.close();
+        }
+        
+        @Override
+        public boolean next() throws java.io.IOException {
+            
+            int length;
+            try {
+                length = _in.readInt();
+            } catch (EOFException ex) {
+                return false;
+            }
+            byte[] bytes = new byte[length];
+            _in.readFully(bytes);
+            term = new String(bytes, StandardCharsets.UTF_8);
+            count = _in.readLong();
+            return true;
+        }
+    }
+    
+    /**
+     * Sorted run for the terms that remain in memory.
+     */
+    private static class MemoryRun extends TermRun {
+        
+        private final long[] _counts;
+        private int _index = 0;
+        private final String[] _terms;
+        
+        public MemoryRun(String[] terms, long[] counts) {
+            
+            _terms = terms;
+            _counts = counts;
+        }
+
+        @Override
+        public void close() {
+            
+        }
+        
+        @Override
+        public boolean next() {
+            
+            if (_index < _terms.length) {
+                term = _terms[_index];
+                count = _counts[_index];
+                _index++;
+                return true;
+            }
+            return false;
+        }
+    }
+    
+    // Estimated number of bytes for a term in the table (excluding the
+    // characters of the term).
+    private static final int ENTRY_SIZE = 64;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Maximum number of run files that are merged at once.
+    private static final int MAX_MERGE = 64;
+    
+    private final long _bufferSize;
+    private int[] _counts;
+    private String[] _keys;
+    private int _mask;
+    private long _memory;
+    private final List<File> _runs;
+    private int _runSequence = 0;
+    private int _size;
+    private final File _tmpPrefix;
+    
+    /**
+     * Initialize the buffer size (in bytes) and the prefix for temporary run
+     * files.
+     * 
+     * @param tmpPrefix
+     * @param bufferSize 
+     */
+    public TermCountAggregator(File tmpPrefix, long bufferSize) {
+        
+        _tmpPrefix = tmpPrefix;
+        _bufferSize = bufferSize;
+        
+        _runs = new ArrayList<>();
+        this.clear(INITIAL_CAPACITY);
+    }
+    
+    /**
+     * Increment the count for the given term by one.
+     * 
+     * @param term 
+     */
+    public void add(String term) {
+        
+        this.add(term, 1);
+    }
+    
+    /**
+     * Increment the count for the given term by the given value.
+     * 
+     * @param term
+     * @param count 
+     */
+    public void add(String term, int count) {
+        
+        int index = term.hashCode() & _mask;
+        String key;
+        while ((key = _keys[index]) != null) {
+            if (key.equals(term)) {
+                _counts[index] += count;
+                return;
+            }
+            index = (index + 1) & _mask;
+        }
+        this.insert(index, term, count);
+    }
+    
+    /**
+     * Increment the count for the term in the given character array slice by
+     * one. A string for the term is only created if the term is not
+     * contained in the current buffer.
+     * 
+     * @param value
+     * @param offset
+     * @param length 
+     */
+    public void add(char[] value, int offset, int length) {
+        
+        // Use the same hash function as for strings.
+        int hash = 0;
+        final int end = offset + length;
+        for (int iChar = offset; iChar < end; iChar++) {
+            hash = 31 * hash + value[iChar];
+        }
+        int index = hash & _mask;
+        String key;
+        while ((key = _keys[index]) != null) {
+            if (key.length() == length) {
+                int iChar = 0;
+                while ((iChar < length) && (key.charAt(iChar) == value[offset + iChar])) {
+                    iChar++;
+                }
+                if (iChar == length) {
+                    _counts[index]++;
+                    return;
+                }
+            }
+            index = (index + 1) & _mask;
+        }
+        this.insert(index, new String(value, offset, length), 1);
+    }
+    
+    private void clear(int capacity) {
+        
+        _keys = new String[capacity];
+        _counts = new int[capacity];
+        _mask = capacity - 1;
+        _size = 0;
+        _memory = 12L * capacity;
+    }
+    
+    /**
+     * Merge all runs and pass the sorted list of terms and their counts to
+     * the given consumer. Temporary run files are deleted.
+     * 
+     * @param consumer
+     * @throws java.io.IOException 
+     */
+    public void close(Consumer consumer) throws java.io.IOException {
+        
+        try {
+            // Reduce the number of runs to the maximum number of files that
+            // are merged at once.
+            while (_runs.size() >= MAX_MERGE) {
+                List<File> group = new ArrayList<>(_runs.subList(0, MAX_MERGE));
+                File file = this.runFile();
+                try (DataOutputStream runOut = this.openRun(file)) {
+                    List<TermRun> runs = new ArrayList<>();
+                    for (File run : group) {
+                        runs.add(new FileRun(run));
+                    }
+                    this.merge(runs, (term, count) -> this.write(runOut, term, count));
+                }
+                for (File run : group) {
+                    run.delete();
+                }
+                _runs.removeAll(group);
+                _runs.add(file);
+            }
+            List<TermRun> runs = new ArrayList<>();
+            for (File file : _runs) {
+                runs.add(new FileRun(file));
+            }
+            String[] terms = this.sortedTerms();
+            long[] counts = new long[terms.length];
+            for (int iTerm = 0; iTerm < terms.length; iTerm++) {
+                counts[iTerm] = this.get(terms[iTerm]);
+            }
+            this.clear(1);
+            runs.add(new MemoryRun(terms, counts));
+            this.merge(runs, consumer);
+        } finally {
+            for (File file : _runs) {
+                file.delete();
+            }
+            _runs.clear();
+        }
+    }
+    
+    /**
+     * Merge all runs and write the sorted list of terms and their counts to
+     * the given output writer. Temporary run files are deleted.
+     * 
+     * @param out
+     * @throws java.io.IOException 
+     */
+    public void close(PrintWriter out) throws java.io.IOException {
+        
+        this.close((term, count) -> {
+            out.print(term);
+            out.print('\t');
+            out.println(count);
+        });
+    }
+    
+    private int get(String term) {
+        
+        int index = term.hashCode() & _mask;
+        String key;
+        while ((key = _keys[index]) != null) {
+            if (key.equals(term)) {
+                return _counts[index];
+            }
+            index = (index + 1) & _mask;
+        }
+        return 0;
+    }
+    
+    private void grow() {
+        
+        String[] keys = _keys;
+        int[] counts = _counts;
+        _keys = new String[keys.length * 2];
+        _counts = new int[counts.length * 2];
+        _mask = _keys.length - 1;
+        _memory += 12L * keys.length;
+        for (int iKey = 0; iKey < keys.length; iKey++) {
+            String key = keys[iKey];
+            if (key != null) {
+                int index = key.hashCode() & _mask;
+                while (_keys[index] != null) {
+                    index = (index + 1) & _mask;
+                }
+                _keys[index] = key;
+                _counts[index] = counts[iKey];
+            }
+        }
+    }
+    
+    /**
+     * Insert a new term at the given position of the hash table.
+     * 
+     * @param index
+     * @param term
+     * @param count 
+     */
+    private void insert(int index, String term, int count) {
+        
+        _keys[index] = term;
+        _counts[index] = count;
+        _size++;
+        _memory += ENTRY_SIZE + (2L * term.length());
+        if ((_size * 2) > _keys.length) {
+            this.grow();
+        }
+        if (_memory > _bufferSize) {
+            this.spill();
+        }
+    }
+    
+    /**
+     * Merge the given runs and pass the result to the given consumer. All
+     * runs are closed when the merge is done.
+     * 
+     * @param runs
+     * @param consumer
+     * @throws java.io.IOException 
+     */
+    private void merge(
+            List<TermRun> runs,
+            Consumer consumer
+    ) throws java.io.IOException {
+        
+        try {
+            PriorityQueue<TermRun> queue = new PriorityQueue<>();
+            for (TermRun run : runs) {
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                TermRun run = queue.poll();
+                String term = run.term;
+                long count = run.count;
+                if (run.next()) {
+                    queue.add(run);
+                }
+                while ((!queue.isEmpty()) && (queue.peek().term.equals(term))) {
+                    run = queue.poll();
+                    count += run.count;
+                    if (run.next()) {
+                        queue.add(run);
+                    }
+                }
+                consumer.consume(term, count);
+            }
+        } finally {
+            for (TermRun run : runs) {
+                run.close();
+            }
+        }
+    }
+    
+    private DataOutputStream openRun(File file) throws java.io.IOException {
+        
+        return new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 65536)
+        );
+    }
+    
+    /**
+     * Number of runs that were written to temporary files.
+     * 
+     * @return 
+     */
+    public int runCount() {
+        
+        return _runs.size();
+    }
+    
+    private File runFile() {
+        
+        File file;
+        do {
+            file = new File(_tmpPrefix.getAbsolutePath() + ".run" + (_runSequence++) + ".tmp");
+        } while (file.exists());
+        return file;
+    }
+    
+    private String[] sortedTerms() {
+        
+        String[] terms = new String[_size];
+        int index = 0;
+        for (String key : _keys) {
+            if (key != null) {
+                terms[index++] = key;
+            }
+        }
+        Arrays.sort(terms);
+        return terms;
+    }
+    
+    /**
+     * Write the sorted terms in the table to a new run file and clear the
+     * table.
+     */
+    private void spill() {
+        
+        File file = this.runFile();
+        try (DataOutputStream out = this.openRun(file)) {
+            for (String term : this.sortedTerms()) {
+                this.write(out, term, this.get(term));
+            }
+        } catch (java.io.IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        _runs.add(file);
+        this.clear(INITIAL_CAPACITY);
+    }
+    
+    private void write(
+            DataOutputStream out,
+            String term,
+            long count
+    ) throws java.io.IOException {
+        
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeLong(count);
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.db.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External aggregation of term frequencies for term identifiers. This is the
+ * counterpart of the TermCountAggregator for columns whose terms have been
+ * mapped to identifiers in a term dictionary. Identifiers are counted in an
+ * open-addressing hash table of primitive values. If the estimated memory
+ * usage of the table exceeds the given buffer size, the identifiers in the
+ * table are sorted and written as a run to a temporary file and the table is
+ * cleared.
+ * 
+ * When the aggregator is closed, all runs and the sorted identifiers that
+ * remain in the table are merged (k-way merge). The counts for equal
+ * identifiers in different runs are added up. The result is passed to a
+ * consumer sorted by term identifier. If there are more runs than can be
+ * merged at once, groups of runs are first merged into larger runs.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class TermIdCountAggregator {
+    
+    /**
+     * Consumer for the merged list of term identifiers and their counts.
+     */
+    public interface Consumer {
+        
+        public void consume(int termId, long count) throws java.io.IOException;
+    }
+    
+    /**
+     * Cursor over a sorted list of term identifiers and their counts.
+     */
+    private abstract static class TermIdRun implements Comparable<TermIdRun> {
+        
+        protected long count;
+        protected int termId;
+        
+        public abstract void close() throws java.io.IOException;
+        
+        @Override
+        public int compareTo(TermIdRun run) {
+            
+            return Integer.compare(termId, run.termId);
+        }
+        
+        public abstract boolean next() throws java.io.IOException;
+    }
+    
+    /**
+     * Sorted run that was written to a temporary file.
+     */
+    private static class FileRun extends TermIdRun {
+        
+        private final DataInputStream _in;
+        
+        public FileRun(File file) throws java.io.IOException {
+            
+            _in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), 65536)
+            );
+        }
+
+        @Override
+        public void close() throws java.io.IOException {
+            
+            _in.close();
+        }
+        
+        @Override
+        public boolean next() throws java.io.IOException {
+            
+            try {
+                termId = _in.readInt();
+            } catch (EOFException ex) {
+                return false;
+            }
+            count = _in.readLong();
+            return true;
+        }
+    }
+    
+    /**
+     * Sorted run for the identifiers that remain in memory.
+     */
+    private static class MemoryRun extends TermIdRun {
+        
+        private final long[] _counts;
+        private int _index = 0;
+        private final int[] _termIds;
+        
+        public MemoryRun(int[] termIds, long[] counts) {
+            
+            _termIds = termIds;
+            _counts = counts;
+        }
+
+        @Override
+        public void close() {
+            
+        }
+        
+        @Override
+        public boolean next() {
+            
+            if (_index < _termIds.length) {
+                termId = _termIds[_index];
+                count = _counts[_index];
+                _index++;
+                return true;
+            }
+            return false;
+        }
+    }
+    
+    // Marker for empty slots in the hash table. Term identifiers are never
+    // negative.
+    private static final int EMPTY = -1;
+    // Estimated number of bytes per slot in the hash table.
+    private static final int SLOT_SIZE = 12;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Maximum number of run files that are merged at once.
+    private static final int MAX_MERGE = 64;
+    
+    private final long _bufferSize;
+    private long[] _counts;
+    private int[] _keys;
+    private int _mask;
+    private final List<File> _runs;
+    private int _runSequence = 0;
+    private int _size;
+    private final File _tmpPrefix;
+    
+    /**
+     * Initialize the buffer size (in bytes) and the prefix for temporary run
+     * files.
+     * 
+     * @param tmpPrefix
+     * @param bufferSize 
+     */
+    public TermIdCountAggregator(File tmpPrefix, long bufferSize) {
+        
+        _tmpPrefix = tmpPrefix;
+        _bufferSize = bufferSize;
+        
+        _runs = new ArrayList<>();
+        this.clear(INITIAL_CAPACITY);
+    }
+    
+    /**
+     * Increment the count for the given term identifier by the given value.
+     * 
+     * @param termId
+     * @param count 
+     */
+    public void add(int termId, long count) {
+        
+        int index = hash(termId) & _mask;
+        int key;
+        while ((key = _keys[index]) != EMPTY) {
+            if (key == termId) {
+                _counts[index] += count;
+                return;
+            }
+            index = (index + 1) & _mask;
+        }
+        _keys[index] = termId;
+        _counts[index] = count;
+        _size++;
+        if ((_size * 2) > _keys.length) {
+            if (SLOT_SIZE * 2L * _keys.length > _bufferSize) {
+                this.spill();
+            } else {
+                this.grow();
+            }
+        }
+    }
+    
+    private void clear(int capacity) {
+        
+        _keys = new int[capacity];
+        Arrays.fill(_keys, EMPTY);
+        _counts = new long[capacity];
+        _mask = capacity - 1;
+        _size = 0;
+    }
+    
+    /**
+     * Merge all runs and pass the list of term identifiers and their counts
+     * to the given consumer. Temporary run files are deleted.
+     * 
+     * @param consumer
+     * @throws java.io.IOException 
+     */
+    public void close(Consumer consumer) throws java.io.IOException {
+        
+        try {
+            // Reduce the number of runs to the maximum number of files that
+            // are merged at once.
+            while (_runs.size() >= MAX_MERGE) {
+                List<File> group = new ArrayList<>(_runs.subList(0, MAX_MERGE));
+                File file = this.runFile();
+                try (DataOutputStream runOut = this.openRun(file)) {
+                    List<TermIdRun> runs = new ArrayList<>();
+                    for (File run : group) {
+                        runs.add(new FileRun(run));
+                    }
+                    this.merge(runs, (termId, count) -> {
+                        runOut.writeInt(termId);
+                        runOut.writeLong(count);
+                    });
+                }
+                for (File run : group) {
+                    run.delete();
+                }
+                _runs.removeAll(group);
+                _runs.add(file);
+            }
+            List<TermIdRun> runs = new ArrayList<>();
+            for (File file : _runs) {
+                runs.add(new FileRun(file));
+            }
+            runs.add(this.sortedRun());
+            this.clear(1);
+            this.merge(runs, consumer);
+        } finally {
+            for (File file : _runs) {
+                file.delete();
+            }
+            _runs.clear();
+        }
+    }
+    
+    private void grow() {
+        
+        int[] keys = _keys;
+        long[] counts = _counts;
+        _keys = new int[keys.length * 2];
+        Arrays.fill(_keys, EMPTY);
+        _counts = new long[counts.length * 2];
+        _mask = _keys.length - 1;
+        for (int iKey = 0; iKey < keys.length; iKey++) {
+            int key = keys[iKey];
+            if (key != EMPTY) {
+                int index = hash(key) & _mask;
+                while (_keys[index] != EMPTY) {
+                    index = (index + 1) & _mask;
+                }
+                _keys[index] = key;
+                _counts[index] = counts[iKey];
+            }
+        }
+    }
+    
+    /**
+     * Spread the bits of consecutive term identifiers across the table.
+     * 
+     * @param termId
+     * @return 
+     */
+    private static int hash(int termId) {
+        
+        int h = termId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Merge the given runs and pass the result to the given consumer. All
+     * runs are closed when the merge is done.
+     * 
+     * @param runs
+     * @param consumer
+     * @throws java.io.IOException 
+     */
+    private void merge(
+            List<TermIdRun> runs,
+            Consumer consumer
+    ) throws java.io.IOException {
+        
+        try {
+            PriorityQueue<TermIdRun> queue = new PriorityQueue<>();
+            for (TermIdRun run : runs) {
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                TermIdRun run = queue.poll();
+                int termId = run.termId;
+                long count = run.count;
+                if (run.next()) {
+                    queue.add(run);
+                }
+                while ((!queue.isEmpty()) && (queue.peek().termId == termId)) {
+                    run = queue.poll();
+                    count += run.count;
+                    if (run.next()) {
+                        queue.add(run);
+                    }
+                }
+                consumer.consume(termId, count);
+            }
+        } finally {
+            for (TermIdRun run : runs) {
+                run.close();
+            }
+        }
+    }
+    
+    private DataOutputStream openRun(File file) throws java.io.IOException {
+        
+        return new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 65536)
+        );
+    }
+    
+    /**
+     * Number of runs that were written to temporary files.
+     * 
+     * @return 
+     */
+    public int runCount() {
+        
+        return _runs.size();
+    }
+    
+    private File runFile() {
+        
+        File file;
+        do {
+            file = new File(_tmpPrefix.getAbsolutePath() + ".run" + (_runSequence++) + ".tmp");
+        } while (file.exists());
+        return file;
+    }
+    
+    /**
+     * Get the identifiers in the table and their counts sorted by identifier.
+     * 
+     * @return 
+     */
+    private MemoryRun sortedRun() {
+        
+        long[] entries = new long[_size];
+        int index = 0;
+        for (int iKey = 0; iKey < _keys.length; iKey++) {
+            if (_keys[iKey] != EMPTY) {
+                entries[index++] = ((long)_keys[iKey] << 32) | iKey;
+            }
+        }
+        Arrays.sort(entries);
+        int[] termIds = new int[_size];
+        long[] counts = new long[_size];
+        for (int iEntry = 0; iEntry < _size; iEntry++) {
+            termIds[iEntry] = (int)(entries[iEntry] >>> 32);
+            counts[iEntry] = _counts[(int)entries[iEntry]];
+        }
+        return new MemoryRun(termIds, counts);
+    }
+    
+    /**
+     * Write the sorted identifiers in the table to a new run file and clear
+     * the table.
+     */
+    private void spill() {
+        
+        File file = this.runFile();
+        try (DataOutputStream out = this.openRun(file)) {
+            MemoryRun run = this.sortedRun();
+            while (run.next()) {
+                out.writeInt(run.termId);
+                out.writeLong(run.count);
+            }
+        } catch (java.io.IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        _runs.add(file);
+        this.clear(INITIAL_CAPACITY);
+    }
+}
@@ -33,7 +33,26 @@ public class DefaultDataTypeAnnotator implements DataTypeAnnotator {
      */
     public DefaultDataTypeAnnotator() {
         
-        _dateCheckers = new DataTypeChecker[]{
+        _dateCheckers = getDateCheckers();
+        _nonDateCheckers = new DataTypeChecker[]{
+            new DefaultIntegerChecker(),
+            new AdvancedIntegerChecker(),
+            new LongChecker(),
+            new DefaultDecimalChecker(),
+            new AdvancedDecimalChecker(),
+            new GeoPointChecker()
+        };
+    }
+    
+    /**
+     * Get a new array of checkers for the date formats that are recognized by
+     * the default annotator. Date checkers are not thread-safe.
+     * 
+     * @return 
+     */
+    public static SimpleDateFormatChecker[] getDateCheckers() {
+        
+        return new SimpleDateFormatChecker[]{
             new SimpleDateFormatChecker("EEEEE, MM/dd/yyyy"),
             new SimpleDateFormatChecker("yyyy-MM-dd'T'HH:mm:ss"),
             new SimpleDateFormatChecker("yyyy-MM-dd'T'HH:mm:ss.SSS"),
@@ -48,14 +67,6 @@ public class DefaultDataTypeAnnotator implements DataTypeAnnotator {
             new SimpleDateFormatChecker("MMM-dd"),
             new SimpleDateFormatChecker("dd-MMM")
         };
-        _nonDateCheckers = new DataTypeChecker[]{
-            new DefaultIntegerChecker(),
-            new AdvancedIntegerChecker(),
-            new LongChecker(),
-            new DefaultDecimalChecker(),
-            new AdvancedDecimalChecker(),
-            new GeoPointChecker()
-        };
     }
     
     private DataType matchValue(String value, DataTypeChecker[] typeCheckers) {
@@ -0,0 +1,404 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.profiling.datatype;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Data type annotator that assigns the same labels as the default annotator
+ * without using exceptions for control flow. The annotator is thread-safe.
+ * 
+ * Each value is scanned once. The scan recognizes integer, long, and decimal
+ * numbers (including numbers with ',' separators) and counts the digits and
+ * literal characters of the configured date patterns. A date pattern is only
+ * checked with a date format if the value contains all literal characters of
+ * the pattern. Date formats are maintained for each thread.
+ * 
+ * Values with non-ASCII digits, exponents that may overflow, and geo points
+ * that contain special floating point values are checked with the default
+ * type checkers.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class FastDataTypeAnnotator implements DataTypeAnnotator {
+
+    private static final DataType DATE = new DateType();
+    private static final DataType DECIMAL = new DecimalType();
+    private static final DataType GEO = new GeoType();
+    private static final DataType INTEGER = new IntegerType();
+    private static final DataType LONG = new LongType();
+    private static final DataType TEXT = new TextType();
+    
+    // States of the number scanner.
+    private static final int S_START = 0;
+    private static final int S_SIGN = 1;
+    private static final int S_INT = 2;
+    private static final int S_DOT = 3;
+    private static final int S_FRAC = 4;
+    private static final int S_EXP = 5;
+    private static final int S_EXP_SIGN = 6;
+    private static final int S_EXP_DIGIT = 7;
+    private static final int S_FAIL = 8;
+    
+    // Maximum number of exponent digits that cannot overflow a BigDecimal.
+    private static final int MAX_EXP_DIGITS = 9;
+    
+    // Field letters of date patterns that are parsed as numbers.
+    private static final String NUMERIC_FIELDS = "dDFHhKkmSsuWwYy";
+    
+    private final ThreadLocal<SimpleDateFormatChecker[]> _dateCheckers;
+    private final int[] _literalIndex;
+    private final int _literalCount;
+    private final DataTypeChecker[] _numberCheckers;
+    private final int[][] _requiredLiterals;
+    private final boolean[] _requiresDigit;
+    
+    public FastDataTypeAnnotator() {
+        
+        _dateCheckers = ThreadLocal.withInitial(
+                DefaultDataTypeAnnotator::getDateCheckers
+        );
+        _numberCheckers = new DataTypeChecker[]{
+            new AdvancedIntegerChecker(),
+            new LongChecker(),
+            new AdvancedDecimalChecker(),
+            new GeoPointChecker()
+        };
+        
+        // Get the literal characters and numeric fields for each date
+        // pattern. Whitespace and non-ASCII literals are ignored.
+        SimpleDateFormatChecker[] checkers = DefaultDataTypeAnnotator.getDateCheckers();
+        _literalIndex = new int[128];
+        Arrays.fill(_literalIndex, -1);
+        List<char[]> literals = new ArrayList<>();
+        _requiresDigit = new boolean[checkers.length];
+        int literalCount = 0;
+        for (int iChecker = 0; iChecker < checkers.length; iChecker++) {
+            String pattern = checkers[iChecker].toPattern();
+            StringBuilder buf = new StringBuilder();
+            boolean inQuote = false;
+            int pos = 0;
+            while (pos < pattern.length()) {
+                char c = pattern.charAt(pos++);
+                if (c == '\'') {
+                    if ((pos < pattern.length()) && (pattern.charAt(pos) == '\'')) {
+                        buf.append(c);
+                        pos++;
+                    } else {
+                        inQuote = !inQuote;
+                    }
+                } else if ((!inQuote) && (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')))) {
+                    int count = 1;
+                    while ((pos < pattern.length()) && (pattern.charAt(pos) == c)) {
+                        count++;
+                        pos++;
+                    }
+                    if ((NUMERIC_FIELDS.indexOf(c) != -1) || (((c == 'M') || (c == 'L')) && (count < 3))) {
+                        _requiresDigit[iChecker] = true;
+                    }
+                } else if ((c < 128) && (!Character.isWhitespace(c))) {
+                    buf.append(c);
+                }
+            }
+            char[] chars = buf.toString().toCharArray();
+            for (char c : chars) {
+                if (_literalIndex[c] == -1) {
+                    _literalIndex[c] = literalCount++;
+                }
+            }
+            literals.add(chars);
+        }
+        _literalCount = literalCount;
+        _requiredLiterals = new int[checkers.length][];
+        for (int iChecker = 0; iChecker < checkers.length; iChecker++) {
+            _requiredLiterals[iChecker] = new int[literalCount];
+            for (char c : literals.get(iChecker)) {
+                _requiredLiterals[iChecker][_literalIndex[c]]++;
+            }
+        }
+    }
+    
+    /**
+     * Check if the given string may match any of the date patterns and run
+     * the date format checkers for all candidate patterns.
+     * 
+     * @param value
+     * @param hasDigit
+     * @param literals
+     * @return 
+     */
+    private boolean isDate(String value, boolean hasDigit, int[] literals) {
+        
+        SimpleDateFormatChecker[] checkers = null;
+        for (int iChecker = 0; iChecker < _requiredLiterals.length; iChecker++) {
+            if ((_requiresDigit[iChecker]) && (!hasDigit)) {
+                continue;
+            }
+            int[] required = _requiredLiterals[iChecker];
+            boolean candidate = true;
+            for (int iLiteral = 0; iLiteral < required.length; iLiteral++) {
+                if (literals[iLiteral] < required[iLiteral]) {
+                    candidate = false;
+                    break;
+                }
+            }
+            if (candidate) {
+                if (checkers == null) {
+                    checkers = _dateCheckers.get();
+                }
+                if (checkers[iChecker].isMatch(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Check if the given substring is a valid argument for
+     * Double.parseDouble().
+     * 
+     * @param value
+     * @param start
+     * @param end
+     * @return 
+     */
+    private boolean isDouble(String value, int start, int end) {
+        
+        while ((start < end) && (value.charAt(start) <= ' ')) {
+            start++;
+        }
+        while ((end > start) && (value.charAt(end - 1) <= ' ')) {
+            end--;
+        }
+        int pos = start;
+        if ((pos < end) && ((value.charAt(pos) == '+') || (value.charAt(pos) == '-'))) {
+            pos++;
+        }
+        if ((value.startsWith("NaN", pos)) || (value.startsWith("Infinity", pos))
+                || (value.startsWith("0x", pos)) || (value.startsWith("0X", pos))) {
+            try {
+                Double.parseDouble(value.substring(start, end));
+                return true;
+            } catch (java.lang.NumberFormatException ex) {
+                return false;
+            }
+        }
+        int digits = 0;
+        while ((pos < end) && (value.charAt(pos) >= '0') && (value.charAt(pos) <= '9')) {
+            digits++;
+            pos++;
+        }
+        if ((pos < end) && (value.charAt(pos) == '.')) {
+            pos++;
+            while ((pos < end) && (value.charAt(pos) >= '0') && (value.charAt(pos) <= '9')) {
+                digits++;
+                pos++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if ((pos < end) && ((value.charAt(pos) == 'e') || (value.charAt(pos) == 'E'))) {
+            pos++;
+            if ((pos < end) && ((value.charAt(pos) == '+') || (value.charAt(pos) == '-'))) {
+                pos++;
+            }
+            int expDigits = 0;
+            while ((pos < end) && (value.charAt(pos) >= '0') && (value.charAt(pos) <= '9')) {
+                expDigits++;
+                pos++;
+            }
+            if (expDigits == 0) {
+                return false;
+            }
+        }
+        if ((pos == end - 1) && ("fFdD".indexOf(value.charAt(pos)) != -1)) {
+            pos++;
+        }
+        return (pos == end);
+    }
+    
+    /**
+     * Check if the given substring is a geo point of the form (x,y).
+     * 
+     * @param value
+     * @param start
+     * @param end
+     * @return 
+     */
+    private boolean isGeoPoint(String value, int start, int end) {
+        
+        if ((end - start < 2) || (value.charAt(start) != '(') || (value.charAt(end - 1) != ')')) {
+            return false;
+        }
+        int pos = value.indexOf(',', start);
+        if ((pos == -1) || (pos >= end)) {
+            return false;
+        }
+        return this.isDouble(value, start + 1, pos) && this.isDouble(value, pos + 1, end - 1);
+    }
+
+    @Override
+    public DataType getType(String value) {
+
+        final int length = value.length();
+        int start = 0;
+        int end = length;
+        if (value.startsWith("$")) {
+            start = 1;
+        } else if (value.endsWith("%")) {
+            end = length - 1;
+        }
+        
+        // Single scan of the value. The number scanner ignores ',' (as the
+        // advanced number checkers do). Integer values are accumulated as
+        // negative numbers to detect overflows (as in Long.parseLong).
+        int state = S_START;
+        boolean negative = false;
+        boolean hasComma = false;
+        boolean overflow = false;
+        long result = 0;
+        int expDigits = 0;
+        boolean hasDigit = false;
+        boolean hasNonAsciiDigit = false;
+        int[] literals = new int[_literalCount];
+        for (int iChar = 0; iChar < length; iChar++) {
+            char c = value.charAt(iChar);
+            int digit = -1;
+            if (c < 128) {
+                if ((c >= '0') && (c <= '9')) {
+                    digit = c - '0';
+                    hasDigit = true;
+                }
+                int index = _literalIndex[c];
+                if (index != -1) {
+                    literals[index]++;
+                }
+            } else if (Character.isDigit(c)) {
+                hasDigit = true;
+                hasNonAsciiDigit = true;
+            }
+            if ((iChar < start) || (iChar >= end) || (state == S_FAIL)) {
+                continue;
+            }
+            if (c == ',') {
+                hasComma = true;
+                continue;
+            }
+            switch (state) {
+                case S_START:
+                case S_SIGN:
+                case S_INT:
+                    if ((state == S_START) && ((c == '+') || (c == '-'))) {
+                        negative = (c == '-');
+                        state = S_SIGN;
+                    } else if (digit != -1) {
+                        long limit = (negative) ? Long.MIN_VALUE : -Long.MAX_VALUE;
+                        if ((result < limit / 10) || (result * 10 < limit + digit)) {
+                            overflow = true;
+                        } else {
+                            result = (result * 10) - digit;
+                        }
+                        state = S_INT;
+                    } else if (c == '.') {
+                        state = (state == S_INT) ? S_FRAC : S_DOT;
+                    } else if ((state == S_INT) && ((c == 'e') || (c == 'E'))) {
+                        state = S_EXP;
+                    } else {
+                        state = S_FAIL;
+                    }
+                    break;
+                case S_DOT:
+                case S_FRAC:
+                    if (digit != -1) {
+                        state = S_FRAC;
+                    } else if ((state == S_FRAC) && ((c == 'e') || (c == 'E'))) {
+                        state = S_EXP;
+                    } else {
+                        state = S_FAIL;
+                    }
+                    break;
+                case S_EXP:
+                case S_EXP_SIGN:
+                case S_EXP_DIGIT:
+                    if ((state == S_EXP) && ((c == '+') || (c == '-'))) {
+                        state = S_EXP_SIGN;
+                    } else if (digit != -1) {
+                        if ((digit > 0) || (expDigits > 0)) {
+                            expDigits++;
+                        }
+                        state = S_EXP_DIGIT;
+                    } else {
+                        state = S_FAIL;
+                    }
+                    break;
+            }
+        }
+        
+        if (hasNonAsciiDigit) {
+            // Use the default checkers for values with non-ASCII digits.
+            String val = value.substring(start, end);
+            for (DataTypeChecker checker : _numberCheckers) {
+                if (checker.isMatch(val)) {
+                    return checker.label();
+                }
+            }
+        } else if (state == S_INT) {
+            if ((!overflow) && (result >= ((negative) ? Integer.MIN_VALUE : -Integer.MAX_VALUE))) {
+                return INTEGER;
+            } else if ((!overflow) && (!hasComma)) {
+                return LONG;
+            } else {
+                return DECIMAL;
+            }
+        } else if ((state == S_FRAC) || (state == S_EXP_DIGIT)) {
+            if (expDigits <= MAX_EXP_DIGITS) {
+                return DECIMAL;
+            } else if (new AdvancedDecimalChecker().isMatch(value.substring(start, end))) {
+                return DECIMAL;
+            }
+        } else if (this.isGeoPoint(value, start, end)) {
+            return GEO;
+        }
+
+        if ((value.endsWith(" AM")) || (value.endsWith(" PM"))) {
+            String val = value.substring(start, end);
+            val = val.substring(0, length - 3).trim();
+            hasDigit = false;
+            Arrays.fill(literals, 0);
+            for (int iChar = 0; iChar < val.length(); iChar++) {
+                char c = val.charAt(iChar);
+                if (Character.isDigit(c)) {
+                    hasDigit = true;
+                }
+                if ((c < 128) && (_literalIndex[c] != -1)) {
+                    literals[_literalIndex[c]]++;
+                }
+            }
+            if (this.isDate(val, hasDigit, literals)) {
+                return DATE;
+            }
+        } else if (this.isDate(value, hasDigit, literals)) {
+            return DATE;
+        }
+        return TEXT;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.profiling.datatype;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.opendata.core.constraint.Threshold;
+import org.opendata.core.metric.Support;
+
+/**
+ * Decide whether the fraction of text values in a column satisfies a
+ * threshold constraint from a random sample of the column values.
+ * 
+ * Values in the sample are classified in random order. At checkpoints (after
+ * 64, 128, 256, ... values and at the end of the sample) a confidence
+ * interval for the text fraction is computed using the Hoeffding-Serfling
+ * bound for sampling without replacement. The decision is settled if the
+ * constraint is satisfied by the lower bound or not satisfied by the upper
+ * bound of the interval. The error rate is split over all checkpoints such
+ * that the probability of a wrong decision is at most the given error rate.
+ * 
+ * If the sample contains all values of the column the result is exact.
+ * Otherwise, the result is null if the sample does not settle the decision.
+ * 
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class SequentialTextClassifier {
+    
+    /**
+     * Result of the test with the number of classified values.
+     */
+    public static class Result {
+        
+        private final boolean _isSatisfied;
+        private final int _textCount;
+        private final int _valueCount;
+        
+        public Result(boolean isSatisfied, int textCount, int valueCount) {
+            
+            _isSatisfied = isSatisfied;
+            _textCount = textCount;
+            _valueCount = valueCount;
+        }
+        
+        /**
+         * Fraction of text values in the classified values.
+         * 
+         * @return 
+         */
+        public BigDecimal fraction() {
+            
+            return new Support(_textCount, _valueCount).value();
+        }
+        
+        public boolean isSatisfied() {
+            
+            return _isSatisfied;
+        }
+        
+        public int textCount() {
+            
+            return _textCount;
+        }
+        
+        public int valueCount() {
+            
+            return _valueCount;
+        }
+    }
+    
+    public static final int DEFAULT_SAMPLE_SIZE = 10000;
+    
+    private static final int FIRST_CHECKPOINT = 64;
+    
+    private final DataTypeAnnotator _annotator;
+    private final double _errorRate;
+    private final int _sampleSize;
+    private final Threshold _threshold;
+    
+    public SequentialTextClassifier(
+            Threshold threshold,
+            double errorRate,
+            int sampleSize
+    ) {
+        
+        _threshold = threshold;
+        _errorRate = errorRate;
+        _sampleSize = sampleSize;
+        
+        _annotator = new FastDataTypeAnnotator();
+    }
+    
+    public SequentialTextClassifier(Threshold threshold, double errorRate) {
+        
+        this(threshold, errorRate, DEFAULT_SAMPLE_SIZE);
+    }
+    
+    /**
+     * Add a value to a reservoir sample. The value count is the number of
+     * values that have been seen before the given value.
+     * 
+     * @param sample
+     * @param value
+     * @param valueCount
+     * @param random 
+     */
+    public void add(List<String> sample, String value, int valueCount, Random random) {
+        
+        if (sample.size() < _sampleSize) {
+            sample.add(value);
+        } else {
+            int pos = random.nextInt(valueCount + 1);
+            if (pos < _sampleSize) {
+                sample.set(pos, value);
+            }
+        }
+    }
+    
+    /**
+     * Classify the values in a random sample of a column with the given
+     * number of values. The order of values in the sample is modified.
+     * Returns null if the decision is not settled by the sample.
+     * 
+     * @param sample
+     * @param valueCount
+     * @param random
+     * @return 
+     */
+    public Result classify(List<String> sample, int valueCount, Random random) {
+        
+        final int size = sample.size();
+        
+        int checkpoint = FIRST_CHECKPOINT;
+        int testCount = 0;
+        int textCount = 0;
+        for (int iValue = 0; iValue < size; iValue++) {
+            Collections.swap(sample, iValue, iValue + random.nextInt(size - iValue));
+            if (_annotator.getType(sample.get(iValue)).isText()) {
+                textCount++;
+            }
+            int count = iValue + 1;
+            if ((count == checkpoint) && (count < size)) {
+                Boolean decision = this.decide(textCount, count, valueCount, testCount++);
+                if (decision != null) {
+                    return new Result(decision, textCount, count);
+                }
+                checkpoint *= 2;
+            }
+        }
+        if (size >= valueCount) {
+            return new Result(
+                    _threshold.isSatisfied(new Support(textCount, size).value()),
+                    textCount,
+                    size
+            );
+        }
+        Boolean decision = this.decide(textCount, size, valueCount, testCount);
+        if (decision != null) {
+            return new Result(decision, textCount, size);
+        }
+        return null;
+    }
+    
+    /**
+     * Test whether the decision is settled after classifying a given number
+     * of values. Returns null if the decision is not settled.
+     * 
+     * @param textCount
+     * @param count
+     * @param valueCount
+     * @param testIndex
+     * @return 
+     */
+    private Boolean decide(int textCount, int count, int valueCount, int testIndex) {
+        
+        double alpha = _errorRate / ((testIndex + 1.0) * (testIndex + 2.0));
+        double correction = 1.0 - ((double)(count - 1) / (double)valueCount);
+        double epsilon = Math.sqrt(
+                correction * Math.log(2.0 / alpha) / (2.0 * count)
+        );
+        double fraction = (double)textCount / (double)count;
+        if (_threshold.isSatisfied(Math.max(0.0, fraction - epsilon))) {
+            return Boolean.TRUE;
+        } else if (!_threshold.isSatisfied(Math.min(1.0, fraction + epsilon))) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+}
@@ -40,7 +40,7 @@ public class TextValuePrinter {
         
         File inputFile = new File(args[0]);
         
-        DefaultDataTypeAnnotator types = new DefaultDataTypeAnnotator();
+        FastDataTypeAnnotator types = new FastDataTypeAnnotator();
         
         try (BufferedReader in = FileSystem.openReader(inputFile)) {
             String line;
@@ -0,0 +1,94 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.test.core.set;
+
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.opendata.core.set.HashIDSet;
+import org.opendata.core.set.IDSetKey;
+import org.opendata.core.set.ImmutableIDSet;
+
+/**
+ * Unit tests for content keys of identifier sets.
+ *
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class IDSetKeyTest {
+
+    public IDSetKeyTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testEqualKeys() {
+
+        IDSetKey key1 = new IDSetKey(new HashIDSet(new int[]{7, 1, 5, 3, 10}));
+        IDSetKey key2 = new IDSetKey(new ImmutableIDSet(new Integer[]{1, 3, 5, 7, 10}));
+
+        assertEquals(key1, key2);
+        assertEquals(key1.hashCode(), key2.hashCode());
+        assertEquals(key1.hashHigh(), key2.hashHigh());
+        assertEquals(key1.hashLow(), key2.hashLow());
+        assertEquals(5, key1.length());
+    }
+
+    @Test
+    public void testDifferentKeys() {
+
+        IDSetKey key = new IDSetKey(new int[]{1, 2, 3});
+
+        assertNotEquals(key, new IDSetKey(new int[]{1, 2}));
+        assertNotEquals(key, new IDSetKey(new int[]{1, 2, 4}));
+        assertNotEquals(key, new IDSetKey(new int[]{1, 2, 3, 4, 5}));
+        assertNotEquals(new IDSetKey(new int[]{0}), new IDSetKey(new int[0]));
+    }
+
+    @Test
+    public void testHashMapKeys() {
+
+        HashMap<IDSetKey, Integer> index = new HashMap<>();
+        index.put(new IDSetKey(new int[]{1, 2, 3, 4, 5, 6}), 1);
+        index.put(new IDSetKey(new int[]{1, 2, 3, 4, 5}), 2);
+        index.put(new IDSetKey(new int[0]), 3);
+
+        assertEquals(3, index.size());
+        assertEquals(1, (int)index.get(new IDSetKey(new HashIDSet(1, 7))));
+        assertEquals(2, (int)index.get(new IDSetKey(new HashIDSet(1, 6))));
+        assertEquals(3, (int)index.get(new IDSetKey(new HashIDSet())));
+    }
+}
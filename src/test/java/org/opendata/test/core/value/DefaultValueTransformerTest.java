@@ -0,0 +1,102 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.test.core.value;
+
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.opendata.core.value.DefaultValueTransformer;
+
+/**
+ * Unit tests for the in-place transformation of column values.
+ *
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class DefaultValueTransformerTest {
+
+    public DefaultValueTransformerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private String transform(DefaultValueTransformer transformer, String value) {
+
+        char[] buf = ("##" + value + "##").toCharArray();
+        int length = transformer.transform(buf, 2, value.length());
+        if (length < 0) {
+            return null;
+        }
+        return new String(buf, 2, length);
+    }
+
+    @Test
+    public void testAsciiValues() {
+
+        DefaultValueTransformer transformer = new DefaultValueTransformer();
+
+        assertEquals("A B", this.transform(transformer, "  a \t\n b\r "));
+        assertEquals("", this.transform(transformer, " \u0001\t"));
+        assertEquals("X\u0001 Y", this.transform(transformer, "\u001fx\u0001 \f y\u0000"));
+        assertEquals("ABC-1", this.transform(transformer, "aBc-1"));
+    }
+
+    @Test
+    public void testNonAsciiValues() {
+
+        DefaultValueTransformer transformer = new DefaultValueTransformer();
+
+        assertNull(this.transform(transformer, "stra\u00dfe"));
+        assertEquals("STRASSE", transformer.transform("stra\u00dfe"));
+    }
+
+    @Test
+    public void testRandomValues() {
+
+        DefaultValueTransformer transformer = new DefaultValueTransformer();
+        String alphabet = "aBz \t\n\r\u000B\f\u0001\u001f\u0000xyZ19";
+        Random random = new Random(42);
+        for (int iValue = 0; iValue < 10000; iValue++) {
+            StringBuilder buf = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int iChar = 0; iChar < length; iChar++) {
+                buf.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String value = buf.toString();
+            String expected = value.toUpperCase().replaceAll("\\s+", " ").trim();
+            assertEquals(expected, this.transform(transformer, value));
+        }
+    }
+}
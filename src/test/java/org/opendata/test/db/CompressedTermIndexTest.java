@@ -17,6 +17,7 @@
  */
 package org.opendata.test.db;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -34,6 +35,8 @@ import org.opendata.core.util.IdentifiableCount;
 import org.opendata.db.column.ColumnHelper;
 import org.opendata.db.eq.CompressedTermIndexGenerator;
 import org.opendata.db.eq.EQWriter;
+import org.opendata.db.eq.ExternalMemCompressedTermIndexGenerator;
+import org.opendata.db.term.TermConsumer;
 import org.opendata.db.term.Term;
 
 /**
@@ -93,8 +96,36 @@ public class CompressedTermIndexTest {
     
         EQBuffer buf = new EQBuffer();
         
-        CompressedTermIndexGenerator consumer;
-        consumer = new CompressedTermIndexGenerator(buf, false);
+        this.generate(new CompressedTermIndexGenerator(buf, false));
+        
+        assertEquals(buf.size(), 2);
+        assertEquals(buf.get("0,2"), "0:3,1:6");
+        assertEquals(buf.get("1"), "0:1,2:2");
+    }
+
+    @Test
+    public void testExternalMemEQGenerator() {
+    
+        File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        
+        // Each term is written to a separate run file.
+        EQBuffer buf = new EQBuffer();
+        this.generate(new ExternalMemCompressedTermIndexGenerator(buf, tmpDir, 1, false));
+        
+        assertEquals(buf.size(), 2);
+        assertEquals(buf.get("0,2"), "0:3,1:6");
+        assertEquals(buf.get("1"), "0:1,2:2");
+        
+        // All terms are kept in memory.
+        buf = new EQBuffer();
+        this.generate(new ExternalMemCompressedTermIndexGenerator(buf, tmpDir, 1024, false));
+        
+        assertEquals(buf.size(), 2);
+        assertEquals(buf.get("0,2"), "0:3,1:6");
+        assertEquals(buf.get("1"), "0:1,2:2");
+    }
+    
+    private void generate(TermConsumer consumer) {
         
         Term term1 = new Term(
                 0,
@@ -126,9 +157,5 @@ public class CompressedTermIndexTest {
         consumer.consume(term2);
         consumer.consume(term3);
         consumer.close();
-        
-        assertEquals(buf.size(), 2);
-        assertEquals(buf.get("0,2"), "0:3,1:6");
-        assertEquals(buf.get("1"), "0:1,2:2");
     }
 }
@@ -0,0 +1,103 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.test.profiling;
+
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.opendata.profiling.datatype.DataType;
+import org.opendata.profiling.datatype.DefaultDataTypeAnnotator;
+import org.opendata.profiling.datatype.FastDataTypeAnnotator;
+
+/**
+ * Unit tests for the exception-free data type annotator. Labels have to be
+ * the same as the labels of the default annotator.
+ *
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class FastDataTypeAnnotatorTest {
+
+    public FastDataTypeAnnotatorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testLabels() {
+
+        FastDataTypeAnnotator annotator = new FastDataTypeAnnotator();
+
+        assertEquals(DataType.INTEGER, annotator.getType("-1,234").id());
+        assertEquals(DataType.INTEGER, annotator.getType("$5").id());
+        assertEquals(DataType.LONG, annotator.getType("2147483648").id());
+        assertEquals(DataType.DECIMAL, annotator.getType("2,147,483,648").id());
+        assertEquals(DataType.DECIMAL, annotator.getType("9223372036854775808").id());
+        assertEquals(DataType.DECIMAL, annotator.getType("1.5e-3%").id());
+        assertEquals(DataType.GEO, annotator.getType("(40.7, -73.9)").id());
+        assertEquals(DataType.DATE, annotator.getType("12/31/2020").id());
+        assertEquals(DataType.DATE, annotator.getType("2020-01-01T10:00:00").id());
+        assertEquals(DataType.DATE, annotator.getType("12/31/2020 10:00:00 PM").id());
+        assertEquals(DataType.TEXT, annotator.getType("02/30/2020").id());
+        assertEquals(DataType.TEXT, annotator.getType("1e").id());
+        assertEquals(DataType.TEXT, annotator.getType("NEW YORK").id());
+    }
+
+    @Test
+    public void testRandomValues() {
+
+        DefaultDataTypeAnnotator expected = new DefaultDataTypeAnnotator();
+        FastDataTypeAnnotator annotator = new FastDataTypeAnnotator();
+        String[] tokens = new String[]{
+            "0", "1", "2", "9", "12", "31", "2020", ",", ".", "-", "+", "e",
+            "E", "$", "%", "/", ":", "T", " ", "(", ")", "A", "JAN", "MON",
+            "NaN", " AM", " PM", "\u0661"
+        };
+        Random random = new Random(42);
+        for (int iValue = 0; iValue < 10000; iValue++) {
+            StringBuilder buf = new StringBuilder();
+            int length = random.nextInt(8);
+            for (int iToken = 0; iToken < length; iToken++) {
+                buf.append(tokens[random.nextInt(tokens.length)]);
+            }
+            String value = buf.toString();
+            assertEquals(
+                    value,
+                    expected.getType(value).id(),
+                    annotator.getType(value).id()
+            );
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of the Data-Driven Domain Discovery Tool (D4).
+ * 
+ * Copyright (c) 2018-2020 New York University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opendata.test.profiling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.opendata.core.constraint.Threshold;
+import org.opendata.profiling.datatype.SequentialTextClassifier;
+
+/**
+ * Unit tests for the sample-based text column classifier.
+ *
+ * @author Heiko Mueller <heiko.mueller@nyu.edu>
+ */
+public class SequentialTextClassifierTest {
+
+    private List<String> sample(
+            SequentialTextClassifier classifier,
+            int valueCount,
+            int textEvery,
+            Random random
+    ) {
+        
+        List<String> sample = new ArrayList<>();
+        for (int iValue = 0; iValue < valueCount; iValue++) {
+            String value;
+            if ((iValue % textEvery) == 0) {
+                value = "value " + iValue;
+            } else {
+                value = Integer.toString(iValue);
+            }
+            classifier.add(sample, value, iValue, random);
+        }
+        return sample;
+    }
+    
+    @Test
+    public void testEarlyDecision() {
+
+        Threshold threshold = Threshold.getConstraint("GT0.5");
+        SequentialTextClassifier classifier;
+        classifier = new SequentialTextClassifier(threshold, 0.01, 1000);
+        
+        Random random = new Random(0);
+        List<String> sample = this.sample(classifier, 100000, 1, random);
+        assertEquals(1000, sample.size());
+        SequentialTextClassifier.Result result;
+        result = classifier.classify(sample, 100000, random);
+        assertTrue(result.isSatisfied());
+        assertTrue(result.valueCount() < 1000);
+        
+        sample = this.sample(classifier, 100000, 10, random);
+        result = classifier.classify(sample, 100000, random);
+        assertFalse(result.isSatisfied());
+        assertTrue(result.valueCount() < 1000);
+    }
+
+    @Test
+    public void testExactDecision() {
+
+        Threshold threshold = Threshold.getConstraint("GT0.5");
+        SequentialTextClassifier classifier;
+        classifier = new SequentialTextClassifier(threshold, 0.01, 1000);
+        
+        Random random = new Random(0);
+        List<String> sample = this.sample(classifier, 500, 2, random);
+        SequentialTextClassifier.Result result;
+        result = classifier.classify(sample, 500, random);
+        assertFalse(result.isSatisfied());
+        assertEquals(250, result.textCount());
+        assertEquals(500, result.valueCount());
+        
+        sample = this.sample(classifier, 100000, 2, random);
+        assertNull(classifier.classify(sample, 100000, random));
+    }
+}